@@ -0,0 +1,123 @@
+package de.tuebingen.sfs.iconevol;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.jdellert.iwsa.align.InformationWeightedSequenceAlignment;
+import de.jdellert.iwsa.align.PhoneticStringAlignment;
+import de.jdellert.iwsa.sequence.PhoneticString;
+import de.tuebingen.sfs.cldfjava.data.CLDFForm;
+
+/**
+ * Benchmarks for the stages of SoundGroupStabilityOutput, each on the forms of one family (see BenchmarkFixture).
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class AlignmentBenchmarks {
+
+    /**
+     * A finalized projection model for the first sampled language pair, with the forms of its first language.
+     */
+    @State(Scope.Thread)
+    public static class SamplingInput {
+        FormProjectionModel model;
+        int[][] lang1Forms;
+        SplittableRandom random;
+
+        @Setup(Level.Trial)
+        public void setUp(BenchmarkFixture fixture) {
+            AlignedFormPair first = fixture.sampleAlignments.get(0);
+            model = fixture.rawModels[first.pairID].copy();
+            model.finalizeCounts(5);
+            List<int[]> forms = new ArrayList<int[]>();
+            for (AlignedFormPair alignment : fixture.alignments) {
+                if (forms.size() == BenchmarkFixture.NUM_ITEMS) break;
+                if (alignment.pairID == first.pairID) forms.add(fixture.segments.getSegments(alignment.cldfFormId1).segments);
+            }
+            lang1Forms = forms.toArray(new int[forms.size()][]);
+            random = new SplittableRandom(42);
+        }
+    }
+
+    @Benchmark
+    public void tokenize(BenchmarkFixture fixture, Blackhole blackhole) {
+        for (CLDFForm form : fixture.forms) {
+            blackhole.consume(IconEvolUtil.extractSegments(form, fixture.symbolTable, fixture.tokenizer));
+        }
+    }
+
+    @Benchmark
+    public void alignPairs(BenchmarkFixture fixture, Blackhole blackhole) {
+        for (AlignedFormPair pair : fixture.sampleAlignments) {
+            int lang1 = fixture.index.pairLang1[pair.pairID];
+            int lang2 = fixture.index.pairLang2[pair.pairID];
+            PhoneticString form1 = fixture.segments.getSegments(pair.cldfFormId1);
+            PhoneticString form2 = fixture.segments.getSegments(pair.cldfFormId2);
+            PhoneticStringAlignment align = InformationWeightedSequenceAlignment.constructAlignment(form1, form2,
+                    fixture.corrModel, fixture.corrModel, fixture.corrModel, fixture.corrModel, fixture.infoModels[lang1], fixture.infoModels[lang2]);
+            blackhole.consume(AlignedFormPair.fromAlignment(pair.pairID, pair.lang1, pair.lang2, pair.cldfFormId1, pair.cldfFormId2,
+                    form1, form2, align, fixture.symbolTable, fixture.infoModels[lang1], fixture.infoModels[lang2]));
+        }
+    }
+
+    @Benchmark
+    public FormProjectionModel[] countAlignments(BenchmarkFixture fixture) {
+        return SoundGroupStabilityOutput.inferProjectionModels(fixture.alignments, fixture.index, 1);
+    }
+
+    /**
+     * Finalization does not modify the raw counts, so the shared models can be finalized again in every invocation.
+     */
+    @Benchmark
+    public FormProjectionModel[] finalizeCounts(BenchmarkFixture fixture) {
+        for (FormProjectionModel model : fixture.rawModels) {
+            model.finalizeCounts(5);
+        }
+        return fixture.rawModels;
+    }
+
+    @Benchmark
+    public ShiftCounts[] countShiftsForThresholds(BenchmarkFixture fixture) {
+        double[][] pairFactors = SoundGroupStabilityOutput.computePairFactors(fixture.rawModels, fixture.index, new int[] {3, 5, 10});
+        return SoundGroupStabilityOutput.countShifts(fixture.alignments, pairFactors, fixture.symbolTable, null, fixture.db);
+    }
+
+    @Benchmark
+    public int[][] sampleMapping(SamplingInput input) {
+        return input.model.sampleMappings(input.lang1Forms, input.random);
+    }
+
+    @Benchmark
+    public void endToEnd(BenchmarkFixture fixture) {
+        List<AlignedFormPair> alignments = SoundGroupStabilityOutput.alignCognatePairs(fixture.db, fixture.index, fixture.segments,
+                fixture.corrModel, fixture.infoModels, false, 1);
+        FormProjectionModel[] models = SoundGroupStabilityOutput.inferProjectionModels(alignments, fixture.index, 1);
+        double[] pairFactors = SoundGroupStabilityOutput.computePairFactors(models, fixture.index, 5);
+        ShiftCounts shiftCounts = SoundGroupStabilityOutput.countShifts(alignments, pairFactors, fixture.symbolTable, null, fixture.db);
+        SoundGroupStabilityOutput.printStabilityTable(fixture.soundGroups, shiftCounts, new PrintStream(new OutputStream() {
+            public void write(int b) {
+            }
+        }));
+    }
+}
@@ -0,0 +1,90 @@
+package de.tuebingen.sfs.iconevol;
+
+import java.io.FileInputStream;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import de.jdellert.iwsa.corrmodel.CorrespondenceModel;
+import de.jdellert.iwsa.corrmodel.CorrespondenceModelStorage;
+import de.jdellert.iwsa.infomodel.InformationModel;
+import de.jdellert.iwsa.sequence.PhoneticSymbolTable;
+import de.jdellert.iwsa.tokenize.IPATokenizer;
+import de.tuebingen.sfs.cldfjava.data.CLDFForm;
+import de.tuebingen.sfs.cldfjava.data.CLDFWordlistDatabase;
+import de.tuebingen.sfs.cldfjava.io.CLDFImport;
+import de.tuebingen.sfs.util.LanguageTree;
+
+/**
+ * Shared benchmark input for one family (see -Diconevol.dataDir and -Diconevol.soundGroups), with all intermediate results computed once.
+ */
+
+@State(Scope.Benchmark)
+public class BenchmarkFixture {
+    // number of forms and alignments used by the per-item benchmarks
+    static final int NUM_ITEMS = 1000;
+
+    @Param({"Uralic"})
+    public String family;
+
+    CLDFWordlistDatabase db;
+    Map<String, Set<String>> soundGroups;
+    IPATokenizer tokenizer;
+    CorrespondenceModel corrModel;
+    PhoneticSymbolTable symbolTable;
+
+    PipelineIndex index;
+    InformationModel[] infoModels;
+    FormSegmentCache segments;
+
+    CLDFForm[] forms;
+    List<AlignedFormPair> alignments;
+    List<AlignedFormPair> sampleAlignments;
+    FormProjectionModel[] rawModels;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        String dataDir = System.getProperty("iconevol.dataDir", "../src/main/resources/northeuralex-0.9");
+        soundGroups = IconEvolUtil.loadSoundGroups(System.getProperty("iconevol.soundGroups", "../src/main/resources/sound-group-definitions.tsv"));
+        tokenizer = IconEvolUtil.configureLundTokenizer(soundGroups);
+        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(dataDir + "/global-iw-lund.corr"))) {
+            corrModel = CorrespondenceModelStorage.deserializeCorrespondenceModel(in);
+        }
+        symbolTable = corrModel.getSymbolTable();
+        db = CLDFImport.loadDatabase(dataDir);
+
+        // restrict the run to the languages of one family
+        LanguageTree tree = LanguageTree.fromNewickFile(dataDir + "/tree.nwk");
+        Map<String, String> langToFamily = new TreeMap<String, String>();
+        for (String lang : db.listLanguageISOs()) {
+            if (tree.getFamily(lang).equals(family)) langToFamily.put(lang, family);
+        }
+        if (langToFamily.isEmpty()) throw new IllegalArgumentException("No languages for family " + family);
+        index = new PipelineIndex(LanguagePairSelection.sameFamily(langToFamily), symbolTable);
+        List<String> langs = new ArrayList<String>(langToFamily.keySet());
+        ThreadLocal<IPATokenizer> tokenizers = IconEvolUtil.perThreadLundTokenizer(soundGroups);
+        infoModels = index.infoModelsByLanguage(InformationModelCache.inferInformationModels(db, langs, symbolTable, tokenizers,
+                "benchmark", null, Runtime.getRuntime().availableProcessors()));
+        segments = FormSegmentCache.build(db, symbolTable, tokenizers, Runtime.getRuntime().availableProcessors());
+
+        List<CLDFForm> familyForms = new ArrayList<CLDFForm>();
+        for (CLDFForm form : db.getFormsMap().values()) {
+            if (familyForms.size() == NUM_ITEMS) break;
+            if (langToFamily.containsKey(db.getLanguageMap().get(form.getLangID()).getIso())) familyForms.add(form);
+        }
+        forms = familyForms.toArray(new CLDFForm[familyForms.size()]);
+
+        alignments = SoundGroupStabilityOutput.alignCognatePairs(db, index, segments, corrModel, infoModels, false, Runtime.getRuntime().availableProcessors());
+        sampleAlignments = new ArrayList<AlignedFormPair>(alignments.subList(0, Math.min(NUM_ITEMS, alignments.size())));
+        rawModels = SoundGroupStabilityOutput.inferProjectionModels(alignments, index, Runtime.getRuntime().availableProcessors());
+    }
+}
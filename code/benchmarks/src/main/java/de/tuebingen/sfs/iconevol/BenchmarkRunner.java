@@ -0,0 +1,26 @@
+package de.tuebingen.sfs.iconevol;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler and stores the results as JSON. Usage: BenchmarkRunner [benchmarkRegex [resultFile]]
+ */
+
+public class BenchmarkRunner {
+    public static void main(String[] args) throws RunnerException {
+        String include = (args.length > 0) ? args[0] : AlignmentBenchmarks.class.getSimpleName();
+        String resultFile = (args.length > 1) ? args[1] : "benchmark-results.json";
+        Options options = new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(resultFile)
+                .build();
+        new Runner(options).run();
+    }
+}
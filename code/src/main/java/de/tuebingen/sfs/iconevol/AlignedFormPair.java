@@ -0,0 +1,107 @@
+package de.tuebingen.sfs.iconevol;
+
+import java.util.List;
+
+import de.jdellert.iwsa.align.InformationWeightedSequenceAlignment;
+import de.jdellert.iwsa.align.PhoneticStringAlignment;
+import de.jdellert.iwsa.infomodel.InformationModel;
+import de.jdellert.iwsa.sequence.PhoneticString;
+import de.jdellert.iwsa.sequence.PhoneticSymbolTable;
+
+/**
+ * The aligned symbol IDs and information scores of one ordered pair of cognate forms.
+ */
+
+public class AlignedFormPair {
+    // ID of the ordered language pair in the PipelineIndex of the run
+    int pairID;
+    // index of the cognate set in the order of the database (-1 if not aligned by alignCognatePairs)
+    int cognateSet = -1;
+    String lang1;
+    String lang2;
+
+    int cldfFormId1;
+    int cldfFormId2;
+
+    int[] upperSymbols;
+    int[] lowerSymbols;
+    double[] infoScores;
+
+    public AlignedFormPair(int pairID, String lang1, String lang2, int cldfFormId1, int cldfFormId2, int[] upperSymbols, int[] lowerSymbols, double[] infoScores) {
+        this.pairID = pairID;
+        this.lang1 = lang1;
+        this.lang2 = lang2;
+        this.cldfFormId1 = cldfFormId1;
+        this.cldfFormId2 = cldfFormId2;
+        this.upperSymbols = upperSymbols;
+        this.lowerSymbols = lowerSymbols;
+        this.infoScores = infoScores;
+    }
+
+    public static AlignedFormPair fromAlignment(int pairID, String lang1, String lang2, int cldfFormId1, int cldfFormId2,
+                                               PhoneticString form1, PhoneticString form2, PhoneticStringAlignment align,
+                                               PhoneticSymbolTable symTable, InformationModel infoModel1, InformationModel infoModel2) {
+        List<String[]> pairs = align.getSymbolPairs(symTable);
+        int[] upperSymbols = new int[pairs.size()];
+        int[] lowerSymbols = new int[pairs.size()];
+        double[] infoScores = new double[pairs.size()];
+
+        int pos1 = 0;
+        int pos2 = 0;
+        for (int i = 0; i < pairs.size(); i++) {
+            String upperSymbol = pairs.get(i)[0];
+            String lowerSymbol = pairs.get(i)[1];
+
+            double infoScore = 1.0;
+
+            if (upperSymbol.equals("-")) {
+                infoScore = InformationWeightedSequenceAlignment.getMeanInfoScore(form2, form2, pos2, pos2, infoModel2, infoModel2);
+                pos2++;
+            } else if (lowerSymbol.equals("-")) {
+                infoScore = InformationWeightedSequenceAlignment.getMeanInfoScore(form1, form1, pos1, pos1, infoModel1, infoModel1);
+                pos1++;
+            } else {
+                infoScore = InformationWeightedSequenceAlignment.getMeanInfoScore(form1, form2, pos1, pos2, infoModel1, infoModel2);
+                pos1++;
+                pos2++;
+            }
+
+            upperSymbols[i] = symTable.toInt(upperSymbol);
+            lowerSymbols[i] = symTable.toInt(lowerSymbol);
+            infoScores[i] = infoScore;
+        }
+        return new AlignedFormPair(pairID, lang1, lang2, cldfFormId1, cldfFormId2, upperSymbols, lowerSymbols, infoScores);
+    }
+
+    /**
+     * Derives the alignment for the opposite direction by swapping the two rows.
+     * Information scores are symmetric for matched positions, and only depend on the non-gap side for gap positions.
+     * This is an approximation: the alignment DP breaks ties asymmetrically, so aligning the forms in the opposite
+     * order can yield a different (equally scored) alignment, and the resulting counts can differ slightly.
+     */
+    public AlignedFormPair reverse(int reversePairID) {
+        AlignedFormPair reversed = new AlignedFormPair(reversePairID, lang2, lang1, cldfFormId2, cldfFormId1, lowerSymbols, upperSymbols, infoScores);
+        reversed.cognateSet = cognateSet;
+        return reversed;
+    }
+
+    public int getPairID() {
+        return pairID;
+    }
+
+    public int getCognateSet() {
+        return cognateSet;
+    }
+
+    public String getLang1() {
+        return lang1;
+    }
+
+    public String getLang2() {
+        return lang2;
+    }
+
+    public int getLength() {
+        return upperSymbols.length;
+    }
+}
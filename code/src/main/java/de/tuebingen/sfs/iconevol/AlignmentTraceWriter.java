@@ -0,0 +1,95 @@
+package de.tuebingen.sfs.iconevol;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip-compressed TSV trace of the weighted aligned symbol pairs, written by a background thread (trace() is not thread-safe).
+ */
+
+public class AlignmentTraceWriter implements AutoCloseable {
+    private static final int CHUNK_SIZE = 1 << 16;
+    private static final StringBuilder END_OF_TRACE = new StringBuilder();
+    private static final long HAND_OVER_CHECK_INTERVAL_MS = 1000;
+
+    private final BlockingQueue<StringBuilder> chunks;
+    private final Thread writerThread;
+    private volatile IOException writerException;
+    private StringBuilder currentChunk;
+
+    public AlignmentTraceWriter(String fileName) throws IOException {
+        Writer out = new OutputStreamWriter(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(fileName), CHUNK_SIZE), CHUNK_SIZE), StandardCharsets.UTF_8);
+        this.chunks = new ArrayBlockingQueue<StringBuilder>(16);
+        this.currentChunk = new StringBuilder(CHUNK_SIZE + 256);
+        currentChunk.append("Lang1\tForm1\tLang2\tForm2\tSymbol1\tSymbol2\tInfoScore\tWeight\n");
+        this.writerThread = new Thread(() -> {
+            try {
+                while (true) {
+                    StringBuilder chunk = chunks.take();
+                    if (chunk == END_OF_TRACE) break;
+                    out.append(chunk);
+                }
+            } catch (IOException e) {
+                writerException = e;
+            } catch (RuntimeException e) {
+                writerException = new IOException("Alignment trace writer failed", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    if (writerException == null) writerException = e;
+                }
+            }
+        }, "alignment-trace-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    public void trace(String lang1, String form1, String lang2, String form2, String symbol1, String symbol2, double infoScore, double weight) throws IOException {
+        currentChunk.append(lang1).append('\t').append(form1).append('\t').append(lang2).append('\t').append(form2).append('\t')
+                .append(symbol1).append('\t').append(symbol2).append('\t').append(infoScore).append('\t').append(weight).append('\n');
+        if (currentChunk.length() >= CHUNK_SIZE) {
+            handOver(currentChunk);
+            currentChunk = new StringBuilder(CHUNK_SIZE + 256);
+        }
+    }
+
+    /**
+     * Waits until the writer thread accepts the chunk, failing instead of blocking forever if the thread has stopped.
+     */
+    private void handOver(StringBuilder chunk) throws IOException {
+        try {
+            while (!chunks.offer(chunk, HAND_OVER_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                if (writerException != null) throw writerException;
+                if (!writerThread.isAlive()) throw new IOException("Alignment trace writer stopped unexpectedly");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing alignment trace", e);
+        }
+        if (writerException != null) throw writerException;
+    }
+
+    @Override
+    public void close() throws IOException {
+        handOver(currentChunk);
+        handOver(END_OF_TRACE);
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while finishing alignment trace", e);
+        }
+        if (writerException != null) throw writerException;
+    }
+}
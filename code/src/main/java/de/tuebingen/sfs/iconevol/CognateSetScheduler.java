@@ -0,0 +1,208 @@
+package de.tuebingen.sfs.iconevol;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Schedules the alignment of cost-estimated blocks of cognate sets longest-first, merging the results in database order.
+ */
+
+public class CognateSetScheduler {
+    // the cost limit for a single task is the total cost divided by this number per thread
+    private static final int TASKS_PER_THREAD = 8;
+
+    /**
+     * Computes the alignments for rows [fromRow, toRow) of the pair loop of one cognate set.
+     */
+    public interface BlockAligner {
+        List<AlignedFormPair> align(int set, int fromRow, int toRow);
+    }
+
+    /**
+     * A block of rows of the pair loop of one cognate set, with its estimated cost.
+     */
+    static class Task {
+        final int set;
+        final int fromRow;
+        final int toRow;
+        final long cost;
+
+        Task(int set, int fromRow, int toRow, long cost) {
+            this.set = set;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.cost = cost;
+        }
+    }
+
+    int numThreads;
+    List<Task> tasks;
+    int[] numTasksPerSet;
+    long totalCost;
+
+    // measured by run()
+    long[] busyNanos;
+    long wallNanos;
+
+    /**
+     * @param rowCosts cognate set -> row -> estimated cost of aligning that form with all its partners
+     */
+    public CognateSetScheduler(long[][] rowCosts, int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+        this.totalCost = 0L;
+        for (long[] costs : rowCosts) {
+            for (long cost : costs) {
+                totalCost += cost;
+            }
+        }
+        long maxTaskCost = Math.max(1L, totalCost / (this.numThreads * TASKS_PER_THREAD));
+
+        tasks = new ArrayList<Task>();
+        numTasksPerSet = new int[rowCosts.length];
+        for (int set = 0; set < rowCosts.length; set++) {
+            long[] costs = rowCosts[set];
+            int fromRow = 0;
+            long blockCost = 0L;
+            for (int row = 0; row < costs.length; row++) {
+                blockCost += costs[row];
+                if (blockCost >= maxTaskCost || row == costs.length - 1) {
+                    if (blockCost > 0L) {
+                        tasks.add(new Task(set, fromRow, row + 1, blockCost));
+                        numTasksPerSet[set]++;
+                    }
+                    fromRow = row + 1;
+                    blockCost = 0L;
+                }
+            }
+        }
+        // stable sort, so tasks of equal cost stay in set order
+        Collections.sort(tasks, (task1, task2) -> Long.compare(task2.cost, task1.cost));
+    }
+
+    /**
+     * Estimates the cost of each row of the pair loop as the sum of the DP matrix sizes of its alignments.
+     *
+     * @param formLengths the number of segments of each form of the set
+     * @param langIDs the language ID of each form (-1 for languages not in the index)
+     */
+    public static long[] rowCosts(int[] cldfFormIds, int[] langIDs, int[] formLengths, PipelineIndex index, boolean alignUnorderedPairsOnce) {
+        long[] costs = new long[cldfFormIds.length];
+        for (int i1 = 0; i1 < cldfFormIds.length; i1++) {
+            if (langIDs[i1] == -1) continue;
+            for (int i2 = 0; i2 < cldfFormIds.length; i2++) {
+                if (langIDs[i1] == langIDs[i2]) continue;
+                if (alignUnorderedPairsOnce && cldfFormIds[i2] < cldfFormIds[i1]) continue;
+                if (index.getPairID(langIDs[i1], langIDs[i2]) == -1) continue;
+                costs[i1] += (long) (formLengths[i1] + 1) * (formLengths[i2] + 1);
+            }
+        }
+        return costs;
+    }
+
+    public int getNumTasks() {
+        return tasks.size();
+    }
+
+    /**
+     * Runs all tasks on a fixed pool of worker threads, each taking the most expensive remaining task.
+     * If metrics are given, a cognate set is counted as processed when its last block has been aligned.
+     *
+     * @return cognate set -> its alignments, in the same order as if the whole set had been aligned at once
+     */
+    public List<List<AlignedFormPair>> run(BlockAligner aligner, RunMetrics metrics) {
+        int numSets = numTasksPerSet.length;
+        List<List<AlignedFormPair>> taskResults = new ArrayList<List<AlignedFormPair>>(Collections.nCopies(tasks.size(), (List<AlignedFormPair>) null));
+        AtomicInteger nextTask = new AtomicInteger(0);
+        AtomicInteger[] remainingTasks = new AtomicInteger[numSets];
+        for (int set = 0; set < numSets; set++) {
+            remainingTasks[set] = new AtomicInteger(numTasksPerSet[set]);
+            if (numTasksPerSet[set] == 0 && metrics != null) metrics.count(RunMetrics.COGNATE_SETS, 1);
+        }
+        busyNanos = new long[numThreads];
+
+        List<Callable<Void>> workers = new ArrayList<Callable<Void>>();
+        for (int thread = 0; thread < numThreads; thread++) {
+            final int worker = thread;
+            workers.add(() -> {
+                int taskIndex;
+                while ((taskIndex = nextTask.getAndIncrement()) < tasks.size()) {
+                    long start = System.nanoTime();
+                    Task task = tasks.get(taskIndex);
+                    List<AlignedFormPair> alignments = aligner.align(task.set, task.fromRow, task.toRow);
+                    taskResults.set(taskIndex, alignments);
+                    busyNanos[worker] += System.nanoTime() - start;
+                    if (metrics != null && remainingTasks[task.set].decrementAndGet() == 0) {
+                        metrics.count(RunMetrics.COGNATE_SETS, 1);
+                    }
+                }
+                return null;
+            });
+        }
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        try {
+            for (Future<Void> future : pool.invokeAll(workers)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        wallNanos = System.nanoTime() - start;
+
+        // tasks of a set cover consecutive row blocks, merge them in row order
+        List<List<AlignedFormPair>> alignmentsPerSet = new ArrayList<List<AlignedFormPair>>(numSets);
+        for (int set = 0; set < numSets; set++) {
+            alignmentsPerSet.add(new ArrayList<AlignedFormPair>());
+        }
+        List<Integer> taskOrder = new ArrayList<Integer>();
+        for (int taskIndex = 0; taskIndex < tasks.size(); taskIndex++) {
+            taskOrder.add(taskIndex);
+        }
+        Collections.sort(taskOrder, (index1, index2) -> {
+            Task task1 = tasks.get(index1);
+            Task task2 = tasks.get(index2);
+            return (task1.set != task2.set) ? Integer.compare(task1.set, task2.set) : Integer.compare(task1.fromRow, task2.fromRow);
+        });
+        for (int taskIndex : taskOrder) {
+            alignmentsPerSet.get(tasks.get(taskIndex).set).addAll(taskResults.get(taskIndex));
+        }
+        return alignmentsPerSet;
+    }
+
+    /**
+     * @return worker thread -> fraction of the wall time of the last run() which it spent aligning
+     */
+    public double[] getUtilization() {
+        double[] utilization = new double[numThreads];
+        for (int thread = 0; thread < numThreads; thread++) {
+            utilization[thread] = (wallNanos == 0L) ? 0.0 : (double) busyNanos[thread] / wallNanos;
+        }
+        return utilization;
+    }
+
+    public String utilizationSummary() {
+        double[] utilization = getUtilization();
+        double sum = 0.0;
+        double min = 1.0;
+        StringBuilder perThread = new StringBuilder();
+        for (double threadUtilization : utilization) {
+            sum += threadUtilization;
+            min = Math.min(min, threadUtilization);
+            perThread.append(String.format(" %.1f%%", 100 * threadUtilization));
+        }
+        return String.format("%d tasks on %d threads, utilization mean %.1f%%, min %.1f%% (per thread:%s)",
+                tasks.size(), numThreads, 100 * sum / numThreads, 100 * min, perThread);
+    }
+}
@@ -10,29 +10,71 @@ import de.jdellert.iwsa.infomodel.InformationModelInference;
 import de.jdellert.iwsa.sequence.PhoneticSymbolTable;
 import de.jdellert.iwsa.tokenize.IPATokenizer;
 
-import java.io.FileNotFoundException;
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Set;
 
+/**
+ * Infers the global correspondence model for the Lund tokenization, resuming after the last checkpointed stage (see --force).
+ */
 public class CorrespondenceModelPreparation {
-    public static void main(String[] args) {
-        try {
-            //configure IWSA IPA tokenizer which implements Lund tokenization, using simple new configuration options
-            Map<String, Set<String>> soundGroups = IconEvolUtil.loadSoundGroups("src/main/resources/sound-group-definitions.tsv");
-            IPATokenizer tokenizer = IconEvolUtil.configureLundTokenizer(soundGroups);
-
-            //infer and store global sound correspondences for Lund tokenization (building only on the forms file)
-            LexicalDatabase database = CLDFImport.loadDatabase("src/main/resources/northeuralex-0.9/forms.csv", tokenizer);
+    public static final String CHECKPOINT_DIR = "cache/corrmodels";
+
+    public static void main(String[] args) throws IOException {
+        boolean force = Arrays.asList(args).contains("--force");
+        //configure IWSA IPA tokenizer which implements Lund tokenization, using simple new configuration options
+        Map<String, Set<String>> soundGroups = IconEvolUtil.loadSoundGroups("src/main/resources/sound-group-definitions.tsv");
+        IPATokenizer tokenizer = IconEvolUtil.configureLundTokenizer(soundGroups);
+
+        //all stages only depend on the forms and the tokenization
+        String formsFile = "src/main/resources/northeuralex-0.9/forms.csv";
+        String corrFile = "src/main/resources/northeuralex-0.9/global-iw-lund.corr";
+        String infoModelKey = IconEvolUtil.fingerprint(InformationModelCache.hashFile(formsFile),
+                IconEvolUtil.lundTokenizerFingerprint(soundGroups));
+        String corrModelKey = IconEvolUtil.fingerprint(infoModelKey, "global-iw");
+
+        //stage 3 (correspondence model) completed in an earlier run: no need to load the database at all
+        File corrCheckpoint = new File(CHECKPOINT_DIR, "global-" + corrModelKey.substring(0, 16) + ".corr");
+        if (!force && corrCheckpoint.exists()) {
+            System.err.println("Reusing correspondence model checkpoint " + corrCheckpoint + ".");
+        } else {
+            //stage 1: load and tokenize the forms
+            System.err.print("Loading database... ");
+            LexicalDatabase database = CLDFImport.loadDatabase(formsFile, tokenizer);
             PhoneticSymbolTable symbolTable = database.getSymbolTable();
-            InformationModel[] infoModels = InformationModelInference.inferInformationModels(database, symbolTable);
+            System.err.println("Done.");
 
+            //stage 2: information models, reused from the cache if possible
+            new File(InformationModelCache.DEFAULT_CACHE_DIR).mkdirs();
+            File infoModelCheckpoint = new File(InformationModelCache.DEFAULT_CACHE_DIR, "global-" + infoModelKey.substring(0, 16) + ".info");
+            if (force) infoModelCheckpoint.delete();
+            InformationModel[] infoModels = InformationModelCache.loadOrInfer(infoModelCheckpoint, infoModelKey,
+                    () -> InformationModelInference.inferInformationModels(database, symbolTable));
+
+            //stage 3: global correspondence model, written to a temporary file first so that a crash cannot leave a partial checkpoint
+            System.err.println("Inferring global correspondence model...");
             CorrespondenceModel globalCorrModel = CorrespondenceModelInference.inferGlobalCorrespondenceModel(database, symbolTable, infoModels);
-            CorrespondenceModelStorage.serializeGlobalModelToFile(globalCorrModel, "src/main/resources/northeuralex-0.9/global-iw-lund.corr");
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
+            new File(CHECKPOINT_DIR).mkdirs();
+            File tmpCheckpoint = new File(corrCheckpoint.getPath() + ".tmp");
+            try {
+                CorrespondenceModelStorage.serializeGlobalModelToFile(globalCorrModel, tmpCheckpoint.getPath());
+            } catch (IOException e) {
+                tmpCheckpoint.delete();
+                throw e;
+            }
+            Files.move(tmpCheckpoint.toPath(), corrCheckpoint.toPath(), StandardCopyOption.REPLACE_EXISTING);
         }
+
+        //stage 4: install the model where SoundGroupStabilityOutput expects it
+        Path tmpCorrFile = Paths.get(corrFile + ".tmp");
+        Files.copy(corrCheckpoint.toPath(), tmpCorrFile, StandardCopyOption.REPLACE_EXISTING);
+        Files.move(tmpCorrFile, Paths.get(corrFile), StandardCopyOption.REPLACE_EXISTING);
+        System.err.println("Stored global correspondence model in " + corrFile + ".");
     }
 }
@@ -1,10 +1,16 @@
 package de.tuebingen.sfs.iconevol;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.SplittableRandom;
 import java.util.TreeMap;
 
+import de.jdellert.iwsa.sequence.PhoneticSymbolTable;
+import de.tuebingen.sfs.util.AliasTable;
+import de.tuebingen.sfs.util.IntDoubleMap;
+import de.tuebingen.sfs.util.LongIntMap;
+
 /**
  * Allows to sample from the distribution of mappable strings from one language to another.
  *
@@ -13,186 +19,433 @@ import java.util.TreeMap;
  */
 
 public class FormProjectionModel {
+    public static final int BOUNDARY = -1;
+    private static final int SYMBOL_BITS = 21;
+    private static final int UNKNOWN_SYMBOL = -2;
+
     String lang1;
     String lang2;
 
-    Map<String,Double> lang1SegmentCounts;
-    Map<String,Double> lang2SegmentCounts;
+    PhoneticSymbolTable symTable;
+
+    // indexed by symbol ID, raw counts (the thresholded lang1 totals are computed on demand)
+    double[] lang1SegmentCounts;
+    double[] lang2SegmentCounts;
 
     double totalSegmentCount;
-    private TreeMap<String, Double> gappyBigramCounts;
 
-    Map<String,Map<String,Double>> countForPair;
-    Map<String,Map<String,Double>> countForGappyBigram;
+    // indexed by lang1 symbol ID (null for unseen segments), maps lang2 symbol IDs to counts;
+    // never modified by finalizeCounts, which only ignores the counts below the threshold
+    IntDoubleMap[] countForPair;
 
+    // gappy bigram keys are mapped to context indices, which index the other arrays
+    LongIntMap gappyBigramIndex;
+    long[] gappyBigramKeys;
+    IntDoubleMap[] countForGappyBigram;
+    int numGappyBigrams;
+
+    // samplers, built by finalizeCounts
+    private AliasTable[] pairSamplers;
+    private AliasTable[] gappyBigramSamplers;
+    private AliasTable lang2Sampler;
+    private boolean finalized;
+
+    // the count threshold of the last finalizeCounts call (0 before finalization)
+    int countThreshold;
     double lang1Stability;
 
-    public FormProjectionModel(String lang1, String lang2) {
+    public FormProjectionModel(String lang1, String lang2, PhoneticSymbolTable symTable) {
         this.lang1 = lang1;
         this.lang2 = lang2;
-        this.lang1SegmentCounts = new TreeMap<String,Double>();
-        this.lang2SegmentCounts = new TreeMap<String,Double>();
+        this.symTable = symTable;
+        this.lang1SegmentCounts = new double[symTable.getSize()];
+        this.lang2SegmentCounts = new double[symTable.getSize()];
         this.totalSegmentCount = 0;
-        this.gappyBigramCounts = new TreeMap<String,Double>();
-        this.countForPair = new TreeMap<String,Map<String,Double>>();
-        this.countForGappyBigram = new TreeMap<String,Map<String,Double>>();
+        this.countForPair = new IntDoubleMap[symTable.getSize()];
+        this.gappyBigramIndex = new LongIntMap();
+        this.gappyBigramKeys = new long[16];
+        this.countForGappyBigram = new IntDoubleMap[16];
+        this.numGappyBigrams = 0;
+        this.finalized = false;
+        this.countThreshold = 0;
     }
 
     public double getLang1Stability() {
         return lang1Stability;
     }
 
+    public PhoneticSymbolTable getSymbolTable() {
+        return symTable;
+    }
+
+    private int symbolID(String segment) {
+        if (segment == null || segment.equals("#")) return BOUNDARY;
+        Integer id = symTable.toInt(segment);
+        if (id == null) {
+            throw new IllegalArgumentException("Symbol '" + segment + "' is not defined in the symbol table!");
+        }
+        return id;
+    }
+
     public void storePair(String lang1Segment, String lang2Segment) {
         storePairWithWeight(lang1Segment, lang2Segment, 1.0);
     }
 
     public void storePairWithWeight(String lang1Segment, String lang2Segment, double weight) {
+        storePairWithWeight(symbolID(lang1Segment), symbolID(lang2Segment), weight);
+    }
+
+    public void storePairWithWeight(int lang1Segment, int lang2Segment, double weight) {
         totalSegmentCount += weight;
+        lang1SegmentCounts[lang1Segment] += weight;
+        lang2SegmentCounts[lang2Segment] += weight;
 
-        Double upperSegmentCount = lang1SegmentCounts.get(lang1Segment);
-        if (upperSegmentCount == null) {
-            upperSegmentCount = 0.0;
-            countForPair.put(lang1Segment, new TreeMap<String,Double>());
+        IntDoubleMap pairCounts = countForPair[lang1Segment];
+        if (pairCounts == null) {
+            pairCounts = new IntDoubleMap();
+            countForPair[lang1Segment] = pairCounts;
         }
-        lang1SegmentCounts.put(lang1Segment, upperSegmentCount + weight);
+        pairCounts.add(lang2Segment, weight);
+    }
 
-        Double lowerSegmentCount = lang2SegmentCounts.get(lang2Segment);
-        if (lowerSegmentCount == null) {
-            lowerSegmentCount = 0.0;
-        }
-        lang2SegmentCounts.put(lang2Segment, lowerSegmentCount + weight);
+    /**
+     * Packs a gappy bigram context into a single key; previous and next may be BOUNDARY.
+     */
+    public static long gappyBigramKey(int previous, int symbol, int next) {
+        return ((long) (previous + 1) << (2 * SYMBOL_BITS)) | ((long) (symbol + 1) << SYMBOL_BITS) | (next + 1);
+    }
 
-        Double pairCount = countForPair.get(lang1Segment).get(lang2Segment);
-        if (pairCount == null) {
-            pairCount = 0.0;
-        }
-        countForPair.get(lang1Segment).put(lang2Segment, pairCount + weight);
+    static int unpackSymbol(long gappyBigramKey, int position) {
+        return (int) ((gappyBigramKey >>> ((2 - position) * SYMBOL_BITS)) & ((1L << SYMBOL_BITS) - 1)) - 1;
+    }
+
+    public void storeGappyBigram(String previous, String symbol, String next, String lang2Segment) {
+        storeGappyBigramWithWeight(previous, symbol, next, lang2Segment, 1.0);
+    }
+
+    /**
+     * previous and next can be "#" (or null) for the word boundary.
+     */
+    public void storeGappyBigramWithWeight(String previous, String symbol, String next, String lang2Segment, double weight) {
+        storeGappyBigramWithWeight(symbolID(previous), symbolID(symbol), symbolID(next), symbolID(lang2Segment), weight);
+    }
+
+    public void storeGappyBigramWithWeight(int previous, int symbol, int next, int lang2Segment, double weight) {
+        gappyBigramCountsFor(gappyBigramKey(previous, symbol, next)).add(lang2Segment, weight);
     }
 
-    public void storeGappyBigram(String lang1GappyBigram, String lang2Segment) {
-        storeGappyBigramWithWeight(lang1GappyBigram, lang2Segment, 1.0);
+    IntDoubleMap gappyBigramCountsFor(long gappyBigramKey) {
+        int index = gappyBigramIndex.get(gappyBigramKey);
+        if (index == -1) {
+            index = numGappyBigrams++;
+            if (index == gappyBigramKeys.length) {
+                gappyBigramKeys = Arrays.copyOf(gappyBigramKeys, index * 2);
+                countForGappyBigram = Arrays.copyOf(countForGappyBigram, index * 2);
+            }
+            gappyBigramIndex.put(gappyBigramKey, index);
+            gappyBigramKeys[index] = gappyBigramKey;
+            countForGappyBigram[index] = new IntDoubleMap();
+        }
+        return countForGappyBigram[index];
     }
 
-    public void storeGappyBigramWithWeight(String lang1GappyBigram, String lang2Segment, double weight) {
-        Map<String,Double> gappyBigramCount = countForGappyBigram.get(lang1GappyBigram);
-        if (gappyBigramCount == null) {
-            gappyBigramCount = new TreeMap<String, Double>();
+    /**
+     * Adds all raw counts of another model for the same language pair (used to merge partial counts from parallel workers).
+     */
+    public void addCounts(FormProjectionModel other) {
+        totalSegmentCount += other.totalSegmentCount;
+        for (int s = 0; s < lang1SegmentCounts.length; s++) {
+            lang1SegmentCounts[s] += other.lang1SegmentCounts[s];
+            lang2SegmentCounts[s] += other.lang2SegmentCounts[s];
+            if (other.countForPair[s] == null) continue;
+            if (countForPair[s] == null) {
+                countForPair[s] = new IntDoubleMap(other.countForPair[s].size());
+            }
+            addCounts(countForPair[s], other.countForPair[s]);
         }
-        countForGappyBigram.put(lang1GappyBigram, gappyBigramCount);
+        for (int index = 0; index < other.numGappyBigrams; index++) {
+            addCounts(gappyBigramCountsFor(other.gappyBigramKeys[index]), other.countForGappyBigram[index]);
+        }
+    }
 
-        Double lowerSegmentCount = gappyBigramCount.get(lang2Segment);
-        if (lowerSegmentCount == null) {
-            lowerSegmentCount = 0.0;
+    /**
+     * @return a model for the same language pair with a copy of the raw counts (unfinalized, without samplers)
+     */
+    public FormProjectionModel copy() {
+        FormProjectionModel copy = new FormProjectionModel(lang1, lang2, symTable);
+        copy.addCounts(this);
+        return copy;
+    }
+
+    private static void addCounts(IntDoubleMap counts, IntDoubleMap otherCounts) {
+        for (int slot = 0; slot < otherCounts.capacity(); slot++) {
+            int key = otherCounts.keyAt(slot);
+            if (key != -1) counts.add(key, otherCounts.valueAt(slot));
         }
-        gappyBigramCount.put(lang2Segment, lowerSegmentCount + weight);
     }
 
+    /**
+     * Applies a count threshold: pair counts below it are ignored by the samplers, the stability and the lang1
+     * segment totals. The raw counts are not modified, so the model can be finalized again with another threshold.
+     */
     public void finalizeCounts(int countThreshold) {
-        for (String lang1Segment : lang1SegmentCounts.keySet()) {
-            double lang1SegmentCount = 0.0;
-            for (String lang2Segment : countForPair.get(lang1Segment).keySet()) {
-                double count = countForPair.get(lang1Segment).get(lang2Segment);
-                if (count < countThreshold) {
-                    countForPair.get(lang1Segment).put(lang2Segment, 0.0);
-                } else {
-                    lang1SegmentCount += count;
-                }
+        this.countThreshold = countThreshold;
+        buildSamplers();
+        lang1Stability = stabilityAt(countThreshold);
+        System.err.println("Overall stability for language pair " + lang1 + " -> " + lang2 + ":\t" + lang1Stability);
+    }
+
+    /**
+     * @return the stability of lang1 if pair counts below the threshold are ignored
+     */
+    public double stabilityAt(int countThreshold) {
+        return stabilitiesAt(new int[] {countThreshold})[0];
+    }
+
+    /**
+     * Computes the stability for several count thresholds in one pass over the raw counts.
+     *
+     * @return threshold index -> the stability of lang1 if pair counts below that threshold are ignored
+     */
+    public double[] stabilitiesAt(int[] countThresholds) {
+        double[] numStableSegments = new double[countThresholds.length];
+        for (int s1 = 0; s1 < countForPair.length; s1++) {
+            if (countForPair[s1] == null) continue;
+            double count = countForPair[s1].get(s1);
+            for (int t = 0; t < countThresholds.length; t++) {
+                if (count >= countThresholds[t]) numStableSegments[t] += count;
             }
-            lang1SegmentCounts.put(lang1Segment, lang1SegmentCount);
         }
+        double[] stabilities = new double[countThresholds.length];
+        for (int t = 0; t < countThresholds.length; t++) {
+            stabilities[t] = numStableSegments[t]/totalSegmentCount;
+        }
+        return stabilities;
+    }
 
-        for (String gappyBigram : countForGappyBigram.keySet()) {
-            double gappyBigramCount = 0.0;
-            for (double count : countForGappyBigram.get(gappyBigram).values()) {
-                gappyBigramCount += count;
+    /**
+     * Computes the lang1 segment totals for several count thresholds in one pass over the raw counts.
+     *
+     * @return threshold index -> lang1 symbol ID -> sum of the pair counts of that symbol which reach the threshold
+     */
+    public double[][] lang1SegmentCountsAt(int[] countThresholds) {
+        double[][] segmentCounts = new double[countThresholds.length][countForPair.length];
+        for (int s1 = 0; s1 < countForPair.length; s1++) {
+            IntDoubleMap pairCounts = countForPair[s1];
+            if (pairCounts == null) continue;
+            for (int slot = 0; slot < pairCounts.capacity(); slot++) {
+                if (pairCounts.keyAt(slot) == -1) continue;
+                double count = pairCounts.valueAt(slot);
+                for (int t = 0; t < countThresholds.length; t++) {
+                    if (count >= countThresholds[t]) segmentCounts[t][s1] += count;
+                }
             }
-            gappyBigramCounts.put(gappyBigram, gappyBigramCount);
         }
+        return segmentCounts;
+    }
 
-        double numStableSegments = 0.0;
-        for (String s1 : countForPair.keySet()) {
-            Double stableCount = countForPair.get(s1).get(s1);
-            if (stableCount != null)  numStableSegments += stableCount;
+    /**
+     * Precomputes alias tables for constant-time sampling from the counts, ignoring pair counts below the threshold.
+     */
+    private void buildSamplers() {
+        pairSamplers = new AliasTable[countForPair.length];
+        for (int s1 = 0; s1 < countForPair.length; s1++) {
+            if (countForPair[s1] != null) pairSamplers[s1] = AliasTable.fromCounts(countForPair[s1], countThreshold);
         }
-        lang1Stability = numStableSegments/totalSegmentCount;
-        System.err.println("Overall stability for language pair " + lang1 + " -> " + lang2 + ":\t" + lang1Stability);
+        gappyBigramSamplers = new AliasTable[numGappyBigrams];
+        for (int index = 0; index < numGappyBigrams; index++) {
+            gappyBigramSamplers[index] = AliasTable.fromCounts(countForGappyBigram[index]);
+        }
+        lang2Sampler = AliasTable.fromCounts(lang2SegmentCounts);
+        finalized = true;
     }
 
     public void recomputeStability(Map<String, String> soundToClass) {
-        double numStableSegments = 0.0;
-        for (String s1 : countForPair.keySet()) {
-            String s1Class = soundToClass.get(s1);
-            if (s1Class == null) {
-                System.err.println("ERROR: no sound class defined for '" + s1 + "'!");
+        recomputeStability(soundClassIDs(soundToClass));
+    }
+
+    /**
+     * @return symbol ID -> index of the sound class of the symbol (-1 if no class is defined), for recomputeStability()
+     */
+    public int[] soundClassIDs(Map<String, String> soundToClass) {
+        Map<String, Integer> classIDs = new TreeMap<String, Integer>();
+        int[] symbolClass = new int[symTable.getSize()];
+        for (int s = 0; s < symbolClass.length; s++) {
+            String soundClass = soundToClass.get(symTable.toSymbol(s));
+            if (soundClass == null) {
+                symbolClass[s] = -1;
+                continue;
+            }
+            Integer classID = classIDs.get(soundClass);
+            if (classID == null) {
+                classID = classIDs.size();
+                classIDs.put(soundClass, classID);
             }
-            for (String s2 : countForPair.get(s1).keySet()) {
-                String s2Class = soundToClass.get(s2);
-                if (s2Class == null) {
-                    System.err.println("ERROR: no sound class defined for '" + s2 + "'!");
+            symbolClass[s] = classID;
+        }
+        return symbolClass;
+    }
+
+    /**
+     * Recomputes the stability of lang1 under a sound class assignment, where a correspondence counts as stable
+     * if both segments belong to the same class. Pair counts below the threshold of the last finalizeCounts call are ignored.
+     *
+     * @param symbolClass symbol ID -> sound class index, -1 for symbols without a class (never stable)
+     */
+    public void recomputeStability(int[] symbolClass) {
+        boolean[] reported = new boolean[symbolClass.length];
+        double numStableSegments = 0.0;
+        for (int s1 = 0; s1 < countForPair.length; s1++) {
+            IntDoubleMap pairCounts = countForPair[s1];
+            if (pairCounts == null) continue;
+            int s1Class = symbolClass[s1];
+            if (s1Class == -1) reportMissingClass(s1, reported);
+            for (int slot = 0; slot < pairCounts.capacity(); slot++) {
+                int s2 = pairCounts.keyAt(slot);
+                if (s2 == -1) continue;
+                int s2Class = symbolClass[s2];
+                if (s2Class == -1) {
+                    reportMissingClass(s2, reported);
+                    continue;
                 }
-                if (!s1Class.equals(s2Class)) continue;
-                numStableSegments += countForPair.get(s1).get(s2);
+                if (s1Class != s2Class) continue;
+                double count = pairCounts.valueAt(slot);
+                if (count >= countThreshold) numStableSegments += count;
             }
         }
         lang1Stability = numStableSegments/totalSegmentCount;
         System.err.println("Overall stability for language pair " + lang1 + " -> " + lang2 + ":\t" + lang1Stability);
     }
 
+    private void reportMissingClass(int symbol, boolean[] reported) {
+        if (reported[symbol]) return;
+        reported[symbol] = true;
+        System.err.println("ERROR: no sound class defined for '" + symTable.toSymbol(symbol) + "'!");
+    }
+
     public List<String> sampleMapping(List<String> lang1String) {
-        List<String> sample = new ArrayList<String>(lang1String.size());
+        return sampleMapping(lang1String, new SplittableRandom());
+    }
+
+    public List<String> sampleMapping(List<String> lang1String, SplittableRandom random) {
+        int[] symbolIDs = new int[lang1String.size()];
         for (int i = 0; i < lang1String.size(); i++) {
-            String symbol = lang1String.get(i);
-            String gappyBigram = symbol;
-            if (i == 0) {
-                gappyBigram = "#" + gappyBigram;
-            } else {
-                gappyBigram = lang1String.get(i-1) + gappyBigram;
-            }
-            if (i == lang1String.size() - 1) {
-                gappyBigram += "#";
-            } else {
-                gappyBigram += lang1String.get(i+1);
-            }
+            Integer symbolID = symTable.toInt(lang1String.get(i));
+            symbolIDs[i] = (symbolID == null) ? UNKNOWN_SYMBOL : symbolID;
+        }
+        int[] sampleIDs = new int[symbolIDs.length];
+        sampleMapping(symbolIDs, sampleIDs, random);
+        List<String> sample = new ArrayList<String>(sampleIDs.length);
+        for (int sampleID : sampleIDs) {
+            sample.add(symTable.toSymbol(sampleID));
+        }
+        return sample;
+    }
 
-            Double gappyBigramCount = gappyBigramCounts.get(gappyBigram);
-            if (gappyBigramCount != null) {
-                double cutoff = Math.random() * gappyBigramCount;
-                double pos = 0.0;
-                for (Entry<String,Double> option : countForGappyBigram.get(gappyBigram).entrySet()) {
-                    pos += option.getValue();
-                    if (pos >= cutoff) {
-                        sample.add(option.getKey());
-                        break;
-                    }
-                }
-            } else {
-                Double count = lang1SegmentCounts.get(symbol);
-                if (count != null) {
-                    double cutoff = Math.random() * count;
-                    double pos = 0.0;
-
-                    for (Entry<String,Double> option : countForPair.get(symbol).entrySet()) {
-                        pos += option.getValue();
-                        if (pos >= cutoff) {
-                            sample.add(option.getKey());
-                            break;
-                        }
-                    }
-                } else {
-                    double cutoff = Math.random() * totalSegmentCount;
-                    double pos = 0.0;
-                    for (Entry<String,Double> option : lang2SegmentCounts.entrySet()) {
-                        pos += option.getValue();
-                        if (pos >= cutoff) {
-                            sample.add(option.getKey());
-                            break;
-                        }
-                    }
+    public int[] sampleMapping(int[] lang1Form, SplittableRandom random) {
+        int[] sample = new int[lang1Form.length];
+        sampleMapping(lang1Form, sample, random);
+        return sample;
+    }
+
+    /**
+     * Projects many lang1 forms (as symbol ID sequences) at once, only allocating the result arrays.
+     */
+    public int[][] sampleMappings(int[][] lang1Forms, SplittableRandom random) {
+        int[][] samples = new int[lang1Forms.length][];
+        for (int f = 0; f < lang1Forms.length; f++) {
+            samples[f] = new int[lang1Forms[f].length];
+            sampleMapping(lang1Forms[f], samples[f], random);
+        }
+        return samples;
+    }
+
+    /**
+     * Samples a projection of a lang1 form into the given target array (of the same length), without allocation.
+     * Each segment is drawn from the distribution for its gappy bigram context if that context was observed,
+     * otherwise from the distribution for the segment, and otherwise from the overall lang2 segment distribution.
+     */
+    public void sampleMapping(int[] lang1Form, int[] sample, SplittableRandom random) {
+        if (!finalized) {
+            throw new IllegalStateException("finalizeCounts() needs to be called before sampling from the projection model!");
+        }
+        for (int i = 0; i < lang1Form.length; i++) {
+            int symbolID = lang1Form[i];
+            int previous = (i == 0) ? BOUNDARY : lang1Form[i-1];
+            int next = (i == lang1Form.length - 1) ? BOUNDARY : lang1Form[i+1];
 
+            AliasTable sampler = null;
+            if (symbolID >= 0) {
+                // a context with an unknown neighbour cannot have been observed, but the segment itself can
+                if (previous != UNKNOWN_SYMBOL && next != UNKNOWN_SYMBOL) {
+                    int index = gappyBigramIndex.get(gappyBigramKey(previous, symbolID, next));
+                    if (index != -1) sampler = gappyBigramSamplers[index];
                 }
+                if (sampler == null) sampler = pairSamplers[symbolID];
             }
+            if (sampler == null) sampler = lang2Sampler;
+            if (sampler == null) {
+                throw new IllegalStateException("Projection model " + lang1 + " -> " + lang2 + " does not contain any counts to sample from!");
+            }
+            sample[i] = sampler.sample(random);
         }
-        return sample;
+    }
+
+    /**
+     * @return the lang1 segment totals, only over the pair counts which reach the threshold once the model is finalized
+     */
+    public Map<String,Double> getLang1SegmentCounts() {
+        double[] segmentCounts = finalized ? lang1SegmentCountsAt(new int[] {countThreshold})[0] : lang1SegmentCounts;
+        Map<String,Double> counts = new TreeMap<String,Double>();
+        for (int s = 0; s < countForPair.length; s++) {
+            if (countForPair[s] != null) counts.put(symTable.toSymbol(s), segmentCounts[s]);
+        }
+        return counts;
+    }
+
+    public Map<String,Double> getLang2SegmentCounts() {
+        Map<String,Double> counts = new TreeMap<String,Double>();
+        for (int s = 0; s < lang2SegmentCounts.length; s++) {
+            if (lang2SegmentCounts[s] != 0.0) counts.put(symTable.toSymbol(s), lang2SegmentCounts[s]);
+        }
+        return counts;
+    }
+
+    /**
+     * @return the raw pair counts, including those below the count threshold
+     */
+    public Map<String,Map<String,Double>> getCountForPair() {
+        Map<String,Map<String,Double>> counts = new TreeMap<String,Map<String,Double>>();
+        for (int s = 0; s < countForPair.length; s++) {
+            if (countForPair[s] != null) counts.put(symTable.toSymbol(s), toSymbolMap(countForPair[s]));
+        }
+        return counts;
+    }
+
+    /**
+     * @return the gappy bigram counts, keyed by the three context symbols separated by spaces ("#" for the word boundary)
+     */
+    public Map<String,Map<String,Double>> getCountForGappyBigram() {
+        Map<String,Map<String,Double>> counts = new TreeMap<String,Map<String,Double>>();
+        for (int index = 0; index < numGappyBigrams; index++) {
+            long key = gappyBigramKeys[index];
+            String context = toSymbolOrBoundary(unpackSymbol(key, 0)) + " " + toSymbolOrBoundary(unpackSymbol(key, 1))
+                    + " " + toSymbolOrBoundary(unpackSymbol(key, 2));
+            counts.put(context, toSymbolMap(countForGappyBigram[index]));
+        }
+        return counts;
+    }
+
+    private String toSymbolOrBoundary(int symbolID) {
+        return (symbolID == BOUNDARY) ? "#" : symTable.toSymbol(symbolID);
+    }
+
+    private Map<String,Double> toSymbolMap(IntDoubleMap counts) {
+        Map<String,Double> symbolCounts = new TreeMap<String,Double>();
+        for (int key : counts.sortedKeys()) {
+            symbolCounts.put(symTable.toSymbol(key), counts.get(key));
+        }
+        return symbolCounts;
     }
 
 }
@@ -0,0 +1,210 @@
+package de.tuebingen.sfs.iconevol;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.jdellert.iwsa.sequence.PhoneticString;
+import de.jdellert.iwsa.sequence.PhoneticSymbolTable;
+import de.jdellert.iwsa.tokenize.IPATokenizer;
+import de.tuebingen.sfs.cldfjava.data.CLDFForm;
+import de.tuebingen.sfs.cldfjava.data.CLDFWordlistDatabase;
+
+/**
+ * Memoizes the tokenized and encoded segments of every CLDF form, optionally persisted to a binary file.
+ */
+
+public class FormSegmentCache {
+    private static final int MAGIC = 0x49435347; // "ICSG"
+    private static final int VERSION = 1;
+
+    private final Map<Integer, PhoneticString> segmentsForForm;
+    private final CLDFWordlistDatabase db;
+    private final PhoneticSymbolTable symTable;
+    private final ThreadLocal<IPATokenizer> tokenizers;
+
+    FormSegmentCache(Map<Integer, PhoneticString> segmentsForForm, CLDFWordlistDatabase db, PhoneticSymbolTable symTable, ThreadLocal<IPATokenizer> tokenizers) {
+        this.segmentsForForm = segmentsForForm;
+        this.db = db;
+        this.symTable = symTable;
+        this.tokenizers = tokenizers;
+    }
+
+    /**
+     * Tokenizes and encodes all forms of the database with a single tokenizer instance, on the calling thread.
+     */
+    public static FormSegmentCache build(CLDFWordlistDatabase db, PhoneticSymbolTable symTable, IPATokenizer tokenizer) {
+        return build(db, symTable, ThreadLocal.withInitial(() -> tokenizer), 1);
+    }
+
+    /**
+     * Tokenizes and encodes all forms of the database, distributing the forms over numThreads workers.
+     * Each worker uses its own tokenizer (see IconEvolUtil.perThreadLundTokenizer), the forms are looked up before.
+     */
+    public static FormSegmentCache build(CLDFWordlistDatabase db, PhoneticSymbolTable symTable, ThreadLocal<IPATokenizer> tokenizers, int numThreads) {
+        List<Integer> formIds = new ArrayList<Integer>(db.getFormsMap().keySet());
+        List<CLDFForm> forms = new ArrayList<CLDFForm>(formIds.size());
+        for (int formId : formIds) {
+            forms.add(db.getFormsMap().get(formId));
+        }
+        List<PhoneticString> segments = IconEvolUtil.runInParallel(numThreads, () -> {
+            List<PhoneticString> result = new ArrayList<PhoneticString>(forms.size());
+            forms.parallelStream()
+                    .map(form -> IconEvolUtil.extractSegments(form, symTable, tokenizers.get()))
+                    .forEachOrdered(result::add);
+            return result;
+        });
+        Map<Integer, PhoneticString> segmentsForForm = new HashMap<Integer, PhoneticString>(formIds.size() * 2);
+        for (int i = 0; i < formIds.size(); i++) {
+            segmentsForForm.put(formIds.get(i), segments.get(i));
+        }
+        return new FormSegmentCache(segmentsForForm, db, symTable, tokenizers);
+    }
+
+    /**
+     * Loads the cache from cacheFile if it was built with the same fingerprint, otherwise builds it and stores it there.
+     */
+    public static FormSegmentCache loadOrBuild(String cacheFile, String fingerprint, CLDFWordlistDatabase db, PhoneticSymbolTable symTable,
+                                               ThreadLocal<IPATokenizer> tokenizers, int numThreads) {
+        if (new File(cacheFile).exists()) {
+            try {
+                Map<Integer, PhoneticString> segmentsForForm = readFromFile(cacheFile, fingerprint, symTable);
+                if (segmentsForForm != null) {
+                    return new FormSegmentCache(segmentsForForm, db, symTable, tokenizers);
+                }
+            } catch (IOException e) {
+                System.err.println("WARNING: could not read segment cache " + cacheFile + ", rebuilding: " + e.toString());
+            }
+        }
+        FormSegmentCache cache = build(db, symTable, tokenizers, numThreads);
+        try {
+            cache.writeToFile(cacheFile, fingerprint);
+        } catch (IOException e) {
+            System.err.println("WARNING: could not write segment cache " + cacheFile + ": " + e.toString());
+        }
+        return cache;
+    }
+
+    /**
+     * Safe to call from several threads: the map is only read, and forms missing from it
+     * (which does not happen for the database the cache was built from) are tokenized one at a time.
+     */
+    public PhoneticString getSegments(int cldfFormId) {
+        PhoneticString segments = segmentsForForm.get(cldfFormId);
+        if (segments == null) {
+            synchronized (this) {
+                segments = IconEvolUtil.extractSegments(db.getFormsMap().get(cldfFormId), symTable, tokenizers.get());
+            }
+        }
+        return segments;
+    }
+
+    public int size() {
+        return segmentsForForm.size();
+    }
+
+    public void writeToFile(String fileName, String fingerprint) throws IOException {
+        File tmpFile = new File(fileName + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, fingerprint);
+            out.writeInt(symTable.getSize());
+            for (int s = 0; s < symTable.getSize(); s++) {
+                writeString(out, symTable.toSymbol(s));
+            }
+            out.writeInt(segmentsForForm.size());
+            for (Map.Entry<Integer, PhoneticString> entry : segmentsForForm.entrySet()) {
+                out.writeInt(entry.getKey());
+                int[] segments = entry.getValue().segments;
+                out.writeInt(segments.length);
+                for (int segment : segments) out.writeInt(segment);
+            }
+        }
+        File targetFile = new File(fileName);
+        if (targetFile.exists() && !targetFile.delete()) {
+            throw new IOException("Could not replace existing segment cache " + fileName);
+        }
+        if (!tmpFile.renameTo(targetFile)) {
+            throw new IOException("Could not move segment cache to " + fileName);
+        }
+    }
+
+    /**
+     * @return the cached segments, or null if the cache was built with a different fingerprint or symbols
+     * @throws IOException if the file is not a segment cache of the current version, or is truncated or corrupt
+     */
+    static Map<Integer, PhoneticString> readFromFile(String fileName, String expectedFingerprint, PhoneticSymbolTable symTable) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "r"); FileChannel channel = file.getChannel()) {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return readSegments(in, fileName, expectedFingerprint, symTable);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Segment cache " + fileName + " is truncated or corrupt", e);
+        }
+    }
+
+    private static Map<Integer, PhoneticString> readSegments(ByteBuffer in, String fileName, String expectedFingerprint, PhoneticSymbolTable symTable) throws IOException {
+        if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+            throw new IOException(fileName + " is not a segment cache of the current version!");
+        }
+        if (!readString(in).equals(expectedFingerprint)) {
+            return null;
+        }
+        int numSymbols = readCount(in, 4);
+        int[] symbolIDs = new int[numSymbols];
+        for (int s = 0; s < numSymbols; s++) {
+            Integer id = symTable.toInt(readString(in));
+            if (id == null) return null;
+            symbolIDs[s] = id;
+        }
+        int numForms = readCount(in, 8);
+        Map<Integer, PhoneticString> segmentsForForm = new HashMap<Integer, PhoneticString>(numForms * 2);
+        for (int f = 0; f < numForms; f++) {
+            int formId = in.getInt();
+            int[] segments = new int[readCount(in, 4)];
+            for (int i = 0; i < segments.length; i++) {
+                int index = in.getInt();
+                if (index < 0 || index >= numSymbols) {
+                    throw new IOException("Segment cache " + fileName + " refers to symbol index " + index + " out of range!");
+                }
+                segments[i] = symbolIDs[index];
+            }
+            segmentsForForm.put(formId, new PhoneticString(segments));
+        }
+        return segmentsForForm;
+    }
+
+    /**
+     * Reads a count of items which take up at least minBytesPerItem bytes each, and checks it against the remaining bytes.
+     */
+    private static int readCount(ByteBuffer in, int minBytesPerItem) throws IOException {
+        int count = in.getInt();
+        if (count < 0 || (long) count * minBytesPerItem > in.remaining()) {
+            throw new IOException("Segment cache contains an invalid count " + count);
+        }
+        return count;
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) throws IOException {
+        byte[] bytes = new byte[readCount(in, 1)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -12,14 +12,60 @@ import de.tuebingen.sfs.util.LanguageTree;
 import de.tuebingen.sfs.util.ListReader;
 import de.tuebingen.sfs.util.Pair;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Stream;
 
 public class IconEvolUtil {
+    // the stability tables read by loadLexicalStabilities() and loadSoundGroupStabilities(), relative to the working directory
+    // unless overridden by the system properties iconevol.lexicalStabilities and iconevol.soundGroupStabilities
+    public static final String DEFAULT_LEXICAL_STABILITY_FILE = "lexical-stability.tsv";
+    public static final String DEFAULT_SOUND_GROUP_STABILITY_FILE = "soundgroup-stability.tsv";
+
+    // the fixed rules of the Lund tokenization (in addition to the sounds of the sound groups), see configureLundTokenizer()
+    static final char[] LUND_IGNORED_SYMBOLS = {
+            ' ', '-', '_', '.', '|', '͡', 'ˈ', 'ˌ',
+            '˦', '˨', 'ˑ', '̃', '̆', '̈', '̚', '̜',
+            '̝', '̞', '̟', '̯', '̰', '̹', '̻', '͈',
+            '́', '̂', '̄', '̌', 'ʼ', '̪', '̇', '̩',
+            '̬'
+    };
+    // source sequence followed by its replacement
+    static final String[][] LUND_SEQUENCE_TRANSFORMATIONS = {
+            //replacements defined by the Lund tokenization
+            {"ɫ", "l", "ɣ"},
+            {"ɡ̥", "k"},
+            {"b̥", "p"},
+            {"d̥", "t"},
+            //replacements for correcting a few transcription errors in NorthEuraLex 0.9
+            {"sʰː", "s", "sʰ"},
+            {"k̥", "k"},
+            {"v̥", "f"},
+            {"x̥", "x"},
+            {"ḥ", "h"},
+            {"ž", "ʒ"},
+            {"ē", "e", "e"},
+            {"ī", "i", "i"},
+            {"ō", "o", "o"},
+            {"á", "a"},
+            {"é", "e"},
+            {"í", "i"},
+            {"ô", "o"},
+            {"à", "a"},
+            {"ò", "o"},
+            {"ʲ̥", "ʲ"}
+    };
+    static final String LUND_GEMINATION_SYMBOL = "ː";
 
     public static PhoneticString extractSegments(CLDFForm form, PhoneticSymbolTable symTable, IPATokenizer tokenizer) {
         if (form == null)
@@ -35,6 +81,62 @@ public class IconEvolUtil {
         }
     }
 
+    /**
+     * Runs a (parallel stream) computation inside a dedicated fork-join pool with the given number of worker threads.
+     */
+    public static <T> T runInParallel(int numThreads, Callable<T> task) {
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, numThreads));
+        try {
+            return pool.submit(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Collects all sounds which are treated as unchanged symbols by the tokenizer configured for the given sound groups.
+     */
+    public static Set<String> getTokenizerSymbols(Map<String, Set<String>> soundGroups) {
+        Set<String> symbols = new TreeSet<String>();
+        for (Set<String> soundGroup : soundGroups.values()) {
+            symbols.addAll(soundGroup);
+        }
+        return symbols;
+    }
+
+    /**
+     * Computes a SHA-256 fingerprint (as a hex string) over the string representations of the given parts,
+     * used to decide whether a cached intermediate result is still valid.
+     */
+    public static String fingerprint(Object... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Object part : parts) {
+                digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * IPATokenizer is not documented to be safe for concurrent use, so parallel stages give each worker thread its own instance.
+     */
+    public static ThreadLocal<IPATokenizer> perThreadLundTokenizer(Map<String, Set<String>> soundGroups) {
+        return ThreadLocal.withInitial(() -> configureLundTokenizer(soundGroups));
+    }
+
     public static IPATokenizer configureLundTokenizer(Map<String, Set<String>> soundGroups) {
         GreedyIPATokenizerConfiguration config = new GreedyIPATokenizerConfiguration();
 
@@ -44,77 +146,64 @@ public class IconEvolUtil {
             }
         }
 
-        config.addIgnoredSymbol(' ');
-        config.addIgnoredSymbol('-');
-        config.addIgnoredSymbol('_');
-        config.addIgnoredSymbol('.');
-        config.addIgnoredSymbol('|');
-        config.addIgnoredSymbol('͡');
-        config.addIgnoredSymbol('ˈ');
-        config.addIgnoredSymbol('ˌ');
-        config.addIgnoredSymbol('˦');
-        config.addIgnoredSymbol('˨');
-        config.addIgnoredSymbol('ˑ');
-        config.addIgnoredSymbol('̃');
-        config.addIgnoredSymbol('̆');
-        config.addIgnoredSymbol('̈');
-        config.addIgnoredSymbol('̚');
-        config.addIgnoredSymbol('̜');
-        config.addIgnoredSymbol('̝');
-        config.addIgnoredSymbol('̞');
-        config.addIgnoredSymbol('̟');
-        config.addIgnoredSymbol('̯');
-        config.addIgnoredSymbol('̰');
-        config.addIgnoredSymbol('̹');
-        config.addIgnoredSymbol('̻');
-        config.addIgnoredSymbol('͈');
-        config.addIgnoredSymbol('́');
-        config.addIgnoredSymbol('̂');
-        config.addIgnoredSymbol('̄');
-        config.addIgnoredSymbol('̌');
-        config.addIgnoredSymbol('ʼ');
-        config.addIgnoredSymbol('̪');
-        config.addIgnoredSymbol('̇');
-        config.addIgnoredSymbol('̩');
-        config.addIgnoredSymbol('̬');
-
-        //replacements defined by the Lund tokenization
-        config.addSequenceTransformation("ɫ", Arrays.asList(new String[] {"l", "ɣ"}));
-        config.addSequenceTransformation("ɡ̥", Arrays.asList(new String[] {"k"}));
-        config.addSequenceTransformation("b̥", Arrays.asList(new String[] {"p"}));
-        config.addSequenceTransformation("d̥", Arrays.asList(new String[] {"t"}));
-
-        //replacements for correcting a few transcription errors in NorthEuraLex 0.9
-        config.addSequenceTransformation("sʰː", Arrays.asList(new String[] {"s", "sʰ"}));
-        config.addSequenceTransformation("k̥", Arrays.asList(new String[] {"k"}));
-        config.addSequenceTransformation("v̥", Arrays.asList(new String[] {"f"}));
-        config.addSequenceTransformation("x̥", Arrays.asList(new String[] {"x"}));
-        config.addSequenceTransformation("ḥ", Arrays.asList(new String[] {"h"}));
-        config.addSequenceTransformation("ž", Arrays.asList(new String[] {"ʒ"}));
-        config.addSequenceTransformation("ē", Arrays.asList(new String[] {"e", "e"}));
-        config.addSequenceTransformation("ī", Arrays.asList(new String[] {"i", "i"}));
-        config.addSequenceTransformation("ō", Arrays.asList(new String[] {"o", "o"}));
-        config.addSequenceTransformation("á", Arrays.asList(new String[] {"a"}));
-        config.addSequenceTransformation("é", Arrays.asList(new String[] {"e"}));
-        config.addSequenceTransformation("í", Arrays.asList(new String[] {"i"}));
-        config.addSequenceTransformation("ô", Arrays.asList(new String[] {"o"}));
-        config.addSequenceTransformation("à", Arrays.asList(new String[] {"a"}));
-        config.addSequenceTransformation("ò", Arrays.asList(new String[] {"o"}));
-        config.addSequenceTransformation("ʲ̥", Arrays.asList(new String[] {"ʲ"}));
-
-        config.factorInGeminationSymbol("ː");
+        for (char symbol : LUND_IGNORED_SYMBOLS) {
+            config.addIgnoredSymbol(symbol);
+        }
+        for (String[] transformation : LUND_SEQUENCE_TRANSFORMATIONS) {
+            config.addSequenceTransformation(transformation[0], Arrays.asList(transformation).subList(1, transformation.length));
+        }
+
+        config.factorInGeminationSymbol(LUND_GEMINATION_SYMBOL);
 
         return new IPATokenizer(config);
     }
 
+    /**
+     * Fingerprint of the tokenizer built by configureLundTokenizer(), covering the sounds and the fixed rules.
+     */
+    public static String lundTokenizerFingerprint(Map<String, Set<String>> soundGroups) {
+        return fingerprint(getTokenizerSymbols(soundGroups), new String(LUND_IGNORED_SYMBOLS),
+                Arrays.deepToString(LUND_SEQUENCE_TRANSFORMATIONS), LUND_GEMINATION_SYMBOL);
+    }
+
+    /**
+     * Hashes the contents of the CLDF tables and metadata (*.csv, *.json) in a database directory,
+     * ignoring other files such as stored segment caches.
+     */
+    public static String hashDatabase(String dbDir) throws IOException {
+        File[] files = new File(dbDir).listFiles((dir, name) -> name.endsWith(".csv") || name.endsWith(".json"));
+        if (files == null) {
+            throw new FileNotFoundException("database directory \"" + dbDir + "\" not found!");
+        }
+        Arrays.sort(files);
+        List<String> parts = new ArrayList<String>();
+        for (File file : files) {
+            parts.add(file.getName());
+            parts.add(InformationModelCache.hashFile(file.getPath()));
+        }
+        return fingerprint(parts.toArray());
+    }
+
     public static  List<Pair<String,String>> defineNorthEuraLexMapping(CLDFWordlistDatabase db) {
         List<Pair<String,String>> nelexConcepts = new LinkedList<Pair<String,String>>();
         for (CLDFParameter concept : db.getConceptMap().values()) {
-            nelexConcepts.add(new Pair<String,String>(concept.getProperties().get("concepticon_proposed"), concept.getParamID()));
+            nelexConcepts.add(new Pair<String,String>(getConcepticonKey(concept.getProperties()), concept.getParamID()));
         }
         return nelexConcepts;
     }
 
+    /**
+     * The Concepticon gloss of a concept from the columns of its parameter table row: the concepticon_proposed column
+     * of NorthEuraLex, or the standard Concepticon_Gloss column of other datasets (null if neither is filled).
+     */
+    public static String getConcepticonKey(Map<String, String> parameterProperties) {
+        for (String column : new String[] {"concepticon_proposed", "Concepticon_Gloss"}) {
+            String gloss = parameterProperties.get(column);
+            if (gloss != null && !gloss.isEmpty()) return gloss;
+        }
+        return null;
+    }
+
     public static Map<String, String> getLangToFamilyMap(List<String> langs, String treeFileName) {
         LanguageTree globalTree = null;
         try {
@@ -123,33 +212,31 @@ public class IconEvolUtil {
             System.err.println("ERROR: tree file \"" + treeFileName + "\" not found!");
             System.exit(1);
         }
+        return getLangToFamilyMap(langs, globalTree);
+    }
 
+    public static Map<String, String> getLangToFamilyMap(List<String> langs, LanguageTree tree) {
         Map<String, String> langToFamily = new TreeMap<String, String>();
         for (String lang : langs) {
-            List<String> path = globalTree.pathFromRoot(lang);
-            if (path.size() == 1) {
-                langToFamily.put(lang, lang);
-            } else {
-                langToFamily.put(lang, globalTree.pathFromRoot(lang).get(1));
-            }
+            langToFamily.put(lang, tree.getFamily(lang));
         }
-
         return langToFamily;
     }
 
     public static Map<String, Double> loadLexicalStabilities() {
-        Map<String,Double> classStabilities = new TreeMap<>();
-        try (Stream<String> stream = Files.lines(Paths.get("/home/jdellert/synchro/arb/hst/iconevol/lexical-stability.tsv"))) {
-            stream.map(s -> s.split("\t")).forEach(entry -> classStabilities.put(entry[0], Double.parseDouble(entry[1])));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        return classStabilities;
+        return loadStabilities(System.getProperty("iconevol.lexicalStabilities", DEFAULT_LEXICAL_STABILITY_FILE));
     }
 
     public static Map<String, Double> loadSoundGroupStabilities() {
+        return loadStabilities(System.getProperty("iconevol.soundGroupStabilities", DEFAULT_SOUND_GROUP_STABILITY_FILE));
+    }
+
+    /**
+     * Loads a two-column TSV file (class name and stability score), e.g. a stability table reduced to its first score.
+     */
+    public static Map<String, Double> loadStabilities(String stabilityTsvFile) {
         Map<String,Double> classStabilities = new TreeMap<>();
-        try (Stream<String> stream = Files.lines(Paths.get("/home/jdellert/synchro/arb/hst/iconevol/soundgroup-stability.tsv"))) {
+        try (Stream<String> stream = Files.lines(Paths.get(stabilityTsvFile))) {
             stream.map(s -> s.split("\t")).forEach(entry -> classStabilities.put(entry[0], Double.parseDouble(entry[1])));
         } catch (IOException e) {
             e.printStackTrace();
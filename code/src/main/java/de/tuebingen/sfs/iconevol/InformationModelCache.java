@@ -0,0 +1,135 @@
+package de.tuebingen.sfs.iconevol;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import de.jdellert.iwsa.infomodel.InformationModel;
+import de.jdellert.iwsa.infomodel.InformationModelInference;
+import de.jdellert.iwsa.sequence.PhoneticSymbolTable;
+import de.jdellert.iwsa.tokenize.IPATokenizer;
+import de.tuebingen.sfs.cldfjava.data.CLDFForm;
+import de.tuebingen.sfs.cldfjava.data.CLDFWordlistDatabase;
+
+/**
+ * Infers the per-language information models in parallel and caches them on disk, keyed by their inputs.
+ */
+
+public class InformationModelCache {
+    public static final String DEFAULT_CACHE_DIR = "cache/infomodels";
+
+    /**
+     * @param cacheDir directory for the cached models, or null to disable caching
+     */
+    public static Map<String, InformationModel> inferInformationModels(CLDFWordlistDatabase db, List<String> isoCodes, PhoneticSymbolTable symTable,
+                                                                       ThreadLocal<IPATokenizer> tokenizers, String tokenizerFingerprint, String cacheDir, int numThreads) {
+        // collect the forms of each language once, for the form set hashes
+        Map<String, List<String>> formsForLangID = new TreeMap<String, List<String>>();
+        for (CLDFForm form : db.getFormsMap().values()) {
+            List<String> forms = formsForLangID.get(form.getLangID());
+            if (forms == null) {
+                forms = new ArrayList<String>();
+                formsForLangID.put(form.getLangID(), forms);
+            }
+            forms.add(form.getForm());
+        }
+        if (cacheDir != null) new File(cacheDir).mkdirs();
+        String[] symbols = new String[symTable.getSize()];
+        for (int s = 0; s < symbols.length; s++) {
+            symbols[s] = symTable.toSymbol(s);
+        }
+        String symbolTableFingerprint = IconEvolUtil.fingerprint((Object[]) symbols);
+        Map<String, String> langIDForIsoCode = new TreeMap<String, String>();
+        for (String isoCode : isoCodes) {
+            langIDForIsoCode.put(isoCode, db.searchLangIdForIsoCode(isoCode));
+        }
+
+        // the inference only reads the loaded database, the tokenizer is the only mutable object and not shared
+        List<InformationModel> models = IconEvolUtil.runInParallel(numThreads, () -> isoCodes.parallelStream().map(isoCode -> {
+            String langID = langIDForIsoCode.get(isoCode);
+            Supplier<InformationModel> inference = () -> InformationModelInference.inferInformationModelForLanguage(langID, db, symTable, tokenizers.get());
+            if (cacheDir == null) return inference.get();
+            List<String> forms = new ArrayList<String>(formsForLangID.getOrDefault(langID, Collections.<String>emptyList()));
+            Collections.sort(forms);
+            String key = IconEvolUtil.fingerprint(isoCode, IconEvolUtil.fingerprint(forms.toArray()), tokenizerFingerprint, symbolTableFingerprint);
+            return loadOrInfer(new File(cacheDir, isoCode + "-" + key.substring(0, 16) + ".info"), key, inference);
+        }).collect(Collectors.toList()));
+
+        Map<String, InformationModel> infoModels = new TreeMap<String, InformationModel>();
+        for (int i = 0; i < isoCodes.size(); i++) {
+            infoModels.put(isoCodes.get(i), models.get(i));
+        }
+        return infoModels;
+    }
+
+    /**
+     * Reads a cached object stored under the given key, or computes it and stores it in the cache file.
+     * Failures to read or write the cache only lead to a warning and recomputation.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T loadOrInfer(File cacheFile, String key, Supplier<T> inference) {
+        if (cacheFile.exists()) {
+            try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+                if (key.equals(in.readUTF())) {
+                    return (T) in.readObject();
+                }
+            } catch (IOException | ClassNotFoundException e) {
+                System.err.println("WARNING: could not read cached model " + cacheFile + ", recomputing: " + e.toString());
+            }
+        }
+        T result = inference.get();
+        File tmpFile = new File(cacheFile.getPath() + ".tmp");
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            out.writeUTF(key);
+            out.writeObject(result);
+        } catch (NotSerializableException e) {
+            System.err.println("WARNING: model is not serializable, not caching it: " + e.getMessage());
+            tmpFile.delete();
+            return result;
+        } catch (IOException e) {
+            System.err.println("WARNING: could not write cached model " + cacheFile + ": " + e.toString());
+            tmpFile.delete();
+            return result;
+        }
+        if ((cacheFile.exists() && !cacheFile.delete()) || !tmpFile.renameTo(cacheFile)) {
+            System.err.println("WARNING: could not move cached model to " + cacheFile);
+        }
+        return result;
+    }
+
+    /**
+     * Hashes the contents of a file, e.g. to key cached models by their input data.
+     */
+    public static String hashFile(String fileName) throws IOException {
+        try (InputStream in = new DigestInputStream(new BufferedInputStream(new FileInputStream(fileName)), MessageDigest.getInstance("SHA-256"))) {
+            byte[] buffer = new byte[1 << 16];
+            while (in.read(buffer) != -1) {
+                //only reading for the digest
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : ((DigestInputStream) in).getMessageDigest().digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
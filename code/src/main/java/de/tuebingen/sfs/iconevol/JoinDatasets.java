@@ -1,4 +1,299 @@
 package de.tuebingen.sfs.iconevol;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import de.tuebingen.sfs.util.ListReader;
+
+/**
+ * Merges several CLDF wordlists into one JoinedWordlist. Usage: JoinDatasets [--threads N] outputDir datasetDir1 datasetDir2 ...
+ */
+
 public class JoinDatasets {
+
+    /**
+     * The forms of one dataset with dataset-local IDs, only kept until they are merged.
+     */
+    static class DatasetPart {
+        String name;
+        List<String> languageKeys = new ArrayList<String>();
+        List<String> conceptKeys = new ArrayList<String>();
+        List<String> cognateSetKeys = new ArrayList<String>();
+
+        int numForms = 0;
+        int[] formLanguage = new int[1024];
+        int[] formConcept = new int[1024];
+        int[] formCognateSet = new int[1024];
+        String[] formValue = new String[1024];
+        String[] formSegments = new String[1024];
+
+        void addForm(int language, int concept, int cognateSet, String value, String segments) {
+            if (numForms == formLanguage.length) {
+                int newSize = numForms * 2;
+                formLanguage = Arrays.copyOf(formLanguage, newSize);
+                formConcept = Arrays.copyOf(formConcept, newSize);
+                formCognateSet = Arrays.copyOf(formCognateSet, newSize);
+                formValue = Arrays.copyOf(formValue, newSize);
+                formSegments = Arrays.copyOf(formSegments, newSize);
+            }
+            formLanguage[numForms] = language;
+            formConcept[numForms] = concept;
+            formCognateSet[numForms] = cognateSet;
+            formValue[numForms] = value;
+            formSegments[numForms] = segments;
+            numForms++;
+        }
+    }
+
+    public static JoinedWordlist joinDatasets(List<String> datasetDirs, int numThreads) {
+        List<DatasetPart> parts = IconEvolUtil.runInParallel(numThreads, () -> datasetDirs.parallelStream()
+                .map(JoinDatasets::loadDataset)
+                .collect(Collectors.toList()));
+
+        int numForms = 0;
+        for (DatasetPart part : parts) {
+            numForms += part.numForms;
+        }
+        JoinedWordlist wordlist = new JoinedWordlist(numForms);
+        for (int dataset = 0; dataset < parts.size(); dataset++) {
+            DatasetPart part = parts.get(dataset);
+            String name = part.name;
+            if (wordlist.datasets.contains(name)) name += "-" + dataset;
+            wordlist.datasets.add(name);
+
+            int[] languageIDs = new int[part.languageKeys.size()];
+            for (int i = 0; i < languageIDs.length; i++) {
+                languageIDs[i] = wordlist.internLanguage(part.languageKeys.get(i));
+            }
+            int[] conceptIDs = new int[part.conceptKeys.size()];
+            for (int i = 0; i < conceptIDs.length; i++) {
+                conceptIDs[i] = wordlist.internConcept(part.conceptKeys.get(i));
+            }
+            int cognateSetOffset = wordlist.cognateSets.size();
+            for (String cognateSet : part.cognateSetKeys) {
+                wordlist.cognateSets.add(name + "/" + cognateSet);
+            }
+            for (int form = 0; form < part.numForms; form++) {
+                int cognateSet = part.formCognateSet[form];
+                wordlist.addForm(dataset, languageIDs[part.formLanguage[form]], conceptIDs[part.formConcept[form]],
+                        (cognateSet == -1) ? -1 : cognateSetOffset + cognateSet, part.formValue[form], part.formSegments[form]);
+            }
+            // release the dataset-local arrays as early as possible
+            parts.set(dataset, null);
+        }
+        System.err.println("Joined " + wordlist.getNumForms() + " forms for " + wordlist.getLanguages().size() + " languages and "
+                + wordlist.getConcepts().size() + " concepts from " + wordlist.getDatasets().size() + " datasets.");
+        return wordlist;
+    }
+
+    static DatasetPart loadDataset(String datasetDir) {
+        DatasetPart part = new DatasetPart();
+        part.name = new File(datasetDir).getName();
+        try {
+            // CLDF language ID -> local language index, unified by ISO code
+            Map<String, Integer> languageIndex = new HashMap<String, Integer>();
+            Map<String, Integer> languageKeyIndex = new HashMap<String, Integer>();
+            int[] languageColumns = new int[4];
+            ListReader.forEachCSVRecord(datasetDir + "/languages.csv", new String[] {"ID", "ISO639P3code", "Glottocode", "Name"}, languageColumns, fields -> {
+                String id = ListReader.field(fields, languageColumns[0]);
+                String key = ListReader.field(fields, languageColumns[1]);
+                if (key.isEmpty()) key = ListReader.field(fields, languageColumns[2]);
+                if (key.isEmpty()) key = part.name + ":" + id;
+                languageIndex.put(id, localIndex(key, part.languageKeys, languageKeyIndex));
+            });
+
+            // CLDF parameter ID -> local concept index, unified by Concepticon gloss as in defineNorthEuraLexMapping
+            Map<String, Integer> conceptIndex = new HashMap<String, Integer>();
+            Map<String, Integer> conceptKeyIndex = new HashMap<String, Integer>();
+            String[] conceptColumnNames = {"ID", "concepticon_proposed", "Concepticon_Gloss"};
+            int[] conceptColumns = new int[conceptColumnNames.length];
+            ListReader.forEachCSVRecord(datasetDir + "/parameters.csv", conceptColumnNames, conceptColumns, fields -> {
+                Map<String, String> properties = new HashMap<String, String>();
+                for (int i = 1; i < conceptColumnNames.length; i++) {
+                    properties.put(conceptColumnNames[i], ListReader.field(fields, conceptColumns[i]));
+                }
+                String id = ListReader.field(fields, conceptColumns[0]);
+                String key = IconEvolUtil.getConcepticonKey(properties);
+                if (key == null) key = part.name + ":" + id;
+                conceptIndex.put(id, localIndex(key, part.conceptKeys, conceptKeyIndex));
+            });
+
+            // form ID -> local cognate set index (from the cognate table if there is one)
+            Map<String, Integer> cognateSetIndex = new HashMap<String, Integer>();
+            Map<String, Integer> formToCognateSet = new HashMap<String, Integer>();
+            File cognateFile = new File(datasetDir + "/cognates.csv");
+            if (cognateFile.exists()) {
+                int[] cognateColumns = new int[2];
+                ListReader.forEachCSVRecord(cognateFile.getPath(), new String[] {"Form_ID", "Cognateset_ID"}, cognateColumns, fields -> {
+                    String cognateSet = ListReader.field(fields, cognateColumns[1]);
+                    if (cognateSet.isEmpty()) return;
+                    formToCognateSet.put(ListReader.field(fields, cognateColumns[0]), localIndex(cognateSet, part.cognateSetKeys, cognateSetIndex));
+                });
+            }
+
+            int[] formColumns = new int[6];
+            ListReader.forEachCSVRecord(datasetDir + "/forms.csv", new String[] {"ID", "Language_ID", "Parameter_ID", "Form", "Segments", "Cognacy"}, formColumns, fields -> {
+                String languageID = ListReader.field(fields, formColumns[1]);
+                Integer language = languageIndex.get(languageID);
+                if (language == null) {
+                    language = localIndex(part.name + ":" + languageID, part.languageKeys, languageKeyIndex);
+                    languageIndex.put(languageID, language);
+                }
+                String parameterID = ListReader.field(fields, formColumns[2]);
+                Integer concept = conceptIndex.get(parameterID);
+                if (concept == null) {
+                    concept = localIndex(part.name + ":" + parameterID, part.conceptKeys, conceptKeyIndex);
+                    conceptIndex.put(parameterID, concept);
+                }
+                Integer cognateSet = formToCognateSet.get(ListReader.field(fields, formColumns[0]));
+                if (cognateSet == null) {
+                    String cognacy = ListReader.field(fields, formColumns[5]);
+                    cognateSet = (cognacy.isEmpty()) ? -1 : localIndex(cognacy, part.cognateSetKeys, cognateSetIndex);
+                }
+                part.addForm(language, concept, cognateSet, ListReader.field(fields, formColumns[3]), ListReader.field(fields, formColumns[4]));
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not load dataset " + datasetDir, e);
+        }
+        System.err.println("Loaded " + part.numForms + " forms from " + datasetDir + ".");
+        return part;
+    }
+
+    private static int localIndex(String key, List<String> keys, Map<String, Integer> index) {
+        Integer id = index.get(key);
+        if (id == null) {
+            id = keys.size();
+            keys.add(key);
+            index.put(key, id);
+        }
+        return id;
+    }
+
+    /**
+     * Writes the joined wordlist as a CLDF wordlist (forms, languages, parameters and cognates tables with metadata).
+     * Language IDs are the ISO codes (or Glottocodes), parameter IDs are the Concepticon glosses, form IDs are consecutive numbers.
+     * The output directory can be passed to SoundGroupStabilityOutput as --db-dir.
+     */
+    public static void exportCLDF(JoinedWordlist wordlist, String outputDir) throws IOException {
+        new File(outputDir).mkdirs();
+        try (PrintWriter out = openCSV(outputDir + "/languages.csv")) {
+            out.print("ID,Name,ISO639P3code,Glottocode\r\n");
+            for (String language : wordlist.getLanguages()) {
+                // the language keys are ISO codes, Glottocodes (for languages without ISO code) or dataset-local IDs
+                boolean isIsoCode = language.matches("[a-z]{3}");
+                boolean isGlottocode = language.matches("[a-z0-9]{4}[0-9]{4}");
+                out.print(csvRow(language, language, isIsoCode ? language : "", isGlottocode ? language : ""));
+            }
+        }
+        try (PrintWriter out = openCSV(outputDir + "/parameters.csv")) {
+            out.print("ID,Name,Concepticon_Gloss\r\n");
+            for (String concept : wordlist.getConcepts()) {
+                out.print(csvRow(concept, concept, (concept.contains(":")) ? "" : concept));
+            }
+        }
+        try (PrintWriter forms = openCSV(outputDir + "/forms.csv");
+             PrintWriter cognates = openCSV(outputDir + "/cognates.csv")) {
+            forms.print("ID,Language_ID,Parameter_ID,Value,Form,Segments,Source\r\n");
+            cognates.print("ID,Form_ID,Form,Cognateset_ID\r\n");
+            for (int form = 0; form < wordlist.getNumForms(); form++) {
+                String formID = "" + (form + 1);
+                String value = wordlist.getForm(form);
+                forms.print(csvRow(formID, wordlist.getLanguage(form), wordlist.getConcept(form), value, value,
+                        wordlist.formSegments[form], wordlist.getDataset(form)));
+                if (wordlist.getCognateSet(form) >= 0) {
+                    cognates.print(csvRow(formID, formID, value, wordlist.getCognateSetName(wordlist.getCognateSet(form))));
+                }
+            }
+        }
+        writeMetadata(outputDir + "/cldf-metadata.json", wordlist);
+    }
+
+    private static void writeMetadata(String fileName, JoinedWordlist wordlist) throws IOException {
+        String terms = "http://cldf.clld.org/v1.0/terms.rdf#";
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode metadata = mapper.createObjectNode();
+        metadata.put("@context", "http://www.w3.org/ns/csvw");
+        metadata.put("dc:conformsTo", terms + "Wordlist");
+        metadata.put("dc:title", "Joined wordlist (" + String.join(", ", wordlist.getDatasets()) + ")");
+        ArrayNode tables = metadata.putArray("tables");
+        addTable(tables, mapper, "forms.csv", terms + "FormTable", new String[][] {
+                {"ID", terms + "id"}, {"Language_ID", terms + "languageReference"}, {"Parameter_ID", terms + "parameterReference"},
+                {"Value", "http://linguistics-ontology.org/gold/2010/FormUnit"}, {"Form", terms + "form"},
+                {"Segments", terms + "segments"}, {"Source", terms + "source"}});
+        addTable(tables, mapper, "languages.csv", terms + "LanguageTable", new String[][] {
+                {"ID", terms + "id"}, {"Name", terms + "name"}, {"ISO639P3code", terms + "iso639P3code"}, {"Glottocode", terms + "glottocode"}});
+        addTable(tables, mapper, "parameters.csv", terms + "ParameterTable", new String[][] {
+                {"ID", terms + "id"}, {"Name", terms + "name"}, {"Concepticon_Gloss", null}});
+        addTable(tables, mapper, "cognates.csv", terms + "CognateTable", new String[][] {
+                {"ID", terms + "id"}, {"Form_ID", terms + "formReference"}, {"Form", "http://linguistics-ontology.org/gold/2010/FormUnit"},
+                {"Cognateset_ID", terms + "cognatesetReference"}});
+        mapper.enable(SerializationFeature.INDENT_OUTPUT);
+        mapper.writeValue(new File(fileName), metadata);
+    }
+
+    private static void addTable(ArrayNode tables, ObjectMapper mapper, String url, String conformsTo, String[][] columns) {
+        ObjectNode table = tables.addObject();
+        table.put("dc:conformsTo", conformsTo);
+        table.put("url", url);
+        ObjectNode schema = table.putObject("tableSchema");
+        ArrayNode columnNodes = schema.putArray("columns");
+        for (String[] column : columns) {
+            ObjectNode columnNode = columnNodes.addObject();
+            columnNode.put("datatype", "string");
+            if (column[1] != null) columnNode.put("propertyUrl", column[1]);
+            columnNode.put("name", column[0]);
+        }
+        schema.put("primaryKey", "ID");
+    }
+
+    private static PrintWriter openCSV(String fileName) throws IOException {
+        return new PrintWriter(new OutputStreamWriter(new FileOutputStream(fileName), StandardCharsets.UTF_8));
+    }
+
+    private static String csvRow(String... fields) {
+        StringBuilder row = new StringBuilder();
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) row.append(',');
+            String field = fields[i];
+            if (field.indexOf(',') >= 0 || field.indexOf('"') >= 0 || field.indexOf('\n') >= 0 || field.indexOf('\r') >= 0) {
+                row.append('"').append(field.replace("\"", "\"\"")).append('"');
+            } else {
+                row.append(field);
+            }
+        }
+        return row.append("\r\n").toString();
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<String> arguments = new ArrayList<String>(Arrays.asList(args));
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        int threadsIndex = arguments.indexOf("--threads");
+        if (threadsIndex >= 0 && threadsIndex + 1 < arguments.size()) {
+            numThreads = Integer.parseInt(arguments.get(threadsIndex + 1));
+            arguments.remove(threadsIndex + 1);
+            arguments.remove(threadsIndex);
+        }
+        if (arguments.size() < 2) {
+            System.err.println("Usage: JoinDatasets [--threads N] outputDir datasetDir1 datasetDir2 ...");
+            System.exit(2);
+        }
+        JoinedWordlist wordlist = joinDatasets(arguments.subList(1, arguments.size()), numThreads);
+        exportCLDF(wordlist, arguments.get(0));
+    }
 }
@@ -0,0 +1,159 @@
+package de.tuebingen.sfs.iconevol;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact store for the forms of several CLDF wordlists merged by JoinDatasets.
+ */
+
+public class JoinedWordlist {
+    List<String> datasets;
+
+    List<String> languages;
+    Map<String, Integer> languageIndex;
+    List<String> concepts;
+    Map<String, Integer> conceptIndex;
+    List<String> cognateSets;
+
+    int numForms;
+    int[] formDataset;
+    int[] formLanguage;
+    int[] formConcept;
+    // -1 for forms without cognate set
+    int[] formCognateSet;
+    String[] formValue;
+    // segments separated by spaces, as in the CLDF Segments column
+    String[] formSegments;
+
+    public JoinedWordlist(int numForms) {
+        datasets = new ArrayList<String>();
+        languages = new ArrayList<String>();
+        languageIndex = new HashMap<String, Integer>();
+        concepts = new ArrayList<String>();
+        conceptIndex = new HashMap<String, Integer>();
+        cognateSets = new ArrayList<String>();
+        this.numForms = 0;
+        formDataset = new int[numForms];
+        formLanguage = new int[numForms];
+        formConcept = new int[numForms];
+        formCognateSet = new int[numForms];
+        formValue = new String[numForms];
+        formSegments = new String[numForms];
+    }
+
+    int internLanguage(String iso) {
+        return intern(iso, languages, languageIndex);
+    }
+
+    int internConcept(String gloss) {
+        return intern(gloss, concepts, conceptIndex);
+    }
+
+    private static int intern(String key, List<String> keys, Map<String, Integer> index) {
+        Integer id = index.get(key);
+        if (id == null) {
+            id = keys.size();
+            keys.add(key);
+            index.put(key, id);
+        }
+        return id;
+    }
+
+    void addForm(int dataset, int language, int concept, int cognateSet, String value, String segments) {
+        formDataset[numForms] = dataset;
+        formLanguage[numForms] = language;
+        formConcept[numForms] = concept;
+        formCognateSet[numForms] = cognateSet;
+        formValue[numForms] = value;
+        formSegments[numForms] = segments;
+        numForms++;
+    }
+
+    public int getNumForms() {
+        return numForms;
+    }
+
+    public List<String> getDatasets() {
+        return datasets;
+    }
+
+    public List<String> getLanguages() {
+        return languages;
+    }
+
+    /**
+     * @return the ID of the language with the given ISO code, or -1 if it does not occur
+     */
+    public int getLanguageID(String iso) {
+        Integer id = languageIndex.get(iso);
+        return (id == null) ? -1 : id;
+    }
+
+    public List<String> getConcepts() {
+        return concepts;
+    }
+
+    public int getNumCognateSets() {
+        return cognateSets.size();
+    }
+
+    public String getCognateSetName(int cognateSet) {
+        return cognateSets.get(cognateSet);
+    }
+
+    public String getDataset(int form) {
+        return datasets.get(formDataset[form]);
+    }
+
+    public String getLanguage(int form) {
+        return languages.get(formLanguage[form]);
+    }
+
+    public String getConcept(int form) {
+        return concepts.get(formConcept[form]);
+    }
+
+    public int getLanguageID(int form) {
+        return formLanguage[form];
+    }
+
+    public int getConceptID(int form) {
+        return formConcept[form];
+    }
+
+    public int getCognateSet(int form) {
+        return formCognateSet[form];
+    }
+
+    public String getForm(int form) {
+        return formValue[form];
+    }
+
+    public String[] getSegments(int form) {
+        String segments = formSegments[form];
+        return (segments.isEmpty()) ? new String[0] : segments.split(" ");
+    }
+
+    /**
+     * @return for each cognate set, the (ascending) indices of its forms
+     */
+    public int[][] getCognateSetForms() {
+        int[] sizes = new int[cognateSets.size()];
+        for (int form = 0; form < numForms; form++) {
+            if (formCognateSet[form] >= 0) sizes[formCognateSet[form]]++;
+        }
+        int[][] forms = new int[cognateSets.size()][];
+        for (int cognateSet = 0; cognateSet < forms.length; cognateSet++) {
+            forms[cognateSet] = new int[sizes[cognateSet]];
+            sizes[cognateSet] = 0;
+        }
+        for (int form = 0; form < numForms; form++) {
+            int cognateSet = formCognateSet[form];
+            if (cognateSet >= 0) forms[cognateSet][sizes[cognateSet]++] = form;
+        }
+        return forms;
+    }
+}
@@ -0,0 +1,165 @@
+package de.tuebingen.sfs.iconevol;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import de.tuebingen.sfs.util.LanguageTree;
+import de.tuebingen.sfs.util.Pair;
+
+/**
+ * Selects the (ordered) language pairs to align and their weights from the positions of the languages in a LanguageTree.
+ */
+
+public class LanguagePairSelection {
+    public static final int UNLIMITED = -1;
+
+    int minLCADepth = 1;
+    int maxTreeDistance = UNLIMITED;
+    int maxPairsPerClade = UNLIMITED;
+    long seed = 0L;
+    // pair weight is treeDistance^(-distanceWeightExponent), i.e. all pairs count the same by default
+    double distanceWeightExponent = 0.0;
+
+    // selected pairs (in both directions) with their weights
+    Map<String, Map<String, Double>> pairWeights;
+
+    public LanguagePairSelection() {
+        pairWeights = new TreeMap<String, Map<String, Double>>();
+    }
+
+    public LanguagePairSelection(int minLCADepth, int maxTreeDistance, int maxPairsPerClade, long seed, double distanceWeightExponent) {
+        this();
+        this.minLCADepth = minLCADepth;
+        this.maxTreeDistance = maxTreeDistance;
+        this.maxPairsPerClade = maxPairsPerClade;
+        this.seed = seed;
+        this.distanceWeightExponent = distanceWeightExponent;
+    }
+
+    /**
+     * The selection used before clade-level selection was configurable: all pairs of different languages from the
+     * same family, with weight 1.
+     */
+    public static LanguagePairSelection sameFamily(Map<String, String> langToFamily) {
+        LanguagePairSelection selection = new LanguagePairSelection();
+        for (String lang1 : langToFamily.keySet()) {
+            String family1 = langToFamily.get(lang1);
+            for (String lang2 : langToFamily.keySet()) {
+                if (lang1.equals(lang2)) continue;
+                if (!family1.equals(langToFamily.get(lang2))) continue;
+                selection.addPair(lang1, lang2, 1.0);
+            }
+        }
+        return selection;
+    }
+
+    /**
+     * Determines the selected pairs among the given languages according to the configuration.
+     */
+    public LanguagePairSelection select(List<String> langs, LanguageTree tree) {
+        pairWeights.clear();
+
+        // candidate pairs grouped by clade (lowest common ancestor)
+        Map<String, List<Pair<String, String>>> candidatesPerClade = new TreeMap<String, List<Pair<String, String>>>();
+        List<String> sortedLangs = new ArrayList<String>(langs);
+        Collections.sort(sortedLangs);
+        for (int i = 0; i < sortedLangs.size(); i++) {
+            String lang1 = sortedLangs.get(i);
+            for (int j = i + 1; j < sortedLangs.size(); j++) {
+                String lang2 = sortedLangs.get(j);
+                if (lang1.equals(lang2)) continue;
+                if (tree.getLCADepth(lang1, lang2) < minLCADepth) continue;
+                if (maxTreeDistance != UNLIMITED && tree.getTreeDistance(lang1, lang2) > maxTreeDistance) continue;
+                String clade = tree.lowestCommonAncestor(lang1, lang2);
+                List<Pair<String, String>> candidates = candidatesPerClade.get(clade);
+                if (candidates == null) {
+                    candidates = new ArrayList<Pair<String, String>>();
+                    candidatesPerClade.put(clade, candidates);
+                }
+                candidates.add(new Pair<String, String>(lang1, lang2));
+            }
+        }
+
+        int numCandidates = 0;
+        for (String clade : candidatesPerClade.keySet()) {
+            List<Pair<String, String>> candidates = candidatesPerClade.get(clade);
+            numCandidates += candidates.size();
+            if (maxPairsPerClade != UNLIMITED && candidates.size() > maxPairsPerClade) {
+                // the sample for a clade only depends on the seed and the clade, not on the other clades
+                Collections.shuffle(candidates, new Random(seed * 31 + clade.hashCode()));
+                candidates = candidates.subList(0, maxPairsPerClade);
+            }
+            for (Pair<String, String> pair : candidates) {
+                double weight = 1.0;
+                if (distanceWeightExponent != 0.0) {
+                    weight = Math.pow(tree.getTreeDistance(pair.first, pair.second), -distanceWeightExponent);
+                }
+                addPair(pair.first, pair.second, weight);
+                addPair(pair.second, pair.first, weight);
+            }
+        }
+        System.err.println("Selected " + getNumPairs() / 2 + " of " + numCandidates + " candidate language pairs in "
+                + candidatesPerClade.size() + " clades.");
+        return this;
+    }
+
+    private void addPair(String lang1, String lang2, double weight) {
+        Map<String, Double> weightsForLang1 = pairWeights.get(lang1);
+        if (weightsForLang1 == null) {
+            weightsForLang1 = new TreeMap<String, Double>();
+            pairWeights.put(lang1, weightsForLang1);
+        }
+        weightsForLang1.put(lang2, weight);
+    }
+
+    public boolean isSelected(String lang1, String lang2) {
+        Map<String, Double> weightsForLang1 = pairWeights.get(lang1);
+        return weightsForLang1 != null && weightsForLang1.containsKey(lang2);
+    }
+
+    /**
+     * @return the weight of the pair, or 0.0 if it is not selected
+     */
+    public double getWeight(String lang1, String lang2) {
+        Map<String, Double> weightsForLang1 = pairWeights.get(lang1);
+        if (weightsForLang1 == null) return 0.0;
+        Double weight = weightsForLang1.get(lang2);
+        return (weight == null) ? 0.0 : weight;
+    }
+
+    /**
+     * @return the selected second languages for the given first language (in alphabetical order)
+     */
+    public List<String> getPartners(String lang1) {
+        Map<String, Double> weightsForLang1 = pairWeights.get(lang1);
+        if (weightsForLang1 == null) return new ArrayList<String>();
+        return new ArrayList<String>(weightsForLang1.keySet());
+    }
+
+    public List<String> getLanguages() {
+        return new ArrayList<String>(pairWeights.keySet());
+    }
+
+    /**
+     * @return the number of selected ordered pairs
+     */
+    public int getNumPairs() {
+        int numPairs = 0;
+        for (Map<String, Double> weightsForLang1 : pairWeights.values()) {
+            numPairs += weightsForLang1.size();
+        }
+        return numPairs;
+    }
+
+    /**
+     * Describes the configuration, used as part of the fingerprints of cached results.
+     */
+    public String toString() {
+        return "minLCADepth=" + minLCADepth + ",maxTreeDistance=" + maxTreeDistance + ",maxPairsPerClade=" + maxPairsPerClade
+                + ",seed=" + seed + ",distanceWeightExponent=" + distanceWeightExponent;
+    }
+}
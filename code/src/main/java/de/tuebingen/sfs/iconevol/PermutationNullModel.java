@@ -0,0 +1,212 @@
+package de.tuebingen.sfs.iconevol;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Permutation null model for the stability table, which reassigns the sounds to groups by permuting membership rows.
+ */
+
+public class PermutationNullModel {
+    // number of independently seeded chunks the permutations are divided into
+    private static final int NUM_CHUNKS = 256;
+
+    // columns of the result arrays (per group and table column)
+    public static final int NULL_MEAN = 0;
+    public static final int P_HIGHER = 1;
+    public static final int P_LOWER = 2;
+
+    int numGroups;
+    int numSymbols;
+    // group -> member symbol IDs
+    int[][] members;
+    // symbols whose membership rows are permuted: all group members and all other symbols with counts, except the gap
+    int[] pool;
+
+    // per symbol: weighted instances, stable count, loss or gain, and all other shifts
+    double[] instances;
+    double[] stable;
+    double[] lossOrGain;
+    double[] otherShifts;
+    // symbol1 * numSymbols + symbol2 -> weighted shift count, without the diagonal and the gap column
+    double[] shifts;
+
+    public PermutationNullModel(SoundGroupMatrix groups, ShiftCounts counts) {
+        this.numGroups = groups.getNumGroups();
+        this.numSymbols = counts.numSymbols;
+        int gapSymbol = groups.gapSymbol;
+
+        List<List<Integer>> memberLists = new ArrayList<List<Integer>>();
+        for (int group = 0; group < numGroups; group++) {
+            memberLists.add(new ArrayList<Integer>());
+        }
+        List<Integer> poolList = new ArrayList<Integer>();
+        instances = new double[numSymbols];
+        stable = new double[numSymbols];
+        lossOrGain = new double[numSymbols];
+        otherShifts = new double[numSymbols];
+        shifts = new double[numSymbols * numSymbols];
+        for (int symbol1 = 0; symbol1 < numSymbols; symbol1++) {
+            for (int group : groups.groupsOfSymbol[symbol1]) {
+                memberLists.get(group).add(symbol1);
+            }
+            if (symbol1 != gapSymbol && (groups.groupsOfSymbol[symbol1].length > 0 || counts.weightedNumInstances[symbol1] != 0.0)) {
+                poolList.add(symbol1);
+            }
+            instances[symbol1] = counts.weightedNumInstances[symbol1];
+            stable[symbol1] = counts.weightedShiftCounts[symbol1][symbol1];
+            for (int symbol2 = 0; symbol2 < numSymbols; symbol2++) {
+                double weightedCount = counts.weightedShiftCounts[symbol1][symbol2];
+                if (symbol2 == symbol1) continue;
+                if (symbol2 == gapSymbol) {
+                    lossOrGain[symbol1] = weightedCount;
+                } else {
+                    otherShifts[symbol1] += weightedCount;
+                    shifts[symbol1 * numSymbols + symbol2] = weightedCount;
+                }
+            }
+        }
+        members = new int[numGroups][];
+        for (int group = 0; group < numGroups; group++) {
+            members[group] = toArray(memberLists.get(group));
+        }
+        pool = toArray(poolList);
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * @return group -> the values of the stability table under the observed grouping
+     */
+    public double[][] observedValues() {
+        int[] identity = new int[numSymbols];
+        for (int symbol = 0; symbol < numSymbols; symbol++) {
+            identity[symbol] = symbol;
+        }
+        double[][] values = new double[numGroups][SoundGroupMatrix.NUM_SCORES];
+        int[] permutedMembers = new int[numSymbols];
+        for (int group = 0; group < numGroups; group++) {
+            tableValues(group, identity, permutedMembers, values[group]);
+        }
+        return values;
+    }
+
+    /**
+     * Computes the table values of one group with every member s replaced by permutation[s].
+     */
+    void tableValues(int group, int[] permutation, int[] permutedMembers, double[] values) {
+        int[] groupMembers = members[group];
+        double weightedNumAlignments = 0.0;
+        double weightedCountStable = 0.0;
+        double weightedCountShiftInGroup = 0.0;
+        double weightedCountOtherShifts = 0.0;
+        double weightedCountLossOrGain = 0.0;
+        for (int m = 0; m < groupMembers.length; m++) {
+            int symbol = permutation[groupMembers[m]];
+            permutedMembers[m] = symbol;
+            weightedNumAlignments += instances[symbol];
+            weightedCountStable += stable[symbol];
+            weightedCountOtherShifts += otherShifts[symbol];
+            weightedCountLossOrGain += lossOrGain[symbol];
+        }
+        for (int m1 = 0; m1 < groupMembers.length; m1++) {
+            int rowOffset = permutedMembers[m1] * numSymbols;
+            for (int m2 = 0; m2 < groupMembers.length; m2++) {
+                weightedCountShiftInGroup += shifts[rowOffset + permutedMembers[m2]];
+            }
+        }
+        values[SoundGroupMatrix.NUM_ALIGNMENTS] = weightedNumAlignments;
+        values[SoundGroupMatrix.STABLE] = weightedCountStable / weightedNumAlignments;
+        values[SoundGroupMatrix.SHIFT_IN_GROUP] = weightedCountShiftInGroup / weightedNumAlignments;
+        values[SoundGroupMatrix.SHIFT_OUT_OF_GROUP] = (weightedCountOtherShifts - weightedCountShiftInGroup) / weightedNumAlignments;
+        values[SoundGroupMatrix.LOSS_OR_GAIN] = weightedCountLossOrGain / weightedNumAlignments;
+    }
+
+    /**
+     * Runs the permutations and compares each table value of each group with its null distribution.
+     * The p-values are (1 + number of permutations with a value at least as high / low) / (1 + number of permutations).
+     * Permutations in which a group has no alignments are counted with neither tail,
+     * and the p-values are undefined (NaN) for values which are undefined under the observed grouping.
+     *
+     * @return group -> table column -> {null mean, p-value for higher, p-value for lower}
+     */
+    public double[][][] test(int numPermutations, long seed, int numThreads) {
+        double[][] observed = observedValues();
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] randoms = new SplittableRandom[NUM_CHUNKS];
+        for (int chunk = 0; chunk < NUM_CHUNKS; chunk++) {
+            randoms[chunk] = root.split();
+        }
+        // chunk -> group -> column -> {sum of values, number of defined values, count higher, count lower}
+        double[][][][] chunkResults = IconEvolUtil.runInParallel(numThreads, () -> IntStream.range(0, NUM_CHUNKS).parallel()
+                .mapToObj(chunk -> runChunk(observed, numPermutations / NUM_CHUNKS + ((chunk < numPermutations % NUM_CHUNKS) ? 1 : 0), randoms[chunk]))
+                .toArray(double[][][][]::new));
+
+        double[][][] results = new double[numGroups][SoundGroupMatrix.NUM_SCORES][3];
+        for (int group = 0; group < numGroups; group++) {
+            for (int column = 0; column < SoundGroupMatrix.NUM_SCORES; column++) {
+                double sum = 0.0;
+                double numDefined = 0.0;
+                double numHigher = 0.0;
+                double numLower = 0.0;
+                for (double[][][] chunkResult : chunkResults) {
+                    sum += chunkResult[group][column][0];
+                    numDefined += chunkResult[group][column][1];
+                    numHigher += chunkResult[group][column][2];
+                    numLower += chunkResult[group][column][3];
+                }
+                boolean undefined = Double.isNaN(observed[group][column]);
+                results[group][column][NULL_MEAN] = sum / numDefined;
+                results[group][column][P_HIGHER] = undefined ? Double.NaN : (1.0 + numHigher) / (1.0 + numPermutations);
+                results[group][column][P_LOWER] = undefined ? Double.NaN : (1.0 + numLower) / (1.0 + numPermutations);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Fisher-Yates shuffle of the pool symbols among themselves; the other entries of the permutation stay fixed.
+     */
+    void shuffle(int[] permutation, SplittableRandom random) {
+        for (int i = pool.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = permutation[pool[i]];
+            permutation[pool[i]] = permutation[pool[j]];
+            permutation[pool[j]] = swap;
+        }
+    }
+
+    private double[][][] runChunk(double[][] observed, int numPermutations, SplittableRandom random) {
+        double[][][] chunkResult = new double[numGroups][SoundGroupMatrix.NUM_SCORES][4];
+        int[] permutation = new int[numSymbols];
+        for (int symbol = 0; symbol < numSymbols; symbol++) {
+            permutation[symbol] = symbol;
+        }
+        int[] permutedMembers = new int[numSymbols];
+        double[] values = new double[SoundGroupMatrix.NUM_SCORES];
+        for (int p = 0; p < numPermutations; p++) {
+            shuffle(permutation, random);
+            for (int group = 0; group < numGroups; group++) {
+                tableValues(group, permutation, permutedMembers, values);
+                for (int column = 0; column < SoundGroupMatrix.NUM_SCORES; column++) {
+                    double value = values[column];
+                    if (Double.isNaN(value)) continue;
+                    double[] counts = chunkResult[group][column];
+                    counts[0] += value;
+                    counts[1]++;
+                    if (value >= observed[group][column]) counts[2]++;
+                    if (value <= observed[group][column]) counts[3]++;
+                }
+            }
+        }
+        return chunkResult;
+    }
+}
@@ -0,0 +1,128 @@
+package de.tuebingen.sfs.iconevol;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import de.jdellert.iwsa.infomodel.InformationModel;
+import de.jdellert.iwsa.sequence.PhoneticSymbolTable;
+import de.tuebingen.sfs.util.LongIntMap;
+
+/**
+ * Dense int IDs for the languages and the selected (ordered) language pairs of one run.
+ */
+
+public class PipelineIndex {
+    String[] languages;
+    Map<String, Integer> languageIDs;
+
+    int numPairs;
+    int[] pairLang1;
+    int[] pairLang2;
+    double[] pairWeight;
+    private LongIntMap pairIDs;
+
+    PhoneticSymbolTable symTable;
+
+    public PipelineIndex(LanguagePairSelection pairSelection, PhoneticSymbolTable symTable) {
+        List<String> langs = new ArrayList<String>(pairSelection.getLanguages());
+        Collections.sort(langs);
+        languages = langs.toArray(new String[langs.size()]);
+        languageIDs = new TreeMap<String, Integer>();
+        for (int i = 0; i < languages.length; i++) {
+            languageIDs.put(languages[i], i);
+        }
+
+        numPairs = pairSelection.getNumPairs();
+        pairLang1 = new int[numPairs];
+        pairLang2 = new int[numPairs];
+        pairWeight = new double[numPairs];
+        pairIDs = new LongIntMap(numPairs);
+        int pair = 0;
+        for (int lang1 = 0; lang1 < languages.length; lang1++) {
+            for (String partner : pairSelection.getPartners(languages[lang1])) {
+                int lang2 = languageIDs.get(partner);
+                pairLang1[pair] = lang1;
+                pairLang2[pair] = lang2;
+                pairWeight[pair] = pairSelection.getWeight(languages[lang1], partner);
+                pairIDs.put(pairKey(lang1, lang2), pair);
+                pair++;
+            }
+        }
+
+        this.symTable = symTable;
+    }
+
+    private long pairKey(int lang1, int lang2) {
+        return (long) lang1 * languages.length + lang2;
+    }
+
+    /**
+     * @return the ID of the language, or -1 if it is not part of any selected pair
+     */
+    public int getLanguageID(String lang) {
+        Integer id = languageIDs.get(lang);
+        return (id == null) ? -1 : id;
+    }
+
+    public String getLanguage(int lang) {
+        return languages[lang];
+    }
+
+    public int getNumLanguages() {
+        return languages.length;
+    }
+
+    /**
+     * @return the ID of the ordered language pair, or -1 if the pair is not selected
+     */
+    public int getPairID(int lang1, int lang2) {
+        if (lang1 < 0 || lang2 < 0) return -1;
+        return pairIDs.get(pairKey(lang1, lang2));
+    }
+
+    public int getNumPairs() {
+        return numPairs;
+    }
+
+    /**
+     * @return the information models indexed by language ID
+     */
+    public InformationModel[] infoModelsByLanguage(Map<String, InformationModel> infoModels) {
+        InformationModel[] result = new InformationModel[languages.length];
+        for (int lang = 0; lang < languages.length; lang++) {
+            result[lang] = infoModels.get(languages[lang]);
+        }
+        return result;
+    }
+
+    /**
+     * @return the projection models indexed by pair ID (null for pairs without a model)
+     */
+    public FormProjectionModel[] modelsByPair(Map<String, Map<String, FormProjectionModel>> projectionModels) {
+        FormProjectionModel[] result = new FormProjectionModel[numPairs];
+        for (int pair = 0; pair < numPairs; pair++) {
+            Map<String, FormProjectionModel> modelsForLang1 = projectionModels.get(languages[pairLang1[pair]]);
+            if (modelsForLang1 != null) result[pair] = modelsForLang1.get(languages[pairLang2[pair]]);
+        }
+        return result;
+    }
+
+    /**
+     * @return the projection models as nested maps from lang1 to lang2 (as used by ProjectionModelStorage)
+     */
+    public Map<String, Map<String, FormProjectionModel>> modelMap(FormProjectionModel[] modelsByPair) {
+        Map<String, Map<String, FormProjectionModel>> projectionModels = new TreeMap<String, Map<String, FormProjectionModel>>();
+        for (String lang : languages) {
+            projectionModels.put(lang, new TreeMap<String, FormProjectionModel>());
+        }
+        for (int pair = 0; pair < numPairs; pair++) {
+            if (modelsByPair[pair] != null) {
+                projectionModels.get(languages[pairLang1[pair]]).put(languages[pairLang2[pair]], modelsByPair[pair]);
+            }
+        }
+        return projectionModels;
+    }
+}
@@ -0,0 +1,227 @@
+package de.tuebingen.sfs.iconevol;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+import de.jdellert.iwsa.sequence.PhoneticSymbolTable;
+import de.tuebingen.sfs.util.IntDoubleMap;
+
+/**
+ * Versioned binary snapshot of the raw counts of all projection models.
+ */
+
+public class ProjectionModelStorage {
+    private static final int MAGIC = 0x49435048; // "ICPH"
+    private static final int VERSION = 1;
+
+    public static void writeToFile(Map<String, Map<String, FormProjectionModel>> projectionModels, PhoneticSymbolTable symTable,
+                                   String fingerprint, String fileName) throws IOException {
+        File tmpFile = new File(fileName + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, fingerprint);
+
+            int numSymbols = symTable.getSize();
+            out.writeInt(numSymbols);
+            for (int s = 0; s < numSymbols; s++) {
+                writeString(out, symTable.toSymbol(s));
+            }
+
+            int numModels = 0;
+            for (Map<String, FormProjectionModel> modelsForLang1 : projectionModels.values()) {
+                numModels += modelsForLang1.size();
+            }
+            out.writeInt(numModels);
+            for (Map<String, FormProjectionModel> modelsForLang1 : projectionModels.values()) {
+                for (FormProjectionModel model : modelsForLang1.values()) {
+                    writeModel(out, model);
+                }
+            }
+        }
+        File targetFile = new File(fileName);
+        if (targetFile.exists() && !targetFile.delete()) {
+            throw new IOException("Could not replace existing projection model snapshot " + fileName);
+        }
+        if (!tmpFile.renameTo(targetFile)) {
+            throw new IOException("Could not move projection model snapshot to " + fileName);
+        }
+    }
+
+    private static void writeModel(DataOutputStream out, FormProjectionModel model) throws IOException {
+        writeString(out, model.lang1);
+        writeString(out, model.lang2);
+        out.writeDouble(model.totalSegmentCount);
+        for (double count : model.lang1SegmentCounts) out.writeDouble(count);
+        for (double count : model.lang2SegmentCounts) out.writeDouble(count);
+
+        int numRows = 0;
+        for (IntDoubleMap pairCounts : model.countForPair) {
+            if (pairCounts != null) numRows++;
+        }
+        out.writeInt(numRows);
+        for (int s1 = 0; s1 < model.countForPair.length; s1++) {
+            if (model.countForPair[s1] == null) continue;
+            out.writeInt(s1);
+            writeRow(out, model.countForPair[s1]);
+        }
+
+        out.writeInt(model.numGappyBigrams);
+        for (int index = 0; index < model.numGappyBigrams; index++) {
+            out.writeLong(model.gappyBigramKeys[index]);
+            writeRow(out, model.countForGappyBigram[index]);
+        }
+    }
+
+    private static void writeRow(DataOutputStream out, IntDoubleMap counts) throws IOException {
+        out.writeInt(counts.size());
+        for (int key : counts.sortedKeys()) {
+            out.writeInt(key);
+            out.writeDouble(counts.get(key));
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Loads a snapshot of raw projection model counts.
+     *
+     * @return the (not yet finalized) projection models, or null if the snapshot was built with a different fingerprint
+     * @throws IOException if the file is not a valid snapshot (e.g. truncated or corrupt), or contains symbols undefined in symTable
+     */
+    public static Map<String, Map<String, FormProjectionModel>> readFromFile(String fileName, PhoneticSymbolTable symTable,
+                                                                              String expectedFingerprint) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "r"); FileChannel channel = file.getChannel()) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return readSnapshot(in, symTable, expectedFingerprint, fileName);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Projection model snapshot " + fileName + " is truncated or corrupt", e);
+        }
+    }
+
+    private static Map<String, Map<String, FormProjectionModel>> readSnapshot(ByteBuffer in, PhoneticSymbolTable symTable,
+                                                                             String expectedFingerprint, String fileName) throws IOException {
+        if (in.getInt() != MAGIC) {
+            throw new IOException(fileName + " is not a projection model snapshot!");
+        }
+        int version = in.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported projection model snapshot version " + version + " in " + fileName);
+        }
+        String fingerprint = readString(in);
+        if (expectedFingerprint != null && !expectedFingerprint.equals(fingerprint)) {
+            return null;
+        }
+
+        // map the symbol indices of the snapshot to the IDs of the current symbol table
+        int numSymbols = readCount(in, 4);
+        int[] symbolIDs = new int[numSymbols];
+        for (int s = 0; s < numSymbols; s++) {
+            String symbol = readString(in);
+            Integer id = symTable.toInt(symbol);
+            symbolIDs[s] = (id == null) ? -1 : id;
+        }
+
+        Map<String, Map<String, FormProjectionModel>> projectionModels = new TreeMap<String, Map<String, FormProjectionModel>>();
+        int numModels = readCount(in, 1);
+        for (int m = 0; m < numModels; m++) {
+            FormProjectionModel model = readModel(in, symTable, symbolIDs);
+            Map<String, FormProjectionModel> modelsForLang1 = projectionModels.get(model.lang1);
+            if (modelsForLang1 == null) {
+                modelsForLang1 = new TreeMap<String, FormProjectionModel>();
+                projectionModels.put(model.lang1, modelsForLang1);
+            }
+            modelsForLang1.put(model.lang2, model);
+        }
+        return projectionModels;
+    }
+
+    private static FormProjectionModel readModel(ByteBuffer in, PhoneticSymbolTable symTable, int[] symbolIDs) throws IOException {
+        String lang1 = readString(in);
+        String lang2 = readString(in);
+        FormProjectionModel model = new FormProjectionModel(lang1, lang2, symTable);
+        model.totalSegmentCount = in.getDouble();
+        for (int s = 0; s < symbolIDs.length; s++) {
+            double count = in.getDouble();
+            if (count != 0.0) model.lang1SegmentCounts[mapSymbol(symbolIDs, s)] = count;
+        }
+        for (int s = 0; s < symbolIDs.length; s++) {
+            double count = in.getDouble();
+            if (count != 0.0) model.lang2SegmentCounts[mapSymbol(symbolIDs, s)] = count;
+        }
+
+        int numRows = readCount(in, 4);
+        for (int r = 0; r < numRows; r++) {
+            int s1 = mapSymbol(symbolIDs, in.getInt());
+            IntDoubleMap pairCounts = new IntDoubleMap();
+            readRow(in, pairCounts, symbolIDs);
+            model.countForPair[s1] = pairCounts;
+        }
+
+        int numGappyBigrams = readCount(in, 8);
+        for (int index = 0; index < numGappyBigrams; index++) {
+            long key = in.getLong();
+            long mappedKey = FormProjectionModel.gappyBigramKey(mapContextSymbol(symbolIDs, FormProjectionModel.unpackSymbol(key, 0)),
+                    mapContextSymbol(symbolIDs, FormProjectionModel.unpackSymbol(key, 1)),
+                    mapContextSymbol(symbolIDs, FormProjectionModel.unpackSymbol(key, 2)));
+            readRow(in, model.gappyBigramCountsFor(mappedKey), symbolIDs);
+        }
+        return model;
+    }
+
+    private static void readRow(ByteBuffer in, IntDoubleMap counts, int[] symbolIDs) throws IOException {
+        int numEntries = readCount(in, 12);
+        for (int e = 0; e < numEntries; e++) {
+            int s2 = mapSymbol(symbolIDs, in.getInt());
+            counts.add(s2, in.getDouble());
+        }
+    }
+
+    private static int mapSymbol(int[] symbolIDs, int snapshotIndex) throws IOException {
+        if (snapshotIndex < 0 || snapshotIndex >= symbolIDs.length) {
+            throw new IOException("Projection model snapshot refers to symbol index " + snapshotIndex + " out of range!");
+        }
+        int id = symbolIDs[snapshotIndex];
+        if (id == -1) {
+            throw new IOException("Projection model snapshot uses a symbol which is not defined in the symbol table!");
+        }
+        return id;
+    }
+
+    private static int mapContextSymbol(int[] symbolIDs, int snapshotIndex) throws IOException {
+        if (snapshotIndex == FormProjectionModel.BOUNDARY) return FormProjectionModel.BOUNDARY;
+        return mapSymbol(symbolIDs, snapshotIndex);
+    }
+
+    /**
+     * Reads a count of items which take up at least minBytesPerItem bytes each, and checks it against the remaining bytes.
+     */
+    private static int readCount(ByteBuffer in, int minBytesPerItem) throws IOException {
+        int count = in.getInt();
+        if (count < 0 || (long) count * minBytesPerItem > in.remaining()) {
+            throw new IOException("Projection model snapshot contains an invalid count " + count);
+        }
+        return count;
+    }
+
+    private static String readString(ByteBuffer in) throws IOException {
+        byte[] bytes = new byte[readCount(in, 1)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,225 @@
+package de.tuebingen.sfs.iconevol;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Timers, counters, heap sampling and progress reporting for long runs of SoundGroupStabilityOutput.
+ */
+
+public class RunMetrics {
+    public static final String COGNATE_SETS = "cognateSetsProcessed";
+    public static final String PAIRS_ALIGNED = "pairsAligned";
+    public static final String COLUMNS_COUNTED = "columnsCounted";
+    // the heap is sampled more often than progress is reported, as short allocation peaks would be missed otherwise
+    private static final long HEAP_SAMPLE_INTERVAL_MS = 200;
+
+    private final long startTime = System.nanoTime();
+    private final Map<String, Long> phaseDurations = new LinkedHashMap<String, Long>();
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<String, LongAdder>();
+    private final Map<String, Object> settings = new LinkedHashMap<String, Object>();
+    private final Map<String, Double> measurements = new LinkedHashMap<String, Double>();
+
+    private volatile String currentPhase;
+    private volatile long currentPhaseStart;
+    private volatile String progressCounter;
+    private volatile long progressTarget;
+    private volatile long maxUsedHeap;
+
+    private ScheduledExecutorService progressReporter;
+
+    /**
+     * @param progressIntervalSeconds interval of the progress lines on stderr (0 disables them)
+     */
+    public RunMetrics(int progressIntervalSeconds) {
+        progressReporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "progress-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        progressReporter.scheduleAtFixedRate(this::sampleHeap, 0, HEAP_SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        if (progressIntervalSeconds > 0) {
+            progressReporter.scheduleAtFixedRate(this::reportProgress, progressIntervalSeconds, progressIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    public void setting(String name, Object value) {
+        settings.put(name, value);
+    }
+
+    /**
+     * Records a single measured value for the report (e.g. the utilization of a worker thread).
+     */
+    public synchronized void record(String name, double value) {
+        measurements.put(name, value);
+    }
+
+    /**
+     * Ends the current phase (if any) and starts timing the next one.
+     */
+    public synchronized void startPhase(String phase) {
+        endPhase();
+        currentPhase = phase;
+        currentPhaseStart = System.nanoTime();
+        progressCounter = null;
+        progressTarget = 0;
+    }
+
+    public synchronized void endPhase() {
+        if (currentPhase == null) return;
+        Long previous = phaseDurations.get(currentPhase);
+        phaseDurations.put(currentPhase, ((previous == null) ? 0L : previous) + System.nanoTime() - currentPhaseStart);
+        sampleHeap();
+        currentPhase = null;
+    }
+
+    /**
+     * Defines the counter and its final value which determine the progress (and ETA) of the current phase.
+     */
+    public void setProgressTarget(String counter, long target) {
+        progressTarget = target;
+        progressCounter = counter;
+    }
+
+    public void count(String counter, long delta) {
+        LongAdder adder = counters.get(counter);
+        if (adder == null) {
+            adder = counters.computeIfAbsent(counter, name -> new LongAdder());
+        }
+        adder.add(delta);
+    }
+
+    public long getCount(String counter) {
+        LongAdder adder = counters.get(counter);
+        return (adder == null) ? 0L : adder.sum();
+    }
+
+    /**
+     * @return the duration of a completed phase in seconds (0 if the phase was not run)
+     */
+    public double getPhaseSeconds(String phase) {
+        Long duration = phaseDurations.get(phase);
+        return (duration == null) ? 0.0 : duration / 1E9;
+    }
+
+    private synchronized void sampleHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        if (used > maxUsedHeap) maxUsedHeap = used;
+    }
+
+    /**
+     * @return the largest heap usage among the samples taken during the run
+     */
+    public long getHeapHighWaterMark() {
+        sampleHeap();
+        return maxUsedHeap;
+    }
+
+    /**
+     * @return the sum of the peak usages of the heap memory pools since JVM start, an upper bound of the high-water mark
+     * (the pools can reach their peaks at different times)
+     */
+    public long getHeapPoolPeakSum() {
+        long peak = 0L;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    void reportProgress() {
+        sampleHeap();
+        String phase = currentPhase;
+        if (phase == null) return;
+        double seconds = (System.nanoTime() - currentPhaseStart) / 1E9;
+        StringBuilder line = new StringBuilder("[" + phase + "] " + formatDuration(seconds));
+        String counter = progressCounter;
+        if (counter != null) {
+            long done = getCount(counter);
+            long target = progressTarget;
+            line.append(", ").append(counter).append(" ").append(done);
+            if (target > 0) {
+                line.append("/").append(target).append(String.format(" (%.1f%%)", 100.0 * done / target));
+                if (done > 0) {
+                    line.append(", ETA ").append(formatDuration(seconds * (target - done) / done));
+                }
+            }
+        }
+        long pairs = getCount(PAIRS_ALIGNED);
+        if (pairs > 0 && "align".equals(phase)) {
+            line.append(String.format(", %.0f pairs/s", pairs / seconds));
+        }
+        line.append(String.format(", heap %.1f MB", (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()) / 1048576.0));
+        System.err.println(line);
+    }
+
+    private static String formatDuration(double seconds) {
+        long total = Math.round(seconds);
+        return String.format("%d:%02d:%02d", total / 3600, (total / 60) % 60, total % 60);
+    }
+
+    /**
+     * Ends the current phase and stops the progress reporter and the heap sampling.
+     */
+    public void finish() {
+        endPhase();
+        progressReporter.shutdownNow();
+    }
+
+    public void writeReport(String fileName) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode report = mapper.createObjectNode();
+        report.put("totalSeconds", (System.nanoTime() - startTime) / 1E9);
+        ObjectNode settingsNode = report.putObject("settings");
+        for (Map.Entry<String, Object> setting : settings.entrySet()) {
+            settingsNode.put(setting.getKey(), String.valueOf(setting.getValue()));
+        }
+        ObjectNode phasesNode = report.putObject("phaseSeconds");
+        synchronized (this) {
+            for (Map.Entry<String, Long> phase : phaseDurations.entrySet()) {
+                phasesNode.put(phase.getKey(), phase.getValue() / 1E9);
+            }
+        }
+        ObjectNode countersNode = report.putObject("counters");
+        for (String counter : new TreeSet<String>(counters.keySet())) {
+            countersNode.put(counter, getCount(counter));
+        }
+        ObjectNode ratesNode = report.putObject("rates");
+        if (getPhaseSeconds("align") > 0.0) {
+            ratesNode.put("pairsAlignedPerSecond", getCount(PAIRS_ALIGNED) / getPhaseSeconds("align"));
+        }
+        if (getPhaseSeconds("scoring") > 0.0) {
+            ratesNode.put("columnsCountedPerSecond", getCount(COLUMNS_COUNTED) / getPhaseSeconds("scoring"));
+        }
+        ObjectNode measurementsNode = report.putObject("measurements");
+        synchronized (this) {
+            for (Map.Entry<String, Double> measurement : measurements.entrySet()) {
+                measurementsNode.put(measurement.getKey(), measurement.getValue());
+            }
+        }
+        report.put("heapHighWaterMarkBytes", getHeapHighWaterMark());
+        report.put("heapPoolPeakSumBytes", getHeapPoolPeakSum());
+        report.put("maxHeapBytes", Runtime.getRuntime().maxMemory());
+        report.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+        mapper.enable(SerializationFeature.INDENT_OUTPUT);
+        mapper.writeValue(new File(fileName), report);
+    }
+}
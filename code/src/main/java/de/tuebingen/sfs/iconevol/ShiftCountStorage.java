@@ -0,0 +1,78 @@
+package de.tuebingen.sfs.iconevol;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+import de.tuebingen.sfs.util.Pair;
+
+/**
+ * Stores the per-symbol weighted instance and shift counts as TSV, with the input fingerprint in the first line.
+ */
+
+public class ShiftCountStorage {
+
+    public static void writeToFile(Map<String, Double> weightedNumInstances, Map<String, Map<String, Double>> weightedShiftCounts,
+                                   String fingerprint, String fileName) throws IOException {
+        File tmpFile = new File(fileName + ".tmp");
+        try (BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmpFile), StandardCharsets.UTF_8))) {
+            out.write("fingerprint\t" + fingerprint + "\n");
+            for (Map.Entry<String, Double> entry : weightedNumInstances.entrySet()) {
+                out.write("instances\t" + entry.getKey() + "\t" + entry.getValue() + "\n");
+            }
+            for (Map.Entry<String, Map<String, Double>> entry : weightedShiftCounts.entrySet()) {
+                for (Map.Entry<String, Double> shiftEntry : entry.getValue().entrySet()) {
+                    out.write("shift\t" + entry.getKey() + "\t" + shiftEntry.getKey() + "\t" + shiftEntry.getValue() + "\n");
+                }
+            }
+        }
+        File targetFile = new File(fileName);
+        if (targetFile.exists() && !targetFile.delete()) {
+            throw new IOException("Could not replace existing shift counts file " + fileName);
+        }
+        if (!tmpFile.renameTo(targetFile)) {
+            throw new IOException("Could not move shift counts to " + fileName);
+        }
+    }
+
+    /**
+     * @return the weighted instance counts (first) and shift counts (second),
+     * or null if the file does not exist or was computed from inputs with a different fingerprint
+     */
+    public static Pair<Map<String, Double>, Map<String, Map<String, Double>>> readFromFile(String fileName, String expectedFingerprint) throws IOException {
+        if (!new File(fileName).exists()) return null;
+        Map<String, Double> weightedNumInstances = new TreeMap<String, Double>();
+        Map<String, Map<String, Double>> weightedShiftCounts = new TreeMap<String, Map<String, Double>>();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(fileName), StandardCharsets.UTF_8))) {
+            String header = in.readLine();
+            if (header == null || !header.equals("fingerprint\t" + expectedFingerprint)) {
+                return null;
+            }
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields[0].equals("instances") && fields.length == 3) {
+                    weightedNumInstances.put(fields[1], Double.parseDouble(fields[2]));
+                    weightedShiftCounts.put(fields[1], new TreeMap<String, Double>());
+                } else if (fields[0].equals("shift") && fields.length == 4) {
+                    Map<String, Double> weightedShiftCountsS1 = weightedShiftCounts.get(fields[1]);
+                    if (weightedShiftCountsS1 == null) {
+                        throw new IOException("Shift count for undefined symbol '" + fields[1] + "' in " + fileName);
+                    }
+                    weightedShiftCountsS1.put(fields[2], Double.parseDouble(fields[3]));
+                } else {
+                    throw new IOException("Malformed line in shift counts file " + fileName + ": " + line);
+                }
+            }
+        }
+        return new Pair<Map<String, Double>, Map<String, Map<String, Double>>>(weightedNumInstances, weightedShiftCounts);
+    }
+}
@@ -0,0 +1,102 @@
+package de.tuebingen.sfs.iconevol;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import de.jdellert.iwsa.sequence.PhoneticSymbolTable;
+import de.tuebingen.sfs.util.Pair;
+
+/**
+ * Weighted counts of aligned symbol pairs (including shifts to the gap symbol), indexed by symbol IDs.
+ */
+
+public class ShiftCounts {
+    // symbol ID -> symbol (the IDs of the symbol table, or the numbering of stored counts)
+    String[] symbols;
+    int numSymbols;
+    double[] weightedNumInstances;
+    double[][] weightedShiftCounts;
+    // whether a symbol pair occurred at all (possibly with weight 0)
+    boolean[][] observed;
+
+    public ShiftCounts(PhoneticSymbolTable symTable) {
+        this(symbolsOf(symTable));
+    }
+
+    public ShiftCounts(String[] symbols) {
+        this.symbols = symbols;
+        this.numSymbols = symbols.length;
+        this.weightedNumInstances = new double[numSymbols];
+        this.weightedShiftCounts = new double[numSymbols][numSymbols];
+        this.observed = new boolean[numSymbols][numSymbols];
+    }
+
+    private static String[] symbolsOf(PhoneticSymbolTable symTable) {
+        String[] symbols = new String[symTable.getSize()];
+        for (int symbol = 0; symbol < symbols.length; symbol++) {
+            symbols[symbol] = symTable.toSymbol(symbol);
+        }
+        return symbols;
+    }
+
+    /**
+     * Dense counts from the symbol-keyed maps (e.g. as read by ShiftCountStorage), numbering the symbols alphabetically.
+     */
+    public static ShiftCounts fromSymbolMaps(Map<String, Double> weightedNumInstances, Map<String, Map<String, Double>> weightedShiftCounts) {
+        TreeSet<String> symbolSet = new TreeSet<String>(weightedNumInstances.keySet());
+        for (Map.Entry<String, Map<String, Double>> entry : weightedShiftCounts.entrySet()) {
+            symbolSet.add(entry.getKey());
+            symbolSet.addAll(entry.getValue().keySet());
+        }
+        ShiftCounts counts = new ShiftCounts(symbolSet.toArray(new String[symbolSet.size()]));
+        Map<String, Integer> symbolIDs = new TreeMap<String, Integer>();
+        for (int symbol = 0; symbol < counts.numSymbols; symbol++) {
+            symbolIDs.put(counts.symbols[symbol], symbol);
+        }
+        for (Map.Entry<String, Map<String, Double>> entry : weightedShiftCounts.entrySet()) {
+            int symbol1 = symbolIDs.get(entry.getKey());
+            for (Map.Entry<String, Double> shiftEntry : entry.getValue().entrySet()) {
+                int symbol2 = symbolIDs.get(shiftEntry.getKey());
+                counts.weightedShiftCounts[symbol1][symbol2] = shiftEntry.getValue();
+                counts.observed[symbol1][symbol2] = true;
+            }
+        }
+        for (Map.Entry<String, Double> entry : weightedNumInstances.entrySet()) {
+            counts.weightedNumInstances[symbolIDs.get(entry.getKey())] = entry.getValue();
+        }
+        return counts;
+    }
+
+    public void add(int symbol1, int symbol2, double weight) {
+        weightedNumInstances[symbol1] += weight;
+        weightedShiftCounts[symbol1][symbol2] += weight;
+        observed[symbol1][symbol2] = true;
+    }
+
+    public String[] getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * @return the weighted number of instances per symbol and the weighted shift counts per symbol pair,
+     * containing exactly the symbols and symbol pairs which were observed
+     */
+    public Pair<Map<String, Double>, Map<String, Map<String, Double>>> toSymbolMaps() {
+        Map<String, Double> instances = new TreeMap<String, Double>();
+        Map<String, Map<String, Double>> shifts = new TreeMap<String, Map<String, Double>>();
+        for (int symbol1 = 0; symbol1 < numSymbols; symbol1++) {
+            Map<String, Double> shiftsForSymbol1 = null;
+            for (int symbol2 = 0; symbol2 < numSymbols; symbol2++) {
+                if (!observed[symbol1][symbol2]) continue;
+                if (shiftsForSymbol1 == null) {
+                    shiftsForSymbol1 = new TreeMap<String, Double>();
+                    shifts.put(symbols[symbol1], shiftsForSymbol1);
+                    instances.put(symbols[symbol1], weightedNumInstances[symbol1]);
+                }
+                shiftsForSymbol1.put(symbols[symbol2], weightedShiftCounts[symbol1][symbol2]);
+            }
+        }
+        return new Pair<Map<String, Double>, Map<String, Map<String, Double>>>(instances, shifts);
+    }
+}
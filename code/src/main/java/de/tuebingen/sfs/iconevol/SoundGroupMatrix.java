@@ -0,0 +1,156 @@
+package de.tuebingen.sfs.iconevol;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Membership of symbols in (overlapping) sound groups as a bit matrix, for scoring all groups in one pass.
+ */
+
+public class SoundGroupMatrix {
+    // columns of the score arrays
+    public static final int NUM_ALIGNMENTS = 0;
+    public static final int STABLE = 1;
+    public static final int SHIFT_IN_GROUP = 2;
+    public static final int SHIFT_OUT_OF_GROUP = 3;
+    public static final int LOSS_OR_GAIN = 4;
+    public static final int NUM_SCORES = 5;
+
+    String[] groupNames;
+    int numSymbols;
+    // -1 if the gap does not occur among the symbols
+    int gapSymbol;
+    // symbol ID -> bitset over group indices
+    long[][] membership;
+    // symbol ID -> indices of the groups containing the symbol (the set bits of its row)
+    int[][] groupsOfSymbol;
+
+    /**
+     * @param soundGroups group name -> member sounds (groups are numbered in the iteration order of the map)
+     * @param symbols symbol ID -> symbol, as in the counts to be scored; member sounds not among them are ignored
+     */
+    public SoundGroupMatrix(Map<String, Set<String>> soundGroups, String[] symbols) {
+        this.groupNames = soundGroups.keySet().toArray(new String[soundGroups.size()]);
+        this.numSymbols = symbols.length;
+        this.gapSymbol = -1;
+        this.membership = new long[numSymbols][(groupNames.length + 63) >>> 6];
+        for (int symbol = 0; symbol < numSymbols; symbol++) {
+            if (symbols[symbol].equals("-")) gapSymbol = symbol;
+            for (int group = 0; group < groupNames.length; group++) {
+                if (soundGroups.get(groupNames[group]).contains(symbols[symbol])) {
+                    membership[symbol][group >>> 6] |= 1L << group;
+                }
+            }
+        }
+        buildGroupLists();
+    }
+
+    /**
+     * A grouping given directly as a membership matrix (symbol ID -> bitset over groups), e.g. a randomized one.
+     */
+    SoundGroupMatrix(String[] groupNames, long[][] membership, int gapSymbol) {
+        this.groupNames = groupNames;
+        this.numSymbols = membership.length;
+        this.gapSymbol = gapSymbol;
+        this.membership = membership;
+        buildGroupLists();
+    }
+
+    private void buildGroupLists() {
+        groupsOfSymbol = new int[numSymbols][];
+        for (int symbol = 0; symbol < numSymbols; symbol++) {
+            int numGroups = 0;
+            for (long word : membership[symbol]) {
+                numGroups += Long.bitCount(word);
+            }
+            groupsOfSymbol[symbol] = new int[numGroups];
+            int i = 0;
+            for (int w = 0; w < membership[symbol].length; w++) {
+                long word = membership[symbol][w];
+                while (word != 0L) {
+                    groupsOfSymbol[symbol][i++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                }
+            }
+        }
+    }
+
+    public int getNumGroups() {
+        return groupNames.length;
+    }
+
+    public String getGroupName(int group) {
+        return groupNames[group];
+    }
+
+    public boolean contains(int group, int symbol) {
+        return (membership[symbol][group >>> 6] & (1L << group)) != 0L;
+    }
+
+    /**
+     * @return the values of the stability table for unnormalized group scores: the weighted number of alignments,
+     * and the other four scores as proportions of it
+     */
+    public static double[] tableValues(double[] groupScores) {
+        double[] values = new double[NUM_SCORES];
+        double weightedNumAlignments = groupScores[NUM_ALIGNMENTS];
+        values[NUM_ALIGNMENTS] = weightedNumAlignments;
+        for (int column = STABLE; column < NUM_SCORES; column++) {
+            values[column] = groupScores[column] / weightedNumAlignments;
+        }
+        return values;
+    }
+
+    public double[][] score(ShiftCounts counts) {
+        return score(counts.weightedNumInstances, counts.weightedShiftCounts);
+    }
+
+    /**
+     * Computes the scores of all groups in one pass over the shift matrix. Each shift of a group member to another
+     * symbol counts as stable (same symbol), loss or gain (to the gap), shift in group (to another member),
+     * or shift out of group.
+     *
+     * @return group index -> the weighted counts in the columns NUM_ALIGNMENTS to LOSS_OR_GAIN (not yet normalized)
+     */
+    public double[][] score(double[] weightedNumInstances, double[][] weightedShiftCounts) {
+        double[][] scores = new double[groupNames.length][NUM_SCORES];
+        int maxGroupsPerSymbol = 0;
+        for (int[] groups : groupsOfSymbol) {
+            maxGroupsPerSymbol = Math.max(maxGroupsPerSymbol, groups.length);
+        }
+        double[] shiftInGroup = new double[maxGroupsPerSymbol];
+        double[] shiftOutOfGroup = new double[maxGroupsPerSymbol];
+        for (int symbol1 = 0; symbol1 < numSymbols; symbol1++) {
+            int[] groups = groupsOfSymbol[symbol1];
+            if (groups.length == 0) continue;
+            double[] shifts = weightedShiftCounts[symbol1];
+            for (int g = 0; g < groups.length; g++) {
+                shiftInGroup[g] = 0.0;
+                shiftOutOfGroup[g] = 0.0;
+            }
+            for (int symbol2 = 0; symbol2 < numSymbols; symbol2++) {
+                double weightedCount = shifts[symbol2];
+                if (weightedCount == 0.0 || symbol2 == symbol1 || symbol2 == gapSymbol) continue;
+                long[] membership2 = membership[symbol2];
+                for (int g = 0; g < groups.length; g++) {
+                    int group = groups[g];
+                    if ((membership2[group >>> 6] & (1L << group)) != 0L) {
+                        shiftInGroup[g] += weightedCount;
+                    } else {
+                        shiftOutOfGroup[g] += weightedCount;
+                    }
+                }
+            }
+            double lossOrGain = (gapSymbol == -1 || gapSymbol == symbol1) ? 0.0 : shifts[gapSymbol];
+            for (int g = 0; g < groups.length; g++) {
+                double[] groupScores = scores[groups[g]];
+                groupScores[NUM_ALIGNMENTS] += weightedNumInstances[symbol1];
+                groupScores[STABLE] += shifts[symbol1];
+                groupScores[SHIFT_IN_GROUP] += shiftInGroup[g];
+                groupScores[SHIFT_OUT_OF_GROUP] += shiftOutOfGroup[g];
+                groupScores[LOSS_OR_GAIN] += lossOrGain;
+            }
+        }
+        return scores;
+    }
+}
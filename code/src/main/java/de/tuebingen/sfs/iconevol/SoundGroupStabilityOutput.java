@@ -1,18 +1,27 @@
 package de.tuebingen.sfs.iconevol;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.util.LinkedList;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import de.jdellert.iwsa.align.InformationWeightedSequenceAlignment;
 import de.jdellert.iwsa.infomodel.InformationModel;
-import de.jdellert.iwsa.infomodel.InformationModelInference;
 import de.jdellert.iwsa.tokenize.IPATokenizer;
 import de.tuebingen.sfs.cldfjava.data.CLDFForm;
 import de.tuebingen.sfs.cldfjava.data.CLDFWordlistDatabase;
@@ -22,264 +31,794 @@ import de.jdellert.iwsa.corrmodel.CorrespondenceModel;
 import de.jdellert.iwsa.corrmodel.CorrespondenceModelStorage;
 import de.jdellert.iwsa.sequence.PhoneticString;
 import de.jdellert.iwsa.sequence.PhoneticSymbolTable;
+import de.tuebingen.sfs.util.IntDoubleMap;
 import de.tuebingen.sfs.util.LanguageTree;
+import de.tuebingen.sfs.util.Pair;
 
 public class SoundGroupStabilityOutput {
-    private static final String DB_DIR = "src/main/resources/northeuralex-0.9";
+    static final int ALIGNMENTS_PER_BLOCK = 4096;
+    public static final String[] TABLE_COLUMNS = {"WeightedNumAlignments", "Stable", "ShiftInGroup", "ShiftOutOfGroup", "LossOrGain"};
+
+    public static List<AlignedFormPair> alignCognatePairs(CLDFWordlistDatabase db, Map<String, String> langToFamily, IPATokenizer tokenizer, CorrespondenceModel corrModel, Map<String, InformationModel> infoModels) {
+        return alignCognatePairs(db, LanguagePairSelection.sameFamily(langToFamily), tokenizer, corrModel, infoModels, false, 1);
+    }
+
+    /**
+     * Aligns all pairs of cognate forms from language pairs chosen by the pair selection.
+     * If alignUnorderedPairsOnce is set, each unordered pair is only aligned once, and the record for the
+     * reverse direction is derived by swapping the rows (see AlignedFormPair.reverse() for why this can differ
+     * from aligning the reverse direction).
+     * Cognate sets are distributed over numThreads workers, the result is in the same order as for a single thread.
+     */
+    public static List<AlignedFormPair> alignCognatePairs(CLDFWordlistDatabase db, LanguagePairSelection pairSelection, IPATokenizer tokenizer, CorrespondenceModel corrModel, Map<String, InformationModel> infoModels, boolean alignUnorderedPairsOnce, int numThreads) {
+        if (corrModel == null) return new ArrayList<AlignedFormPair>();
+        // a single tokenizer instance must not be shared between threads, so the forms are tokenized sequentially
+        FormSegmentCache segments = FormSegmentCache.build(db, corrModel.getSymbolTable(), tokenizer);
+        return alignCognatePairs(db, pairSelection, segments, corrModel, infoModels, alignUnorderedPairsOnce, numThreads);
+    }
+
+    public static List<AlignedFormPair> alignCognatePairs(CLDFWordlistDatabase db, LanguagePairSelection pairSelection, FormSegmentCache segments, CorrespondenceModel corrModel, Map<String, InformationModel> infoModels, boolean alignUnorderedPairsOnce, int numThreads) {
+        if (corrModel == null) return new ArrayList<AlignedFormPair>();
+        PipelineIndex index = new PipelineIndex(pairSelection, corrModel.getSymbolTable());
+        return alignCognatePairs(db, index, segments, corrModel, index.infoModelsByLanguage(infoModels), alignUnorderedPairsOnce, numThreads);
+    }
+
+    public static List<AlignedFormPair> alignCognatePairs(CLDFWordlistDatabase db, PipelineIndex index, FormSegmentCache segments, CorrespondenceModel corrModel, InformationModel[] infoModels, boolean alignUnorderedPairsOnce, int numThreads) {
+        return alignCognatePairs(db, index, segments, corrModel, infoModels, alignUnorderedPairsOnce, numThreads, null);
+    }
+
+    /**
+     * The cognate sets are distributed over the threads by a CognateSetScheduler, which splits large sets into blocks.
+     * If metrics are given, the processed cognate sets and the computed alignments are counted as the workers progress,
+     * and the utilization of the worker threads is recorded.
+     * All database lookups happen on the calling thread. The workers share the segment cache, the index, the correspondence
+     * model, its symbol table and the information models, which are completely built before and only read while aligning.
+     */
+    public static List<AlignedFormPair> alignCognatePairs(CLDFWordlistDatabase db, PipelineIndex index, FormSegmentCache segments, CorrespondenceModel corrModel, InformationModel[] infoModels, boolean alignUnorderedPairsOnce, int numThreads, RunMetrics metrics) {
+        List<AlignedFormPair> alignments = new ArrayList<AlignedFormPair>();
+        if (corrModel == null) return alignments;
+
+        List<Set<Integer>> cognateSets = new ArrayList<Set<Integer>>(db.getCogsetToCognates().values());
+        if (metrics != null) metrics.setProgressTarget(RunMetrics.COGNATE_SETS, cognateSets.size());
+        int[][] cldfFormIds = new int[cognateSets.size()][];
+        int[][] langIDs = new int[cognateSets.size()][];
+        long[][] rowCosts = new long[cognateSets.size()][];
+        for (int set = 0; set < cognateSets.size(); set++) {
+            cldfFormIds[set] = formIds(cognateSets.get(set));
+            langIDs[set] = languageIDs(cldfFormIds[set], db, index);
+        }
+        IconEvolUtil.runInParallel(numThreads, () -> {
+            IntStream.range(0, cognateSets.size()).parallel().forEach(set -> {
+                int[] formLengths = new int[cldfFormIds[set].length];
+                for (int i = 0; i < formLengths.length; i++) {
+                    if (langIDs[set][i] != -1) formLengths[i] = segments.getSegments(cldfFormIds[set][i]).segments.length;
+                }
+                rowCosts[set] = CognateSetScheduler.rowCosts(cldfFormIds[set], langIDs[set], formLengths, index, alignUnorderedPairsOnce);
+            });
+            return null;
+        });
+
+        CognateSetScheduler scheduler = new CognateSetScheduler(rowCosts, numThreads);
+        List<List<AlignedFormPair>> alignmentsPerSet = scheduler.run((set, fromRow, toRow) -> {
+            List<AlignedFormPair> alignmentsForBlock = alignRows(cldfFormIds[set], langIDs[set], fromRow, toRow, index, segments, corrModel, infoModels, alignUnorderedPairsOnce);
+            // in unordered mode, every second record is a reversed copy
+            if (metrics != null) metrics.count(RunMetrics.PAIRS_ALIGNED, alignUnorderedPairsOnce ? alignmentsForBlock.size() / 2 : alignmentsForBlock.size());
+            return alignmentsForBlock;
+        }, metrics);
+        if (metrics != null) {
+            double[] utilization = scheduler.getUtilization();
+            for (int thread = 0; thread < utilization.length; thread++) {
+                metrics.record("alignThreadUtilization.thread" + thread, utilization[thread]);
+            }
+            System.err.println("Alignment scheduling: " + scheduler.utilizationSummary());
+        }
+
+        for (int set = 0; set < alignmentsPerSet.size(); set++) {
+            for (AlignedFormPair alignment : alignmentsPerSet.get(set)) {
+                alignment.cognateSet = set;
+            }
+            alignments.addAll(alignmentsPerSet.get(set));
+        }
+        return alignments;
+    }
+
+    private static int[] formIds(Set<Integer> cognateSet) {
+        int[] cldfFormIds = new int[cognateSet.size()];
+        int i = 0;
+        for (int cldfFormId : cognateSet) {
+            cldfFormIds[i++] = cldfFormId;
+        }
+        return cldfFormIds;
+    }
+
+    /**
+     * @return the language ID of each form, -1 for languages which are not part of the index
+     */
+    private static int[] languageIDs(int[] cldfFormIds, CLDFWordlistDatabase db, PipelineIndex index) {
+        int[] langIDs = new int[cldfFormIds.length];
+        for (int i = 0; i < cldfFormIds.length; i++) {
+            CLDFForm cldfForm = db.getFormsMap().get(cldfFormIds[i]);
+            langIDs[i] = index.getLanguageID(db.getLanguageMap().get(cldfForm.getLangID()).getIso());
+        }
+        return langIDs;
+    }
+
+    /**
+     * Aligns the forms of one cognate set. The language ID and segments of each form are looked up once,
+     * the pair loop then only compares IDs and looks up the pair ID.
+     */
+    public static List<AlignedFormPair> alignCognateSet(Set<Integer> cognateSet, CLDFWordlistDatabase db, PipelineIndex index, FormSegmentCache segments, CorrespondenceModel corrModel, InformationModel[] infoModels, boolean alignUnorderedPairsOnce) {
+        int[] cldfFormIds = formIds(cognateSet);
+        return alignRows(cldfFormIds, languageIDs(cldfFormIds, db, index), 0, cldfFormIds.length, index, segments, corrModel, infoModels, alignUnorderedPairsOnce);
+    }
+
+    /**
+     * Aligns the forms in rows [fromRow, toRow) of a cognate set with all their partners (a block of the pair loop).
+     */
+    static List<AlignedFormPair> alignRows(int[] cldfFormIds, int[] langIDs, int fromRow, int toRow, PipelineIndex index, FormSegmentCache segments, CorrespondenceModel corrModel, InformationModel[] infoModels, boolean alignUnorderedPairsOnce) {
+        List<AlignedFormPair> alignments = new ArrayList<AlignedFormPair>();
+        PhoneticSymbolTable symTable = corrModel.getSymbolTable();
+
+        int numForms = cldfFormIds.length;
+        PhoneticString[] forms = new PhoneticString[numForms];
+        for (int i1 = fromRow; i1 < toRow; i1++) {
+            int lang1 = langIDs[i1];
+            if (lang1 == -1) continue;
+            for (int i2 = 0; i2 < numForms; i2++) {
+                int lang2 = langIDs[i2];
+                if (lang1 == lang2) continue;
+                if (alignUnorderedPairsOnce && cldfFormIds[i2] < cldfFormIds[i1]) continue;
+                int pairID = index.getPairID(lang1, lang2);
+                if (pairID == -1) continue;
+                if (forms[i1] == null) forms[i1] = segments.getSegments(cldfFormIds[i1]);
+                if (forms[i2] == null) forms[i2] = segments.getSegments(cldfFormIds[i2]);
+                PhoneticStringAlignment align = InformationWeightedSequenceAlignment.constructAlignment(
+                        forms[i1], forms[i2], corrModel, corrModel, corrModel, corrModel, infoModels[lang1], infoModels[lang2]);
+                AlignedFormPair alignment = AlignedFormPair.fromAlignment(pairID, index.getLanguage(lang1), index.getLanguage(lang2),
+                        cldfFormIds[i1], cldfFormIds[i2], forms[i1], forms[i2], align, symTable, infoModels[lang1], infoModels[lang2]);
+                alignments.add(alignment);
+                if (alignUnorderedPairsOnce) {
+                    alignments.add(alignment.reverse(index.getPairID(lang2, lang1)));
+                }
+            }
+        }
+        return alignments;
+    }
 
     public static Map<String,Map<String,FormProjectionModel>> inferProjectionModels(CLDFWordlistDatabase db, Map<String, String> langToFamily, IPATokenizer tokenizer, CorrespondenceModel corrModel, Map<String, InformationModel> infoModels) {
+        List<AlignedFormPair> alignments = alignCognatePairs(db, langToFamily, tokenizer, corrModel, infoModels);
+        return inferProjectionModels(alignments, langToFamily, corrModel.getSymbolTable());
+    }
+
+    public static Map<String,Map<String,FormProjectionModel>> inferProjectionModels(List<AlignedFormPair> alignments, Map<String, String> langToFamily, PhoneticSymbolTable symTable) {
+        return inferProjectionModels(alignments, LanguagePairSelection.sameFamily(langToFamily), symTable, 1);
+    }
+
+    /**
+     * Variant with nested maps from lang1 to lang2. The alignments need to have been computed with the same pair selection,
+     * as their pair IDs refer to the PipelineIndex built from it.
+     */
+    public static Map<String,Map<String,FormProjectionModel>> inferProjectionModels(List<AlignedFormPair> alignments, LanguagePairSelection pairSelection, PhoneticSymbolTable symTable, int numThreads) {
+        PipelineIndex index = new PipelineIndex(pairSelection, symTable);
+        return index.modelMap(inferProjectionModels(alignments, index, numThreads));
+    }
+
+    /**
+     * Counts the aligned segments into one projection model per selected ordered language pair (indexed by pair ID).
+     * The alignments are split into blocks of fixed size, each block is counted into partial models by one worker,
+     * and the partial models are merged in block order. As the block boundaries do not depend on numThreads,
+     * the resulting counts are identical for any number of threads.
+     */
+    public static FormProjectionModel[] inferProjectionModels(List<AlignedFormPair> alignments, PipelineIndex index, int numThreads) {
 
         // initialize empty projection models
-        Map<String,Map<String,FormProjectionModel>> projectionModels = new TreeMap<String,Map<String,FormProjectionModel>>();
-        for (String lang1 : langToFamily.keySet()) {
-            Map<String, FormProjectionModel> modelsForLang1 = new TreeMap<String, FormProjectionModel>();
-            String family1 = langToFamily.get(lang1);
-            for (String lang2 : langToFamily.keySet()) {
-                if (lang1.equals(lang2)) continue;
-                String family2 = langToFamily.get(lang2);
-                if (!family1.equals(family2)) continue;
-                modelsForLang1.put(lang2, new FormProjectionModel(lang1, lang2));
-            }
-            projectionModels.put(lang1, modelsForLang1);
-        }
-
-        if (corrModel != null) {
-            PhoneticSymbolTable symTable = corrModel.getSymbolTable();
-
-            Map<Integer, Set<Integer>> cognateSets = db.getCogsetToCognates();
-            for (Map.Entry<Integer, Set<Integer>> entry : cognateSets.entrySet()) {
-                Set<Integer> cognateSet = entry.getValue();
-                for (int cldfFormId1 : cognateSet) {
-                    CLDFForm cldfForm1 = db.getFormsMap().get(cldfFormId1);
-                    String lang1 = db.getLanguageMap().get(cldfForm1.getLangID()).getIso();
-                    String family1 = langToFamily.get(lang1);
-                    PhoneticString form1 = IconEvolUtil.extractSegments(cldfForm1, symTable, tokenizer);
-                    for (int cldfFormId2 : cognateSet) {
-                        CLDFForm cldfForm2 = db.getFormsMap().get(cldfFormId2);
-                        String lang2 = db.getLanguageMap().get(cldfForm2.getLangID()).getIso();
-                        if (lang1.equals(lang2)) continue;
-                        String family2 = langToFamily.get(lang2);
-                        if (!family1.equals(family2)) continue;
-                        PhoneticString form2 = IconEvolUtil.extractSegments(cldfForm2, symTable, tokenizer);
-                        PhoneticStringAlignment align = InformationWeightedSequenceAlignment.constructAlignment(
-                                form1, form2, corrModel, corrModel, corrModel, corrModel, infoModels.get(lang1), infoModels.get(lang2));
-
-                        List<String[]> pairs = align.getSymbolPairs(symTable);
-                        int pos1 = 0;
-                        int pos2 = 0;
-                        for (int i = 0; i < pairs.size(); i++) {
-                            String upperSymbol = pairs.get(i)[0];
-                            String lowerSymbol = pairs.get(i)[1];
-
-                            double infoScore = 1.0;
-
-                            if (upperSymbol.equals("-")) {
-                                infoScore = InformationWeightedSequenceAlignment.getMeanInfoScore(form2, form2, pos2, pos2, infoModels.get(lang2), infoModels.get(lang2));
-                                pos2++;
-                            } else if (lowerSymbol.equals("-")) {
-                                infoScore = InformationWeightedSequenceAlignment.getMeanInfoScore(form1, form1, pos1, pos1, infoModels.get(lang1), infoModels.get(lang1));
-                                pos1++;
-                            } else {
-                                infoScore = InformationWeightedSequenceAlignment.getMeanInfoScore(form1, form2, pos1, pos2, infoModels.get(lang1), infoModels.get(lang2));
-                                pos1++;
-                                pos2++;
-                            }
-
-                            projectionModels.get(lang1).get(lang2).storePairWithWeight(upperSymbol, lowerSymbol, infoScore);
-
-                            String gappyBigram = upperSymbol;
-                            if (i == 0) {
-                                gappyBigram = "#" + gappyBigram;
-                            } else {
-                                gappyBigram = pairs.get(i-1)[0] + gappyBigram;
-                            }
-                            if (i == pairs.size() - 1) {
-                                gappyBigram += "#";
-                            } else {
-                                gappyBigram += pairs.get(i+1)[0];
-                            }
-                            projectionModels.get(lang1).get(lang2).storeGappyBigramWithWeight(gappyBigram, lowerSymbol, infoScore);
-                        }
+        FormProjectionModel[] projectionModels = new FormProjectionModel[index.getNumPairs()];
+        for (int pair = 0; pair < projectionModels.length; pair++) {
+            projectionModels[pair] = new FormProjectionModel(index.getLanguage(index.pairLang1[pair]), index.getLanguage(index.pairLang2[pair]), index.symTable);
+        }
+
+        int numBlocks = (alignments.size() + ALIGNMENTS_PER_BLOCK - 1) / ALIGNMENTS_PER_BLOCK;
+        List<FormProjectionModel[]> partialModels = IconEvolUtil.runInParallel(numThreads, () -> IntStream.range(0, numBlocks).parallel()
+                .mapToObj(block -> countAlignments(alignments.subList(block * ALIGNMENTS_PER_BLOCK, Math.min(alignments.size(), (block + 1) * ALIGNMENTS_PER_BLOCK)), index))
+                .collect(Collectors.toList()));
+
+        for (FormProjectionModel[] partialModelsForBlock : partialModels) {
+            for (int pair = 0; pair < projectionModels.length; pair++) {
+                if (partialModelsForBlock[pair] != null) {
+                    projectionModels[pair].addCounts(partialModelsForBlock[pair]);
+                }
+            }
+        }
+
+        return projectionModels;
+    }
+
+    private static FormProjectionModel[] countAlignments(List<AlignedFormPair> alignments, PipelineIndex index) {
+        FormProjectionModel[] projectionModels = new FormProjectionModel[index.getNumPairs()];
+        for (AlignedFormPair alignment : alignments) {
+            FormProjectionModel model = projectionModels[alignment.pairID];
+            if (model == null) {
+                model = new FormProjectionModel(alignment.lang1, alignment.lang2, index.symTable);
+                projectionModels[alignment.pairID] = model;
+            }
+
+            int[] upperSymbols = alignment.upperSymbols;
+            int[] lowerSymbols = alignment.lowerSymbols;
+            for (int i = 0; i < upperSymbols.length; i++) {
+                int upperSymbol = upperSymbols[i];
+                int lowerSymbol = lowerSymbols[i];
+                double infoScore = alignment.infoScores[i];
+
+                model.storePairWithWeight(upperSymbol, lowerSymbol, infoScore);
+
+                int previous = (i == 0) ? FormProjectionModel.BOUNDARY : upperSymbols[i-1];
+                int next = (i == upperSymbols.length - 1) ? FormProjectionModel.BOUNDARY : upperSymbols[i+1];
+                model.storeGappyBigramWithWeight(previous, upperSymbol, next, lowerSymbol, infoScore);
+            }
+        }
+        return projectionModels;
+    }
+
+    /**
+     * Finalizes the projection models and computes the factor of each pair for the column weights,
+     * i.e. (1 - stability of lang1) * pair weight (the column weight additionally includes the information score).
+     */
+    public static double[] computePairFactors(FormProjectionModel[] projectionModels, PipelineIndex index, int countThreshold) {
+        double[] pairFactors = new double[index.getNumPairs()];
+        for (int pair = 0; pair < pairFactors.length; pair++) {
+            projectionModels[pair].finalizeCounts(countThreshold);
+            pairFactors[pair] = (1.0 - projectionModels[pair].lang1Stability) * index.pairWeight[pair];
+        }
+        return pairFactors;
+    }
+
+    /**
+     * Computes the pair factors for several count thresholds from the same raw counts, without finalizing the models.
+     *
+     * @return threshold index -> pair ID -> factor of the pair for the column weights
+     */
+    public static double[][] computePairFactors(FormProjectionModel[] projectionModels, PipelineIndex index, int[] countThresholds) {
+        double[][] pairFactors = new double[countThresholds.length][index.getNumPairs()];
+        for (int pair = 0; pair < index.getNumPairs(); pair++) {
+            FormProjectionModel model = projectionModels[pair];
+            double[] stabilities = model.stabilitiesAt(countThresholds);
+            for (int t = 0; t < countThresholds.length; t++) {
+                pairFactors[t][pair] = (1.0 - stabilities[t]) * index.pairWeight[pair];
+            }
+            System.err.println("Overall stability for language pair " + model.lang1 + " -> " + model.lang2
+                    + " at count thresholds " + Arrays.toString(countThresholds) + ":\t" + Arrays.toString(stabilities));
+        }
+        return pairFactors;
+    }
+
+    /**
+     * Accumulates the weighted counts of all aligned symbol pairs. If a trace writer is given, every column is also
+     * written to the trace (tracing is disabled after the first write error).
+     */
+    public static ShiftCounts countShifts(List<AlignedFormPair> alignments, double[] pairFactors, PhoneticSymbolTable symbolTable,
+                                          AlignmentTraceWriter trace, CLDFWordlistDatabase db) {
+        return countShifts(alignments, new double[][] {pairFactors}, symbolTable, trace, db)[0];
+    }
+
+    /**
+     * Accumulates the weighted counts of all aligned symbol pairs for several sets of pair factors (e.g. one per
+     * count threshold) in a single pass over the alignments. The trace records the weights of the first set.
+     *
+     * @return pair factor set -> the weighted counts under these pair factors
+     */
+    public static ShiftCounts[] countShifts(List<AlignedFormPair> alignments, double[][] pairFactors, PhoneticSymbolTable symbolTable,
+                                            AlignmentTraceWriter trace, CLDFWordlistDatabase db) {
+        ShiftCounts[] shiftCounts = new ShiftCounts[pairFactors.length];
+        for (int t = 0; t < pairFactors.length; t++) {
+            shiftCounts[t] = new ShiftCounts(symbolTable);
+        }
+        for (AlignedFormPair alignment : alignments) {
+            int[] upperSymbols = alignment.upperSymbols;
+            int[] lowerSymbols = alignment.lowerSymbols;
+            double[] infoScores = alignment.infoScores;
+            for (int t = 0; t < pairFactors.length; t++) {
+                double pairFactor = pairFactors[t][alignment.pairID];
+                ShiftCounts counts = shiftCounts[t];
+                for (int i = 0; i < upperSymbols.length; i++) {
+                    counts.add(upperSymbols[i], lowerSymbols[i], pairFactor * infoScores[i]);
+                }
+            }
+
+            if (trace != null) {
+                try {
+                    traceColumns(alignment, pairFactors[0][alignment.pairID], symbolTable, trace, db);
+                } catch (IOException e) {
+                    System.err.println("WARNING: writing the alignment trace failed, tracing disabled: " + e.toString());
+                    trace = null;
+                }
+            }
+        }
+        return shiftCounts;
+    }
+
+    /**
+     * Computes the same weighted counts as countShifts over the alignments from the raw projection model counts,
+     * which sum up the information scores of the aligned symbol pairs per language pair.
+     *
+     * @return pair factor set -> the weighted counts under these pair factors
+     */
+    public static ShiftCounts[] countShifts(FormProjectionModel[] projectionModels, double[][] pairFactors, PhoneticSymbolTable symbolTable) {
+        ShiftCounts[] shiftCounts = new ShiftCounts[pairFactors.length];
+        for (int t = 0; t < pairFactors.length; t++) {
+            shiftCounts[t] = new ShiftCounts(symbolTable);
+        }
+        for (int pair = 0; pair < projectionModels.length; pair++) {
+            IntDoubleMap[] countForPair = projectionModels[pair].countForPair;
+            for (int symbol1 = 0; symbol1 < countForPair.length; symbol1++) {
+                IntDoubleMap pairCounts = countForPair[symbol1];
+                if (pairCounts == null) continue;
+                for (int symbol2 : pairCounts.sortedKeys()) {
+                    double count = pairCounts.get(symbol2);
+                    for (int t = 0; t < pairFactors.length; t++) {
+                        shiftCounts[t].add(symbol1, symbol2, pairFactors[t][pair] * count);
                     }
                 }
             }
         }
+        return shiftCounts;
+    }
+
+    /**
+     * Writes every aligned column with its weight under the given pair factors to the trace.
+     */
+    public static void writeTrace(List<AlignedFormPair> alignments, double[] pairFactors, PhoneticSymbolTable symbolTable,
+                                  AlignmentTraceWriter trace, CLDFWordlistDatabase db) throws IOException {
+        for (AlignedFormPair alignment : alignments) {
+            traceColumns(alignment, pairFactors[alignment.pairID], symbolTable, trace, db);
+        }
+    }
+
+    private static void traceColumns(AlignedFormPair alignment, double pairFactor, PhoneticSymbolTable symbolTable,
+                                     AlignmentTraceWriter trace, CLDFWordlistDatabase db) throws IOException {
+        String form1 = db.getFormsMap().get(alignment.cldfFormId1).getForm();
+        String form2 = db.getFormsMap().get(alignment.cldfFormId2).getForm();
+        for (int i = 0; i < alignment.upperSymbols.length; i++) {
+            double infoScore = alignment.infoScores[i];
+            trace.trace(alignment.lang1, form1, alignment.lang2, form2, symbolTable.toSymbol(alignment.upperSymbols[i]),
+                    symbolTable.toSymbol(alignment.lowerSymbols[i]), infoScore, pairFactor * infoScore);
+        }
+    }
 
+    /**
+     * @return the raw projection models by pair ID, or null if the snapshot is outdated, incomplete or unreadable
+     */
+    private static FormProjectionModel[] loadProjectionModelSnapshot(String snapshotPath, PhoneticSymbolTable symbolTable,
+                                                                     String alignmentFingerprint, PipelineIndex index) {
+        FormProjectionModel[] projectionModels = null;
+        try {
+            System.err.print("Loading projection model snapshot...");
+            Map<String, Map<String, FormProjectionModel>> storedModels = ProjectionModelStorage.readFromFile(snapshotPath, symbolTable, alignmentFingerprint);
+            if (storedModels != null) {
+                projectionModels = index.modelsByPair(storedModels);
+                if (Arrays.asList(projectionModels).contains(null)) projectionModels = null;
+            }
+            System.err.println((projectionModels == null) ? " outdated, rebuilding." : " Done.");
+        } catch (IOException e) {
+            System.err.println(" failed, rebuilding: " + e.toString());
+        }
         return projectionModels;
     }
 
+    /**
+     * Prints the four stability scores for each sound group, computed from the per-symbol weighted counts.
+     */
+    public static void printStabilityTable(Map<String,Set<String>> soundGroups, Map<String,Double> weightedNumInstances,
+                                           Map<String,Map<String,Double>> weightedShiftCounts, PrintStream out) {
+        printStabilityTable(soundGroups, ShiftCounts.fromSymbolMaps(weightedNumInstances, weightedShiftCounts), out);
+    }
+
+    public static void printStabilityTable(Map<String,Set<String>> soundGroups, ShiftCounts shiftCounts, PrintStream out) {
+        SoundGroupMatrix groups = new SoundGroupMatrix(soundGroups, shiftCounts.getSymbols());
+        printStabilityTable(groups, groups.score(shiftCounts), out);
+    }
+
+    /**
+     * @param scores the unnormalized group scores, as computed by SoundGroupMatrix.score()
+     */
+    public static void printStabilityTable(SoundGroupMatrix groups, double[][] scores, PrintStream out) {
+        printStabilityTable(groups, scores, null, null, out);
+    }
+
+    /**
+     * If bootstrap intervals are given, the lower and upper bound for each column are appended to the table,
+     * and if permutation test results are given, the null mean and the p-values of both tails for each column.
+     *
+     * @param intervals group -> column -> {lower, upper}, as computed by StabilityBootstrap.percentileIntervals()
+     * @param permutationResults group -> column -> {null mean, p higher, p lower}, as computed by PermutationNullModel.test()
+     */
+    public static void printStabilityTable(SoundGroupMatrix groups, double[][] scores, double[][][] intervals,
+                                           double[][][] permutationResults, PrintStream out) {
+        writeStabilityTable(groups, scores, intervals, permutationResults, "tsv", out);
+    }
+
+    /**
+     * Writes the stability table in one of the formats of StabilityRunConfig.FORMATS: tab- or comma-separated
+     * with a header line, or JSON (an array with one object per sound group).
+     */
+    public static void writeStabilityTable(SoundGroupMatrix groups, double[][] scores, double[][][] intervals,
+                                           double[][][] permutationResults, String format, PrintStream out) {
+        List<String> columns = new ArrayList<String>(Arrays.asList(TABLE_COLUMNS));
+        if (intervals != null) {
+            for (String column : TABLE_COLUMNS) {
+                columns.add(column + "Lower");
+                columns.add(column + "Upper");
+            }
+        }
+        if (permutationResults != null) {
+            for (String column : TABLE_COLUMNS) {
+                columns.add(column + "NullMean");
+                columns.add(column + "PHigher");
+                columns.add(column + "PLower");
+            }
+        }
+        double[][] rows = new double[groups.getNumGroups()][];
+        for (int group = 0; group < rows.length; group++) {
+            double[] row = new double[columns.size()];
+            int c = 0;
+            for (double value : SoundGroupMatrix.tableValues(scores[group])) {
+                row[c++] = value;
+            }
+            if (intervals != null) {
+                for (double[] interval : intervals[group]) {
+                    row[c++] = interval[0];
+                    row[c++] = interval[1];
+                }
+            }
+            if (permutationResults != null) {
+                for (double[] result : permutationResults[group]) {
+                    row[c++] = result[PermutationNullModel.NULL_MEAN];
+                    row[c++] = result[PermutationNullModel.P_HIGHER];
+                    row[c++] = result[PermutationNullModel.P_LOWER];
+                }
+            }
+            rows[group] = row;
+        }
+
+        if (format.equals("json")) {
+            ObjectMapper mapper = new ObjectMapper();
+            ArrayNode table = mapper.createArrayNode();
+            for (int group = 0; group < rows.length; group++) {
+                ObjectNode row = table.addObject();
+                row.put("SoundGroup", groups.getGroupName(group));
+                for (int c = 0; c < columns.size(); c++) {
+                    row.put(columns.get(c), rows[group][c]);
+                }
+            }
+            try {
+                out.println(mapper.writerWithDefaultPrettyPrinter().writeValueAsString(table));
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException(e);
+            }
+            return;
+        }
+        String separator = format.equals("csv") ? "," : "\t";
+        StringBuilder header = new StringBuilder("SoundGroup");
+        for (String column : columns) {
+            header.append(separator).append(column);
+        }
+        out.println(header);
+        for (int group = 0; group < rows.length; group++) {
+            String groupName = groups.getGroupName(group);
+            if (format.equals("csv") && (groupName.contains(",") || groupName.contains("\""))) {
+                groupName = "\"" + groupName.replace("\"", "\"\"") + "\"";
+            }
+            StringBuilder line = new StringBuilder(groupName);
+            for (double value : rows[group]) {
+                line.append(separator).append(value);
+            }
+            out.println(line);
+        }
+    }
+
+    /**
+     * Runs the permutation null model on the shift counts if any permutations are requested.
+     *
+     * @return the permutation test results for printStabilityTable(), or null
+     */
+    private static double[][][] permutationTest(SoundGroupMatrix groups, ShiftCounts shiftCounts, int numPermutations, long seed, int numThreads) {
+        if (numPermutations <= 0) return null;
+        System.err.print("Scoring " + numPermutations + " random permutations of the sound groups... ");
+        double[][][] results = new PermutationNullModel(groups, shiftCounts).test(numPermutations, seed, numThreads);
+        System.err.println("Done.");
+        return results;
+    }
+
     public static void main(String[] args) {
-        // load correspondence model previously trained on Lund tokenization (using CorrespondenceModelPreparation script)
-        String corrPath = DB_DIR + "/global-iw-lund.corr";
-        CorrespondenceModel corrModel = null;
+        if (Arrays.asList(args).contains("--help")) {
+            System.err.print(StabilityRunConfig.usage());
+            return;
+        }
+        StabilityRunConfig config = null;
+        List<StabilityRunConfig> configs = null;
         try {
-            System.err.print("Loading global correspondence model...");
-            corrModel = CorrespondenceModelStorage.deserializeCorrespondenceModel(new ObjectInputStream(new FileInputStream(corrPath)));
-            System.err.println(" Done.");
-        } catch (FileNotFoundException e) {
-            System.err.println(e.toString());
-            System.exit(1);
-        } catch (IOException e) {
-            System.err.println(e.toString());
-            e.printStackTrace();
+            config = StabilityRunConfig.parse(args, new StabilityRunConfig());
+            configs = (config.sweepFile == null) ? Arrays.asList(config) : StabilityRunConfig.parseSweep(config.sweepFile, config);
+        } catch (IllegalArgumentException | FileNotFoundException e) {
+            System.err.println("ERROR: " + e.getMessage());
+            System.err.print(StabilityRunConfig.usage());
             System.exit(1);
-        } catch (ClassNotFoundException e) {
-            System.err.println(e.toString());
-            e.printStackTrace();
+        }
+
+        // all runs of a sweep share the loaded inputs and, as far as their settings agree, the alignments
+        StabilityRunCache cache = new StabilityRunCache();
+        int numFailedRuns = 0;
+        for (int run = 0; run < configs.size(); run++) {
+            if (configs.size() > 1) {
+                System.err.println("Run " + (run + 1) + "/" + configs.size() + ": " + configs.get(run));
+            }
+            try {
+                run(configs.get(run), cache);
+            } catch (IOException e) {
+                System.err.println("ERROR: " + e.toString());
+                numFailedRuns++;
+            }
+        }
+        if (numFailedRuns > 0) {
+            System.err.println(numFailedRuns + " of " + configs.size() + " runs failed.");
             System.exit(1);
         }
-        PhoneticSymbolTable symbolTable = corrModel.getSymbolTable();
+    }
 
-        // load NorthEuraLex database
-        System.err.print("Loading database...");
-        CLDFWordlistDatabase db = CLDFImport.loadDatabase(DB_DIR);
-        System.err.println(" Done.");
+    /**
+     * Computes and writes the stability tables (one per count threshold) for one configuration,
+     * reusing whatever the cache holds for the same inputs.
+     */
+    public static void run(StabilityRunConfig config, StabilityRunCache cache) throws IOException {
+        LanguagePairSelection pairSelection = config.createPairSelection();
+        RunMetrics metrics = new RunMetrics(config.progressInterval);
+        metrics.setting("dbDir", config.dbDir);
+        metrics.setting("soundGroups", config.soundGroupsFile);
+        metrics.setting("threads", config.numThreads);
+        metrics.setting("countThresholds", Arrays.toString(config.countThresholds));
+        metrics.setting("alignUnorderedPairsOnce", config.alignUnorderedPairsOnce);
+        metrics.setting("pairSelection", pairSelection);
+        metrics.setting("bootstrapReplicates", config.bootstrapReplicates);
+        metrics.setting("permutations", config.permutations);
 
-        // load and prepare language data (only family membership is actually used)
-        String treeFileName = DB_DIR + "/tree.nwk";
-        LanguageTree globalTree = null;
         try {
-            globalTree = LanguageTree.fromNewickFile(treeFileName);
+            run(config, cache, pairSelection, metrics);
+        } finally {
+            metrics.finish();
+        }
+
+        System.err.println(String.format("Aligned %d pairs from %d cognate sets, counted %d columns, heap high-water mark %.1f MB"
+                        + " (sum of pool peaks %.1f MB).", metrics.getCount(RunMetrics.PAIRS_ALIGNED), metrics.getCount(RunMetrics.COGNATE_SETS),
+                metrics.getCount(RunMetrics.COLUMNS_COUNTED), metrics.getHeapHighWaterMark() / 1048576.0, metrics.getHeapPoolPeakSum() / 1048576.0));
+        if (config.runReportPath != null) {
+            try {
+                metrics.writeReport(config.runReportPath);
+            } catch (IOException e) {
+                System.err.println("WARNING: could not write run report: " + e.toString());
+            }
+        }
+    }
+
+    /**
+     * Writes the stability table for one count threshold to its output (standard output is only used for a single threshold).
+     */
+    private static void writeStabilityTable(StabilityRunConfig config, int countThreshold, SoundGroupMatrix groups, double[][] scores,
+                                            double[][][] intervals, double[][][] permutationResults) throws IOException {
+        String outputPath = config.getOutputPath(countThreshold);
+        if (outputPath == null) {
+            writeStabilityTable(groups, scores, intervals, permutationResults, config.format, System.out);
+            System.out.flush();
+            return;
+        }
+        try (PrintStream out = new PrintStream(new FileOutputStream(outputPath), false, "UTF-8")) {
+            writeStabilityTable(groups, scores, intervals, permutationResults, config.format, out);
+        }
+    }
+
+    private static void run(StabilityRunConfig config, StabilityRunCache cache, LanguagePairSelection pairSelection,
+                            RunMetrics metrics) throws IOException {
+        int numThreads = config.numThreads;
+        int[] countThresholds = config.countThresholds;
+
+        // load sound group definitions, only the set of sounds (which configures the tokenizer) invalidates cached results
+        String corrPath = config.getCorrFile();
+        String treeFileName = config.getTreeFile();
+        Map<String,Set<String>> soundGroups = IconEvolUtil.loadSoundGroups(config.soundGroupsFile);
+
+        // cached results are keyed by the contents of the input files, so regenerated or edited inputs invalidate them
+        String corrHash = InformationModelCache.hashFile(corrPath);
+        String treeHash;
+        try {
+            treeHash = InformationModelCache.hashFile(treeFileName);
         } catch (FileNotFoundException e) {
-            System.err.println("ERROR: tree file \"" + treeFileName + "\" not found!");
-            System.exit(1);
+            throw new FileNotFoundException("tree file \"" + treeFileName + "\" not found!");
+        }
+        String tokenizerFingerprint = IconEvolUtil.fingerprint(IconEvolUtil.hashDatabase(config.dbDir),
+                IconEvolUtil.lundTokenizerFingerprint(soundGroups));
+        String[] shiftCountsFingerprints = new String[countThresholds.length];
+        for (int t = 0; t < countThresholds.length; t++) {
+            shiftCountsFingerprints[t] = IconEvolUtil.fingerprint(tokenizerFingerprint, corrHash, treeHash,
+                    config.alignUnorderedPairsOnce, countThresholds[t], pairSelection);
+        }
+        // the bootstrap needs the alignments, so stored shift counts are only used without it (and only if stored for all thresholds)
+        if (config.shiftCountsPath != null && config.bootstrapReplicates == 0) {
+            ShiftCounts[] storedCounts = new ShiftCounts[countThresholds.length];
+            try {
+                for (int t = 0; t < countThresholds.length && storedCounts != null; t++) {
+                    Pair<Map<String,Double>, Map<String,Map<String,Double>>> shiftCounts = ShiftCountStorage.readFromFile(
+                            config.getShiftCountsPath(countThresholds[t]), shiftCountsFingerprints[t]);
+                    storedCounts[t] = (shiftCounts == null) ? null : ShiftCounts.fromSymbolMaps(shiftCounts.first, shiftCounts.second);
+                    if (storedCounts[t] == null) storedCounts = null;
+                }
+            } catch (IOException e) {
+                System.err.println("WARNING: could not read shift counts, doing a full run: " + e.toString());
+                storedCounts = null;
+            }
+            if (storedCounts != null) {
+                System.err.println("Recomputing stability table from stored shift counts.");
+                for (int t = 0; t < countThresholds.length; t++) {
+                    SoundGroupMatrix groups = new SoundGroupMatrix(soundGroups, storedCounts[t].getSymbols());
+                    writeStabilityTable(config, countThresholds[t], groups, groups.score(storedCounts[t]), null,
+                            permutationTest(groups, storedCounts[t], config.permutations, config.permutationSeed, numThreads));
+                }
+                return;
+            }
         }
 
-        List<String> langs = db.listLanguageISOs();
-        Map<String, String> langToFamily = new TreeMap<String, String>();
-        for (String lang : langs) {
-            List<String> path = globalTree.pathFromRoot(lang);
-            if (path.size() == 1) {
-                langToFamily.put(lang, lang);
-            } else {
-                langToFamily.put(lang, globalTree.pathFromRoot(lang).get(1));
+        // load correspondence model previously trained on Lund tokenization (using CorrespondenceModelPreparation script)
+        metrics.startPhase("load");
+        if (!corrPath.equals(cache.corrFile)) {
+            System.err.print("Loading global correspondence model...");
+            try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(corrPath))) {
+                cache.corrModel = CorrespondenceModelStorage.deserializeCorrespondenceModel(in);
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Could not deserialize correspondence model " + corrPath, e);
             }
+            cache.corrFile = corrPath;
+            System.err.println(" Done.");
         }
+        CorrespondenceModel corrModel = cache.corrModel;
+        PhoneticSymbolTable symbolTable = corrModel.getSymbolTable();
 
-        // load Lund tokenization model and configure the tokenizer accordingly
-        Map<String,Set<String>> soundGroups = IconEvolUtil.loadSoundGroups("src/main/resources/sound-group-definitions.tsv");
-        IPATokenizer tokenizer = IconEvolUtil.configureLundTokenizer(soundGroups);
+        // load the database (NorthEuraLex by default)
+        if (!config.dbDir.equals(cache.dbDir)) {
+            System.err.print("Loading database...");
+            cache.db = CLDFImport.loadDatabase(config.dbDir);
+            cache.dbDir = config.dbDir;
+            System.err.println(" Done.");
+        }
+        CLDFWordlistDatabase db = cache.db;
+
+        // load and prepare language data (the tree determines which language pairs are compared)
+        if (!treeFileName.equals(cache.treeFile)) {
+            try {
+                cache.tree = LanguageTree.fromNewickFile(treeFileName);
+            } catch (FileNotFoundException e) {
+                throw new FileNotFoundException("tree file \"" + treeFileName + "\" not found!");
+            }
+            cache.treeFile = treeFileName;
+        }
 
-        // create information models (for information-weighted sequence alignment)
-        System.err.print("Building information models... ");
-        Map<String, InformationModel> infoModels = new TreeMap<String, InformationModel>();
-        for (String isoCode : langs) {
-            String langID = db.searchLangIdForIsoCode(isoCode);
-            InformationModel infoModel = InformationModelInference.inferInformationModelForLanguage(langID, db, symbolTable, tokenizer);
-            infoModels.put(isoCode, infoModel);
+        List<String> langs = db.listLanguageISOs();
+        pairSelection.select(langs, cache.tree);
+
+        // the alignments are only needed for the bootstrap and the trace, otherwise a snapshot of the projection models
+        // holds everything that scoring needs (the shift counts are sums over the raw pair counts)
+        boolean needAlignments = config.bootstrapReplicates > 0 || config.tracePath != null;
+        String alignmentFingerprint = IconEvolUtil.fingerprint(tokenizerFingerprint, corrHash, treeHash,
+                config.alignUnorderedPairsOnce, pairSelection);
+        if (!alignmentFingerprint.equals(cache.alignmentFingerprint)) {
+            // release the alignments of the previous configuration before computing the new ones
+            cache.alignments = null;
+            cache.rawProjectionModels = null;
+            // dense IDs for languages and selected language pairs, used by all loops below
+            cache.index = new PipelineIndex(pairSelection, symbolTable);
+            cache.alignmentFingerprint = alignmentFingerprint;
+        }
+        PipelineIndex index = cache.index;
+        if (cache.rawProjectionModels == null && config.snapshotPath != null && new File(config.snapshotPath).exists()) {
+            metrics.startPhase("projection");
+            cache.rawProjectionModels = loadProjectionModelSnapshot(config.snapshotPath, symbolTable, alignmentFingerprint, index);
         }
-        System.err.println("Done.");
 
-        // extract projection models for each pair of languages from the same family
-        System.err.println("Building projection models... ");
-        Map<String, Map<String, FormProjectionModel>> projectionModels = inferProjectionModels(db, langToFamily, tokenizer, corrModel, infoModels);
-        for (String lang1 : projectionModels.keySet()) {
-            for (FormProjectionModel model : projectionModels.get(lang1).values()) {
-                model.finalizeCounts(5);
+        if (cache.alignments == null && (needAlignments || cache.rawProjectionModels == null)) {
+            // configure the tokenizer according to the Lund tokenization model, one instance per worker thread
+            ThreadLocal<IPATokenizer> tokenizers = IconEvolUtil.perThreadLundTokenizer(soundGroups);
+            if (!(tokenizerFingerprint + corrHash).equals(cache.tokenizerFingerprint)) {
+                // create information models (for information-weighted sequence alignment), in parallel and cached on disk
+                metrics.startPhase("infomodels");
+                System.err.print("Building information models... ");
+                cache.infoModels = InformationModelCache.inferInformationModels(db, langs, symbolTable, tokenizers,
+                        tokenizerFingerprint, config.getInfoModelCacheDir(), numThreads);
+                System.err.println("Done.");
+
+                // tokenize and encode every form once (optionally cached on disk, keyed by the tokenizer configuration)
+                metrics.startPhase("tokenize");
+                System.err.print("Tokenizing forms... ");
+                if (config.cacheSegments) {
+                    cache.segments = FormSegmentCache.loadOrBuild(config.getSegmentCacheDir() + "/segments-" + tokenizerFingerprint.substring(0, 16) + ".bin",
+                            tokenizerFingerprint, db, symbolTable, tokenizers, numThreads);
+                } else {
+                    cache.segments = FormSegmentCache.build(db, symbolTable, tokenizers, numThreads);
+                }
+                cache.tokenizerFingerprint = tokenizerFingerprint + corrHash;
+                System.err.println("Done.");
+            }
+
+            // align each pair of cognate forms from selected language pairs once, shared by all passes below
+            metrics.startPhase("align");
+            System.err.println("Aligning cognate pairs... ");
+            cache.alignments = alignCognatePairs(db, index, cache.segments, corrModel, index.infoModelsByLanguage(cache.infoModels),
+                    config.alignUnorderedPairsOnce, numThreads, metrics);
+            System.err.println("Done.");
+        }
+        List<AlignedFormPair> alignments = cache.alignments;
+
+        // extract projection models for each selected pair of languages (unless loaded from the snapshot)
+        metrics.startPhase("projection");
+        if (cache.rawProjectionModels == null) {
+            System.err.println("Building projection models... ");
+            cache.rawProjectionModels = inferProjectionModels(alignments, index, numThreads);
+            if (config.snapshotPath != null) {
+                try {
+                    ProjectionModelStorage.writeToFile(index.modelMap(cache.rawProjectionModels), symbolTable, alignmentFingerprint, config.snapshotPath);
+                } catch (IOException e) {
+                    System.err.println("WARNING: could not write projection model snapshot: " + e.toString());
+                }
             }
         }
+        // the stabilities for all thresholds are computed from the same raw counts, which are shared between runs
+        double[][] pairFactors = computePairFactors(cache.rawProjectionModels, index, countThresholds);
         System.err.println("Done.");
 
-        Map<String,Double> weightedNumInstances = new TreeMap<String,Double>();
-        Map<String,Map<String,Double>> weightedShiftCounts =  new TreeMap<String,Map<String,Double>>();
-
-        Map<Integer, Set<Integer>> cognateSets = db.getCogsetToCognates();
-        for (Map.Entry<Integer, Set<Integer>> entry : cognateSets.entrySet()) {
-            Set<Integer> cognateSet = entry.getValue();
-            for (int cldfFormId1 : cognateSet) {
-                CLDFForm cldfForm1 = db.getFormsMap().get(cldfFormId1);
-                String lang1 = db.getLanguageMap().get(cldfForm1.getLangID()).getIso();
-                String family1 = langToFamily.get(lang1);
-                PhoneticString form1 = IconEvolUtil.extractSegments(cldfForm1, symbolTable, tokenizer);
-                for (int cldfFormId2 : cognateSet) {
-                    CLDFForm cldfForm2 = db.getFormsMap().get(cldfFormId2);
-                    String lang2 = db.getLanguageMap().get(cldfForm2.getLangID()).getIso();
-                    if (lang1.equals(lang2)) continue;
-                    String family2 = langToFamily.get(lang2);
-                    if (family1.equals(family2)) {
-                        PhoneticString form2 = IconEvolUtil.extractSegments(cldfForm2, symbolTable, tokenizer);
-                        PhoneticStringAlignment align = InformationWeightedSequenceAlignment.constructAlignment(
-                                form1, form2, corrModel, corrModel, corrModel, corrModel, infoModels.get(lang1), infoModels.get(lang2));
-
-                        int pos1 = 0;
-                        int pos2 = 0;
-                        for (String[] pair : align.getSymbolPairs(symbolTable)) {
-                            String s1 = pair[0];
-                            String s2 = pair[1];
-
-                            System.err.print(lang1 + "\t" + cldfForm1.getForm() + "\t" + lang2 + "\t" + cldfForm2.getForm() + "\t" + s1 + "\t" + s2);
-
-                            double infoScore = 1.0;
-
-                            if (s1.equals("-")) {
-                                infoScore = InformationWeightedSequenceAlignment.getMeanInfoScore(form2, form2, pos2, pos2, infoModels.get(lang2), infoModels.get(lang2));
-                                pos2++;
-                            } else if (s2.equals("-")) {
-                                infoScore = InformationWeightedSequenceAlignment.getMeanInfoScore(form1, form1, pos1, pos1, infoModels.get(lang1), infoModels.get(lang1));
-                                pos1++;
-                            } else {
-                                infoScore = InformationWeightedSequenceAlignment.getMeanInfoScore(form1, form2, pos1, pos2, infoModels.get(lang1), infoModels.get(lang2));
-                                pos1++;
-                                pos2++;
-                            }
-
-                            double weight = (1.0 - projectionModels.get(lang1).get(lang2).lang1Stability) * infoScore;
-
-                            System.err.println("\t" + infoScore + "\t" + weight);
-
-                            Double weightedInstancesS1 = weightedNumInstances.get(s1);
-                            if (weightedInstancesS1 == null) {
-                                weightedInstancesS1 = 0.0;
-                                weightedShiftCounts.put(s1, new TreeMap<String, Double>());
-                            }
-                            weightedNumInstances.put(s1, weightedInstancesS1 + weight);
-
-                            Map<String,Double> weightedShiftCountsS1 = weightedShiftCounts.get(s1);
-                            Double weightedInstancesS1S2 = weightedShiftCountsS1.get(s2);
-                            if (weightedInstancesS1S2 == null) {
-                                weightedInstancesS1S2 = 0.0;
-                            }
-                            weightedShiftCountsS1.put(s2, weightedInstancesS1S2 + weight);
-
-                        }
-                    }
-                }
+        metrics.startPhase("scoring");
+        ShiftCounts[] shiftCounts = countShifts(cache.rawProjectionModels, pairFactors, symbolTable);
+        if (config.tracePath != null) {
+            try (AlignmentTraceWriter trace = new AlignmentTraceWriter(config.tracePath)) {
+                writeTrace(alignments, pairFactors[0], symbolTable, trace, db);
+            } catch (IOException e) {
+                System.err.println("WARNING: could not complete the alignment trace: " + e.toString());
+            }
+        }
+        if (alignments != null) {
+            for (AlignedFormPair alignment : alignments) {
+                metrics.count(RunMetrics.COLUMNS_COUNTED, alignment.getLength());
             }
         }
 
-        List<String> orderOfSoundGroups = new LinkedList<String>(soundGroups.keySet());
-
-        System.out.println("SoundGroup\tWeightedNumAlignments\tStable\tShiftInGroup\tShiftOutOfGroup\tLossOrGain");
-        for (String soundGroupName : orderOfSoundGroups) {
-            Set<String> soundGroup = soundGroups.get(soundGroupName);
-            double weightedNumAlignments = 0.0;
-            double weightedCountStable = 0.0;
-            double weightedCountShiftInGroup = 0.0;
-            double weightedCountShiftOutOfGroup = 0.0;
-            double weightedCountLossOrGain = 0.0;
-
-            for (String sound : soundGroup) {
-                Double numInstances = weightedNumInstances.get(sound);
-                if (numInstances == null) continue;
-                weightedNumAlignments += numInstances;
-                for (String sound2 : weightedShiftCounts.get(sound).keySet()) {
-                    double weightedCount = weightedShiftCounts.get(sound).get(sound2);
-                    if (sound2.equals(sound)) {
-                        weightedCountStable += weightedCount;
-                    } else if (sound2.equals("-")) {
-                        weightedCountLossOrGain += weightedCount;
-                    } else if (soundGroup.contains(sound2)) {
-                        weightedCountShiftInGroup += weightedCount;
-                    } else {
-                        weightedCountShiftOutOfGroup += weightedCount;
-                    }
+        // all shift counts are over the same symbol table, so the groups are resolved only once
+        SoundGroupMatrix groups = new SoundGroupMatrix(soundGroups, shiftCounts[0].getSymbols());
+        for (int t = 0; t < countThresholds.length; t++) {
+            if (countThresholds.length > 1) {
+                System.err.println("Count threshold " + countThresholds[t] + ":");
+            }
+            // percentile intervals from resampling the cognate sets, based on the contribution of each set to the shift counts
+            double[][][] intervals = null;
+            if (config.bootstrapReplicates > 0) {
+                metrics.startPhase("bootstrap");
+                System.err.print("Computing " + config.bootstrapReplicates + " bootstrap replicates... ");
+                StabilityBootstrap bootstrap = new StabilityBootstrap(alignments, db.getCogsetToCognates().size(), pairFactors[t], shiftCounts[t].getSymbols());
+                intervals = StabilityBootstrap.percentileIntervals(bootstrap.replicate(groups, config.bootstrapReplicates, config.bootstrapSeed, numThreads),
+                        config.bootstrapConfidence);
+                System.err.println("Done.");
+            }
+            double[][][] permutationResults = null;
+            if (config.permutations > 0) {
+                metrics.startPhase("permutations");
+                permutationResults = permutationTest(groups, shiftCounts[t], config.permutations, config.permutationSeed, numThreads);
+            }
+
+            metrics.startPhase("output");
+            if (config.shiftCountsPath != null) {
+                try {
+                    Pair<Map<String,Double>, Map<String,Map<String,Double>>> symbolCounts = shiftCounts[t].toSymbolMaps();
+                    ShiftCountStorage.writeToFile(symbolCounts.first, symbolCounts.second, shiftCountsFingerprints[t],
+                            config.getShiftCountsPath(countThresholds[t]));
+                } catch (IOException e) {
+                    System.err.println("WARNING: could not write shift counts: " + e.toString());
                 }
             }
-            System.out.println(soundGroupName + "\t" + weightedNumAlignments + "\t"
-                    + weightedCountStable / weightedNumAlignments + "\t"
-                    + weightedCountShiftInGroup / weightedNumAlignments + "\t"
-                    + weightedCountShiftOutOfGroup / weightedNumAlignments + "\t"
-                    + weightedCountLossOrGain / weightedNumAlignments);
+
+            writeStabilityTable(config, countThresholds[t], groups, groups.score(shiftCounts[t]), intervals, permutationResults);
         }
     }
 }
@@ -0,0 +1,144 @@
+package de.tuebingen.sfs.iconevol;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+import de.tuebingen.sfs.util.IntDoubleMap;
+
+/**
+ * Bootstrap over cognate sets for the stability table, summing precomputed per-set shift counts.
+ */
+
+public class StabilityBootstrap {
+    String[] symbols;
+    int numSymbols;
+    int numSets;
+
+    // cognate set -> cells (symbol1 * numSymbols + symbol2) and the weighted counts contributed to them
+    int[][] cells;
+    double[][] weights;
+
+    /**
+     * Collects the contribution vectors of all cognate sets, with the same column weights as countShifts.
+     *
+     * @param numSets the number of cognate sets (including those without any alignments, which are resampled as well)
+     */
+    public StabilityBootstrap(List<AlignedFormPair> alignments, int numSets, double[] pairFactors, String[] symbols) {
+        this.symbols = symbols;
+        this.numSymbols = symbols.length;
+        this.numSets = numSets;
+        this.cells = new int[numSets][];
+        this.weights = new double[numSets][];
+
+        IntDoubleMap[] contributions = new IntDoubleMap[numSets];
+        for (AlignedFormPair alignment : alignments) {
+            if (alignment.cognateSet == -1) {
+                throw new IllegalArgumentException("The bootstrap requires alignments annotated with their cognate sets!");
+            }
+            IntDoubleMap contribution = contributions[alignment.cognateSet];
+            if (contribution == null) {
+                contribution = new IntDoubleMap();
+                contributions[alignment.cognateSet] = contribution;
+            }
+            double pairFactor = pairFactors[alignment.pairID];
+            for (int i = 0; i < alignment.upperSymbols.length; i++) {
+                contribution.add(alignment.upperSymbols[i] * numSymbols + alignment.lowerSymbols[i], pairFactor * alignment.infoScores[i]);
+            }
+        }
+        for (int set = 0; set < numSets; set++) {
+            if (contributions[set] == null) {
+                cells[set] = new int[0];
+                weights[set] = new double[0];
+                continue;
+            }
+            cells[set] = contributions[set].sortedKeys();
+            weights[set] = new double[cells[set].length];
+            for (int i = 0; i < cells[set].length; i++) {
+                weights[set][i] = contributions[set].get(cells[set][i]);
+            }
+        }
+    }
+
+    public int getNumSets() {
+        return numSets;
+    }
+
+    /**
+     * @return replicate -> group -> values of the stability table (see SoundGroupMatrix.tableValues) for that replicate
+     */
+    public double[][][] replicate(SoundGroupMatrix groups, int numReplicates, long seed, int numThreads) {
+        // split sequentially, so that each replicate gets an independent stream regardless of scheduling
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] randoms = new SplittableRandom[numReplicates];
+        for (int replicate = 0; replicate < numReplicates; replicate++) {
+            randoms[replicate] = root.split();
+        }
+        return IconEvolUtil.runInParallel(numThreads, () -> IntStream.range(0, numReplicates).parallel()
+                .mapToObj(replicate -> replicate(groups, randoms[replicate]))
+                .toArray(double[][][]::new));
+    }
+
+    /**
+     * Scores one replicate, i.e. the sum of the contributions of numSets cognate sets drawn with replacement.
+     */
+    double[][] replicate(SoundGroupMatrix groups, SplittableRandom random) {
+        double[] weightedNumInstances = new double[numSymbols];
+        double[][] weightedShiftCounts = new double[numSymbols][numSymbols];
+        for (int draw = 0; draw < numSets; draw++) {
+            int set = random.nextInt(numSets);
+            int[] setCells = cells[set];
+            double[] setWeights = weights[set];
+            for (int i = 0; i < setCells.length; i++) {
+                int symbol1 = setCells[i] / numSymbols;
+                weightedNumInstances[symbol1] += setWeights[i];
+                weightedShiftCounts[symbol1][setCells[i] % numSymbols] += setWeights[i];
+            }
+        }
+        double[][] scores = groups.score(weightedNumInstances, weightedShiftCounts);
+        double[][] values = new double[scores.length][];
+        for (int group = 0; group < scores.length; group++) {
+            values[group] = SoundGroupMatrix.tableValues(scores[group]);
+        }
+        return values;
+    }
+
+    /**
+     * Percentile intervals for every group and column. Replicates in which a group has no alignments
+     * (and therefore undefined proportions) are ignored for that group.
+     *
+     * @param confidence e.g. 0.95 for the 2.5th and 97.5th percentiles
+     * @return group -> column -> {lower, upper}
+     */
+    public static double[][][] percentileIntervals(double[][][] replicates, double confidence) {
+        int numGroups = (replicates.length == 0) ? 0 : replicates[0].length;
+        double[][][] intervals = new double[numGroups][SoundGroupMatrix.NUM_SCORES][];
+        double[] values = new double[replicates.length];
+        for (int group = 0; group < numGroups; group++) {
+            for (int column = 0; column < SoundGroupMatrix.NUM_SCORES; column++) {
+                int numValues = 0;
+                for (double[][] replicate : replicates) {
+                    double value = replicate[group][column];
+                    if (!Double.isNaN(value)) values[numValues++] = value;
+                }
+                Arrays.sort(values, 0, numValues);
+                intervals[group][column] = new double[] {
+                        percentile(values, numValues, (1.0 - confidence) / 2),
+                        percentile(values, numValues, 1.0 - (1.0 - confidence) / 2)};
+            }
+        }
+        return intervals;
+    }
+
+    /**
+     * Linear interpolation between the closest ranks of the first numValues (sorted) values.
+     */
+    static double percentile(double[] sortedValues, int numValues, double p) {
+        if (numValues == 0) return Double.NaN;
+        double rank = p * (numValues - 1);
+        int lower = (int) Math.floor(rank);
+        int upper = Math.min(lower + 1, numValues - 1);
+        return sortedValues[lower] + (rank - lower) * (sortedValues[upper] - sortedValues[lower]);
+    }
+}
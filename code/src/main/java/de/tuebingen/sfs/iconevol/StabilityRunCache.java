@@ -0,0 +1,36 @@
+package de.tuebingen.sfs.iconevol;
+
+import java.util.List;
+import java.util.Map;
+
+import de.jdellert.iwsa.corrmodel.CorrespondenceModel;
+import de.jdellert.iwsa.infomodel.InformationModel;
+import de.tuebingen.sfs.cldfjava.data.CLDFWordlistDatabase;
+import de.tuebingen.sfs.util.LanguageTree;
+
+/**
+ * Inputs and intermediate results shared between the runs of a parameter sweep in one JVM.
+ */
+
+public class StabilityRunCache {
+    String dbDir;
+    CLDFWordlistDatabase db;
+
+    String corrFile;
+    CorrespondenceModel corrModel;
+
+    String treeFile;
+    LanguageTree tree;
+
+    // keyed by the tokenizer fingerprint
+    String tokenizerFingerprint;
+    Map<String, InformationModel> infoModels;
+    FormSegmentCache segments;
+
+    // keyed by the fingerprint of everything which determines the alignments
+    String alignmentFingerprint;
+    PipelineIndex index;
+    List<AlignedFormPair> alignments;
+    // raw projection model counts, the count thresholds are only applied to the stabilities computed from them
+    FormProjectionModel[] rawProjectionModels;
+}
@@ -0,0 +1,280 @@
+package de.tuebingen.sfs.iconevol;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.tuebingen.sfs.util.ListReader;
+
+/**
+ * All settings of one run of SoundGroupStabilityOutput, parsed from the command line or a line of a sweep file.
+ */
+
+public class StabilityRunConfig implements Cloneable {
+    public static final String DEFAULT_DB_DIR = "src/main/resources/northeuralex-0.9";
+    public static final String DEFAULT_SOUND_GROUPS_FILE = "src/main/resources/sound-group-definitions.tsv";
+    public static final int DEFAULT_COUNT_THRESHOLD = 5;
+    public static final String[] FORMATS = {"tsv", "csv", "json"};
+
+    // inputs (the correspondence model and the tree default to the files in the database directory)
+    String dbDir = DEFAULT_DB_DIR;
+    String corrFile = null;
+    String treeFile = null;
+    String soundGroupsFile = DEFAULT_SOUND_GROUPS_FILE;
+
+    // processing
+    int numThreads = Runtime.getRuntime().availableProcessors();
+    // one table is computed for every threshold, from the same alignments and raw projection model counts
+    int[] countThresholds = {DEFAULT_COUNT_THRESHOLD};
+    boolean alignUnorderedPairsOnce = false;
+
+    // caches and intermediate artifacts
+    String infoModelCacheDir = InformationModelCache.DEFAULT_CACHE_DIR;
+    boolean cacheSegments = false;
+    String segmentCacheDir = null;
+    String snapshotPath = null;
+    String shiftCountsPath = null;
+    String tracePath = null;
+
+    // selection of language pairs
+    int minLCADepth = 1;
+    int maxTreeDistance = LanguagePairSelection.UNLIMITED;
+    int maxPairsPerClade = LanguagePairSelection.UNLIMITED;
+    long pairSamplingSeed = 0L;
+    double distanceWeightExponent = 0.0;
+
+    // statistics
+    int bootstrapReplicates = 0;
+    long bootstrapSeed = 0L;
+    double bootstrapConfidence = 0.95;
+    int permutations = 0;
+    long permutationSeed = 0L;
+
+    // output and monitoring
+    String outputPath = null;
+    String format = "tsv";
+    String runReportPath = null;
+    int progressInterval = 10;
+    String sweepFile = null;
+
+    public StabilityRunConfig copy() {
+        try {
+            return (StabilityRunConfig) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param base the configuration whose settings are kept unless overridden by the options
+     * @throws IllegalArgumentException for unknown options, missing or malformed values
+     */
+    public static StabilityRunConfig parse(String[] args, StabilityRunConfig base) {
+        StabilityRunConfig config = base.copy();
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            switch (option) {
+                case "--db-dir": config.dbDir = value(args, ++i, option); break;
+                case "--corr-model": config.corrFile = value(args, ++i, option); break;
+                case "--tree": config.treeFile = value(args, ++i, option); break;
+                case "--sound-groups": config.soundGroupsFile = value(args, ++i, option); break;
+                case "--threads": config.numThreads = intValue(args, ++i, option); break;
+                case "--count-threshold": config.countThresholds = intListValue(args, ++i, option); break;
+                case "--align-unordered-pairs-once": config.alignUnorderedPairsOnce = true; break;
+                case "--info-model-cache": config.infoModelCacheDir = value(args, ++i, option); break;
+                case "--cache-segments": config.cacheSegments = true; break;
+                case "--segment-cache-dir": config.segmentCacheDir = value(args, ++i, option); config.cacheSegments = true; break;
+                case "--projection-model-snapshot": config.snapshotPath = value(args, ++i, option); break;
+                case "--shift-counts": config.shiftCountsPath = value(args, ++i, option); break;
+                case "--alignment-trace": config.tracePath = value(args, ++i, option); break;
+                case "--min-lca-depth": config.minLCADepth = intValue(args, ++i, option); break;
+                case "--max-tree-distance": config.maxTreeDistance = intValue(args, ++i, option); break;
+                case "--max-pairs-per-clade": config.maxPairsPerClade = intValue(args, ++i, option); break;
+                case "--pair-sampling-seed": config.pairSamplingSeed = longValue(args, ++i, option); break;
+                case "--distance-weight-exponent": config.distanceWeightExponent = doubleValue(args, ++i, option); break;
+                case "--bootstrap": config.bootstrapReplicates = intValue(args, ++i, option); break;
+                case "--bootstrap-seed": config.bootstrapSeed = longValue(args, ++i, option); break;
+                case "--bootstrap-confidence": config.bootstrapConfidence = doubleValue(args, ++i, option); break;
+                case "--permutations": config.permutations = intValue(args, ++i, option); break;
+                case "--permutation-seed": config.permutationSeed = longValue(args, ++i, option); break;
+                case "--output": config.outputPath = value(args, ++i, option); break;
+                case "--format": config.format = value(args, ++i, option); break;
+                case "--run-report": config.runReportPath = value(args, ++i, option); break;
+                case "--progress-interval": config.progressInterval = intValue(args, ++i, option); break;
+                case "--sweep": config.sweepFile = value(args, ++i, option); break;
+                default: throw new IllegalArgumentException("Unknown option: " + option);
+            }
+        }
+        if (!isFormat(config.format)) {
+            throw new IllegalArgumentException("Unknown output format: " + config.format);
+        }
+        // several tables on standard output would not form one valid JSON, CSV or TSV document (sweep lines are checked separately)
+        if (config.hasMultipleCountThresholds() && config.outputPath == null && config.sweepFile == null) {
+            throw new IllegalArgumentException("Several count thresholds require --output, which gets one file per threshold");
+        }
+        return config;
+    }
+
+    private static boolean isFormat(String format) {
+        for (String knownFormat : FORMATS) {
+            if (knownFormat.equals(format)) return true;
+        }
+        return false;
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for option " + option);
+        }
+        return args[index];
+    }
+
+    private static int intValue(String[] args, int index, String option) {
+        try {
+            return Integer.parseInt(value(args, index, option));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Option " + option + " requires an integer, got: " + args[index]);
+        }
+    }
+
+    private static int[] intListValue(String[] args, int index, String option) {
+        String[] parts = value(args, index, option).split(",");
+        int[] values = new int[parts.length];
+        try {
+            for (int i = 0; i < parts.length; i++) {
+                values[i] = Integer.parseInt(parts[i].trim());
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Option " + option + " requires a comma-separated list of integers, got: " + args[index]);
+        }
+        return values;
+    }
+
+    private static long longValue(String[] args, int index, String option) {
+        try {
+            return Long.parseLong(value(args, index, option));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Option " + option + " requires an integer, got: " + args[index]);
+        }
+    }
+
+    private static double doubleValue(String[] args, int index, String option) {
+        try {
+            return Double.parseDouble(value(args, index, option));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Option " + option + " requires a number, got: " + args[index]);
+        }
+    }
+
+    /**
+     * Reads a sweep file: one run per line, given as whitespace-separated options which override the base configuration.
+     * Empty lines and lines starting with # are ignored.
+     */
+    public static List<StabilityRunConfig> parseSweep(String sweepFile, StabilityRunConfig base) throws FileNotFoundException {
+        List<StabilityRunConfig> configs = new ArrayList<StabilityRunConfig>();
+        StabilityRunConfig sweepBase = base.copy();
+        sweepBase.sweepFile = null;
+        int lineNumber = 0;
+        for (String line : ListReader.listFromFile(sweepFile)) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            try {
+                configs.add(parse(line.split("\\s+"), sweepBase));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Line " + lineNumber + " of " + sweepFile + ": " + e.getMessage());
+            }
+        }
+        return configs;
+    }
+
+    public String getCorrFile() {
+        return (corrFile != null) ? corrFile : dbDir + "/global-iw-lund.corr";
+    }
+
+    public String getTreeFile() {
+        return (treeFile != null) ? treeFile : dbDir + "/tree.nwk";
+    }
+
+    public String getSegmentCacheDir() {
+        return (segmentCacheDir != null) ? segmentCacheDir : dbDir;
+    }
+
+    /**
+     * @return the info model cache directory, or null if disabled ("none")
+     */
+    public String getInfoModelCacheDir() {
+        return infoModelCacheDir.equals("none") ? null : infoModelCacheDir;
+    }
+
+    public boolean hasMultipleCountThresholds() {
+        return countThresholds.length > 1;
+    }
+
+    /**
+     * With several count thresholds, each threshold gets its own output file: results.tsv becomes results.threshold5.tsv.
+     *
+     * @return the path of the output for the given threshold (null for standard output)
+     */
+    public String getOutputPath(int countThreshold) {
+        return pathForThreshold(outputPath, countThreshold);
+    }
+
+    /**
+     * @return the path of the stored shift counts for the given threshold (null if not stored), named like the outputs
+     */
+    public String getShiftCountsPath(int countThreshold) {
+        return pathForThreshold(shiftCountsPath, countThreshold);
+    }
+
+    private String pathForThreshold(String path, int countThreshold) {
+        if (path == null || !hasMultipleCountThresholds()) return path;
+        int extensionStart = path.lastIndexOf('.');
+        if (extensionStart <= path.lastIndexOf('/') + 1) extensionStart = path.length();
+        return path.substring(0, extensionStart) + ".threshold" + countThreshold + path.substring(extensionStart);
+    }
+
+    public LanguagePairSelection createPairSelection() {
+        return new LanguagePairSelection(minLCADepth, maxTreeDistance, maxPairsPerClade, pairSamplingSeed, distanceWeightExponent);
+    }
+
+    public static String usage() {
+        return "Usage: SoundGroupStabilityOutput [options]\n"
+                + "Inputs:\n"
+                + "  --db-dir DIR                    CLDF wordlist (default: " + DEFAULT_DB_DIR + ")\n"
+                + "  --corr-model FILE               correspondence model (default: DIR/global-iw-lund.corr)\n"
+                + "  --tree FILE                     Newick tree of the languages (default: DIR/tree.nwk)\n"
+                + "  --sound-groups FILE             sound group definitions (default: " + DEFAULT_SOUND_GROUPS_FILE + ")\n"
+                + "Processing:\n"
+                + "  --threads N                     worker threads (default: number of processors)\n"
+                + "  --count-threshold N[,N...]      minimal count of a correspondence in a projection model (default: " + DEFAULT_COUNT_THRESHOLD + ");\n"
+                + "                                  several thresholds give one table each from a single alignment pass\n"
+                + "  --align-unordered-pairs-once    align each unordered pair of forms only once and reuse the alignment\n"
+                + "                                  for the reverse direction; faster, but the table can differ slightly\n"
+                + "                                  because ties between equally good alignments are broken differently\n"
+                + "Caches and intermediate files:\n"
+                + "  --info-model-cache DIR|none     information model cache (default: " + InformationModelCache.DEFAULT_CACHE_DIR + ")\n"
+                + "  --cache-segments                store the tokenized forms in the database directory\n"
+                + "  --segment-cache-dir DIR         store the tokenized forms in DIR instead\n"
+                + "  --projection-model-snapshot FILE, --shift-counts FILE, --alignment-trace FILE\n"
+                + "Pair selection:\n"
+                + "  --min-lca-depth D, --max-tree-distance N, --max-pairs-per-clade K, --pair-sampling-seed S, --distance-weight-exponent X\n"
+                + "Statistics:\n"
+                + "  --bootstrap N, --bootstrap-seed S, --bootstrap-confidence C, --permutations N, --permutation-seed S\n"
+                + "Output:\n"
+                + "  --output FILE                   write the table to FILE (default: standard output), with several count\n"
+                + "                                  thresholds (required then) to FILE with .thresholdN before the extension\n"
+                + "  --format tsv|csv|json           table format (default: tsv)\n"
+                + "  --run-report FILE, --progress-interval SECONDS\n"
+                + "  --sweep FILE                    one run per line, each line holds the options overriding the command line;\n"
+                + "                                  all runs share the loaded inputs and, where possible, the alignments\n";
+    }
+
+    @Override
+    public String toString() {
+        return "db=" + dbDir + ", corr=" + getCorrFile() + ", tree=" + getTreeFile() + ", soundGroups=" + soundGroupsFile
+                + ", countThresholds=" + Arrays.toString(countThresholds) + ", unordered=" + alignUnorderedPairsOnce + ", " + createPairSelection()
+                + ", output=" + ((outputPath == null) ? "stdout" : outputPath) + " (" + format + ")";
+    }
+}
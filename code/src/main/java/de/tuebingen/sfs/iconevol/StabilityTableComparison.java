@@ -0,0 +1,64 @@
+package de.tuebingen.sfs.iconevol;
+
+import java.io.FileNotFoundException;
+import java.util.List;
+
+import de.tuebingen.sfs.util.ListReader;
+
+/**
+ * Compares two stability tables cell by cell up to a relative tolerance. Usage: StabilityTableComparison expected.tsv actual.tsv [relativeTolerance]
+ */
+
+public class StabilityTableComparison {
+    public static final double DEFAULT_TOLERANCE = 1E-9;
+
+    public static int compareTables(List<String[]> expected, List<String[]> actual, double tolerance) {
+        int numDifferences = 0;
+        if (expected.size() != actual.size()) {
+            System.err.println("Different number of lines: " + expected.size() + " vs. " + actual.size());
+            numDifferences++;
+        }
+        for (int i = 0; i < Math.min(expected.size(), actual.size()); i++) {
+            String[] expectedLine = expected.get(i);
+            String[] actualLine = actual.get(i);
+            if (expectedLine.length != actualLine.length) {
+                System.err.println("Line " + (i + 1) + ": different number of columns");
+                numDifferences++;
+                continue;
+            }
+            for (int c = 0; c < expectedLine.length; c++) {
+                if (expectedLine[c].equals(actualLine[c])) continue;
+                try {
+                    double expectedValue = Double.parseDouble(expectedLine[c]);
+                    double actualValue = Double.parseDouble(actualLine[c]);
+                    double scale = Math.max(1.0, Math.max(Math.abs(expectedValue), Math.abs(actualValue)));
+                    if (Math.abs(expectedValue - actualValue) / scale <= tolerance) continue;
+                } catch (NumberFormatException e) {
+                    //non-numeric cells have to be identical
+                }
+                System.err.println("Line " + (i + 1) + ", column " + (c + 1) + ": " + expectedLine[c] + " vs. " + actualLine[c]);
+                numDifferences++;
+            }
+        }
+        return numDifferences;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: StabilityTableComparison expected.tsv actual.tsv [relativeTolerance]");
+            System.exit(2);
+        }
+        double tolerance = (args.length > 2) ? Double.parseDouble(args[2]) : DEFAULT_TOLERANCE;
+        try {
+            int numDifferences = compareTables(ListReader.arrayFromTSV(args[0]), ListReader.arrayFromTSV(args[1]), tolerance);
+            if (numDifferences > 0) {
+                System.err.println(numDifferences + " differences found.");
+                System.exit(1);
+            }
+            System.err.println("Tables match.");
+        } catch (FileNotFoundException e) {
+            System.err.println(e.toString());
+            System.exit(2);
+        }
+    }
+}
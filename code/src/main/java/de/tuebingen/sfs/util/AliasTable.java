@@ -0,0 +1,132 @@
+package de.tuebingen.sfs.util;
+
+import java.util.SplittableRandom;
+
+/**
+ * Alias table (Vose's method) for sampling from a fixed discrete distribution over int outcomes in constant time.
+ */
+public class AliasTable {
+    private final int[] outcomes;
+    private final double[] probability;
+    private final int[] alias;
+
+    /**
+     * @param outcomes the possible outcomes
+     * @param weights  non-negative weights of the outcomes (need not be normalized, at least one must be positive)
+     */
+    public AliasTable(int[] outcomes, double[] weights) {
+        int n = outcomes.length;
+        this.outcomes = outcomes.clone();
+        this.probability = new double[n];
+        this.alias = new int[n];
+
+        double totalWeight = 0.0;
+        for (double weight : weights) totalWeight += weight;
+        if (n == 0 || !(totalWeight > 0.0)) {
+            throw new IllegalArgumentException("Cannot build an alias table for a distribution without positive weights!");
+        }
+
+        // scaled probabilities, partitioned into a stack of small and a stack of large entries
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int numSmall = 0;
+        int numLarge = 0;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n / totalWeight;
+            if (scaled[i] < 1.0) {
+                small[numSmall++] = i;
+            } else {
+                large[numLarge++] = i;
+            }
+        }
+
+        while (numSmall > 0 && numLarge > 0) {
+            int less = small[--numSmall];
+            int more = large[--numLarge];
+            probability[less] = scaled[less];
+            alias[less] = more;
+            scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+            if (scaled[more] < 1.0) {
+                small[numSmall++] = more;
+            } else {
+                large[numLarge++] = more;
+            }
+        }
+        // remaining entries are (up to rounding errors) exactly 1
+        while (numLarge > 0) {
+            int i = large[--numLarge];
+            probability[i] = 1.0;
+            alias[i] = i;
+        }
+        while (numSmall > 0) {
+            int i = small[--numSmall];
+            probability[i] = 1.0;
+            alias[i] = i;
+        }
+    }
+
+    public int size() {
+        return outcomes.length;
+    }
+
+    public int sample(SplittableRandom random) {
+        int column = random.nextInt(outcomes.length);
+        if (random.nextDouble() < probability[column]) {
+            return outcomes[column];
+        }
+        return outcomes[alias[column]];
+    }
+
+    /**
+     * Builds an alias table from all positive counts in a primitive map, or returns null if there are none.
+     */
+    public static AliasTable fromCounts(IntDoubleMap counts) {
+        return fromCounts(counts, 0.0);
+    }
+
+    /**
+     * Builds an alias table from all positive counts in a primitive map which are at least minCount
+     * (i.e. ignoring the smaller counts without modifying the map), or returns null if there are none.
+     */
+    public static AliasTable fromCounts(IntDoubleMap counts, double minCount) {
+        int numPositive = 0;
+        for (int slot = 0; slot < counts.capacity(); slot++) {
+            if (counts.keyAt(slot) != -1 && counts.valueAt(slot) > 0.0 && counts.valueAt(slot) >= minCount) numPositive++;
+        }
+        if (numPositive == 0) return null;
+        int[] outcomes = new int[numPositive];
+        double[] weights = new double[numPositive];
+        int i = 0;
+        for (int slot = 0; slot < counts.capacity(); slot++) {
+            if (counts.keyAt(slot) != -1 && counts.valueAt(slot) > 0.0 && counts.valueAt(slot) >= minCount) {
+                outcomes[i] = counts.keyAt(slot);
+                weights[i] = counts.valueAt(slot);
+                i++;
+            }
+        }
+        return new AliasTable(outcomes, weights);
+    }
+
+    /**
+     * Builds an alias table over the indices of all positive entries of a count array, or returns null if there are none.
+     */
+    public static AliasTable fromCounts(double[] counts) {
+        int numPositive = 0;
+        for (double count : counts) {
+            if (count > 0.0) numPositive++;
+        }
+        if (numPositive == 0) return null;
+        int[] outcomes = new int[numPositive];
+        double[] weights = new double[numPositive];
+        int i = 0;
+        for (int index = 0; index < counts.length; index++) {
+            if (counts[index] > 0.0) {
+                outcomes[i] = index;
+                weights[i] = counts[index];
+                i++;
+            }
+        }
+        return new AliasTable(outcomes, weights);
+    }
+}
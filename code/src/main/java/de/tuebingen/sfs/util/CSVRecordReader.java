@@ -0,0 +1,157 @@
+package de.tuebingen.sfs.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Streaming reader for RFC 4180 comma-separated files, returning one record at a time.
+ */
+
+public class CSVRecordReader implements Iterator<String[]>, Closeable
+{
+    private final Reader in;
+    private final char[] buffer = new char[65536];
+    private int bufferPos = 0;
+    private int bufferEnd = 0;
+
+    private final char separator;
+    private final StringBuilder field = new StringBuilder();
+    private final List<String> fields = new ArrayList<String>();
+    private String[] nextRecord;
+    private boolean nextRecordRead = false;
+    private int lineNumber = 1;
+    private boolean atStart = true;
+
+    public CSVRecordReader(Reader in)
+    {
+        this(in, ',');
+    }
+
+    public CSVRecordReader(Reader in, char separator)
+    {
+        this.in = in;
+        this.separator = separator;
+    }
+
+    /**
+     * @return the fields of the next record, or null at the end of the file
+     */
+    public String[] readRecord() throws IOException
+    {
+        fields.clear();
+        field.setLength(0);
+        int c = read();
+        // skip empty lines
+        while (c == '\n' || c == '\r')
+        {
+            c = read();
+        }
+        if (c == -1) return null;
+        // a byte order mark at the beginning of the file is not part of the first field
+        if (atStart && c == '\uFEFF')
+        {
+            c = read();
+        }
+        atStart = false;
+        while (true)
+        {
+            if (c == '"' && field.length() == 0)
+            {
+                int quoteLine = lineNumber;
+                while (true)
+                {
+                    c = read();
+                    if (c == -1)
+                    {
+                        throw new IOException("Unterminated quoted field starting in line " + quoteLine);
+                    }
+                    if (c == '"')
+                    {
+                        c = read();
+                        if (c != '"') break;
+                    }
+                    if (c == '\n') lineNumber++;
+                    field.append((char) c);
+                }
+                // characters between the closing quote and the next separator are kept as they are
+            }
+            if (c == separator)
+            {
+                fields.add(field.toString());
+                field.setLength(0);
+                c = read();
+            }
+            else if (c == '\n' || c == '\r' || c == -1)
+            {
+                fields.add(field.toString());
+                if (c == '\r')
+                {
+                    c = read();
+                    if (c != '\n' && c != -1) unread();
+                }
+                if (c != -1) lineNumber++;
+                return fields.toArray(new String[fields.size()]);
+            }
+            else
+            {
+                field.append((char) c);
+                c = read();
+            }
+        }
+    }
+
+    private int read() throws IOException
+    {
+        if (bufferPos == bufferEnd)
+        {
+            bufferEnd = in.read(buffer, 0, buffer.length);
+            bufferPos = 0;
+            if (bufferEnd <= 0)
+            {
+                bufferEnd = 0;
+                return -1;
+            }
+        }
+        return buffer[bufferPos++];
+    }
+
+    private void unread()
+    {
+        // only called directly after read() returned a character, which is still in the buffer
+        bufferPos--;
+    }
+
+    public boolean hasNext()
+    {
+        if (!nextRecordRead)
+        {
+            try
+            {
+                nextRecord = readRecord();
+            }
+            catch (IOException e)
+            {
+                throw new RuntimeException(e);
+            }
+            nextRecordRead = true;
+        }
+        return nextRecord != null;
+    }
+
+    public String[] next()
+    {
+        if (!hasNext()) throw new NoSuchElementException();
+        nextRecordRead = false;
+        return nextRecord;
+    }
+
+    public void close() throws IOException
+    {
+        in.close();
+    }
+}
@@ -0,0 +1,129 @@
+package de.tuebingen.sfs.util;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from non-negative int keys to primitive double values (0.0 for absent keys).
+ */
+public class IntDoubleMap {
+    private static final int EMPTY = -1;
+
+    private int[] keys;
+    private double[] values;
+    private int size;
+
+    public IntDoubleMap() {
+        this(8);
+    }
+
+    public IntDoubleMap(int expectedSize) {
+        int capacity = 8;
+        while (capacity < expectedSize * 2) capacity <<= 1;
+        keys = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        values = new double[capacity];
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean containsKey(int key) {
+        return keys[slotFor(key)] == key;
+    }
+
+    public double get(int key) {
+        int slot = slotFor(key);
+        return (keys[slot] == key) ? values[slot] : 0.0;
+    }
+
+    public void put(int key, double value) {
+        int slot = slotFor(key);
+        if (keys[slot] != key) {
+            keys[slot] = key;
+            size++;
+            values[slot] = value;
+            if (size * 2 > keys.length) rehash(keys.length * 2);
+        } else {
+            values[slot] = value;
+        }
+    }
+
+    public void add(int key, double delta) {
+        int slot = slotFor(key);
+        if (keys[slot] != key) {
+            keys[slot] = key;
+            size++;
+            values[slot] = delta;
+            if (size * 2 > keys.length) rehash(keys.length * 2);
+        } else {
+            values[slot] += delta;
+        }
+    }
+
+    public int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * @return the key stored in the given slot, or -1 if the slot is empty
+     */
+    public int keyAt(int slot) {
+        return keys[slot];
+    }
+
+    public double valueAt(int slot) {
+        return values[slot];
+    }
+
+    public void setValueAt(int slot, double value) {
+        values[slot] = value;
+    }
+
+    /**
+     * @return all keys in ascending order
+     */
+    public int[] sortedKeys() {
+        int[] result = new int[size];
+        int i = 0;
+        for (int key : keys) {
+            if (key != EMPTY) result[i++] = key;
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    public double sum() {
+        double sum = 0.0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != EMPTY) sum += values[slot];
+        }
+        return sum;
+    }
+
+    private int slotFor(int key) {
+        int mask = keys.length - 1;
+        int hash = key * 0x9E3779B9;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash(int newCapacity) {
+        int[] oldKeys = keys;
+        double[] oldValues = values;
+        keys = new int[newCapacity];
+        Arrays.fill(keys, EMPTY);
+        values = new double[newCapacity];
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldKeys[slot] != EMPTY) {
+                int newSlot = slotFor(oldKeys[slot]);
+                keys[newSlot] = oldKeys[slot];
+                values[newSlot] = oldValues[slot];
+            }
+        }
+    }
+}
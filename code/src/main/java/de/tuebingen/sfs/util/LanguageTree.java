@@ -4,7 +4,6 @@ import java.io.FileNotFoundException;
 import java.util.*;
 
 public class LanguageTree {
-    Map<String, List<String>> paths;
     // virtual root node is marked "ROOT"
     public String root = "ROOT";
     public Map<String, String> parents;
@@ -12,8 +11,20 @@ public class LanguageTree {
 
     public Map<String, Set<String>> annotation;
 
+    // int-indexed view of the tree, precomputed by buildIndex() once the tree is loaded
+    private Map<String, Integer> nodeIndex;
+    private String[] nodeNames;
+    private int[] parentIndex;
+    private int[] depth;
+    private int[] familyIndex;
+    // Euler tour intervals for constant-time ancestor tests
+    private int[] enterTime;
+    private int[] exitTime;
+    // Euler tour sequence with sparse table over minimal depths for constant-time LCA queries
+    private int[] eulerFirst;
+    private int[][] eulerMinDepthNode;
+
     public LanguageTree() {
-        paths = new TreeMap<String, List<String>>();
         parents = new TreeMap<String, String>();
         children = new TreeMap<String, TreeSet<String>>();
         children.put("ROOT", new TreeSet<String>());
@@ -147,30 +158,195 @@ public class LanguageTree {
             tree.children.put("ROOT", roots);
         }
 
-        for (String root : roots) {
-            addPaths(tree, root, new LinkedList<String>());
-        }
+        tree.buildIndex();
         return tree;
     }
 
-    public static void addPaths(LanguageTree tree, String node, List<String> pathToNode) {
-        tree.paths.put(node, new LinkedList<String>(pathToNode));
-        if (tree.children.get(node) != null && tree.children.get(node).size() > 0) {
-            List<String> extendedPath = new LinkedList<String>(pathToNode);
-            extendedPath.add(node);
-            for (String child : tree.children.get(node)) {
-                addPaths(tree, child, extendedPath);
+    /**
+     * Precomputes int-indexed parent and depth arrays, top-level families, Euler tour intervals and an LCA structure.
+     * Needs to be called again after modifying parents or children.
+     */
+    public void buildIndex() {
+        Set<String> nodes = new TreeSet<String>(parents.keySet());
+        nodes.addAll(parents.values());
+        nodes.addAll(children.keySet());
+        for (Set<String> childNodes : children.values()) {
+            nodes.addAll(childNodes);
+        }
+
+        int n = nodes.size();
+        nodeNames = nodes.toArray(new String[n]);
+        nodeIndex = new HashMap<String, Integer>(n * 2);
+        for (int i = 0; i < n; i++) {
+            nodeIndex.put(nodeNames[i], i);
+        }
+
+        // parents as defined by pathFromRoot, i.e. walking up stops at "ROOT"
+        parentIndex = new int[n];
+        List<List<Integer>> childIndices = new ArrayList<List<Integer>>(n);
+        for (int i = 0; i < n; i++) {
+            childIndices.add(new ArrayList<Integer>());
+        }
+        for (int i = 0; i < n; i++) {
+            String parent = parents.get(nodeNames[i]);
+            if (parent == null || nodeNames[i].equals("ROOT")) {
+                parentIndex[i] = -1;
+            } else {
+                parentIndex[i] = nodeIndex.get(parent);
+                childIndices.get(parentIndex[i]).add(i);
+            }
+        }
+
+        // iterative depth-first traversal from every top node, computing depths, families and the Euler tour
+        depth = new int[n];
+        familyIndex = new int[n];
+        enterTime = new int[n];
+        exitTime = new int[n];
+        eulerFirst = new int[n];
+        int[] euler = new int[2 * n];
+        int eulerLength = 0;
+        int time = 0;
+        int[] stack = new int[n];
+        int[] nextChild = new int[n];
+        for (int top = 0; top < n; top++) {
+            if (parentIndex[top] != -1) continue;
+            int stackSize = 0;
+            stack[stackSize++] = top;
+            depth[top] = 0;
+            familyIndex[top] = top;
+            enterTime[top] = time++;
+            eulerFirst[top] = eulerLength;
+            euler[eulerLength++] = top;
+            while (stackSize > 0) {
+                int node = stack[stackSize - 1];
+                if (nextChild[node] < childIndices.get(node).size()) {
+                    int child = childIndices.get(node).get(nextChild[node]++);
+                    depth[child] = depth[node] + 1;
+                    // the family is the node on the path directly below the top node (a top-level language is its own family)
+                    familyIndex[child] = (depth[child] == 1) ? child : familyIndex[node];
+                    enterTime[child] = time++;
+                    eulerFirst[child] = eulerLength;
+                    euler[eulerLength++] = child;
+                    stack[stackSize++] = child;
+                } else {
+                    exitTime[node] = time++;
+                    stackSize--;
+                    if (stackSize > 0) {
+                        euler[eulerLength++] = stack[stackSize - 1];
+                    } else {
+                        // separator between the tours of different top nodes
+                        euler[eulerLength++] = -1;
+                    }
+                }
+            }
+        }
+
+        // sparse table: eulerMinDepthNode[k][i] is the node of minimal depth in euler[i .. i + 2^k - 1]
+        int levels = 1;
+        while ((1 << levels) <= eulerLength) levels++;
+        eulerMinDepthNode = new int[levels][];
+        eulerMinDepthNode[0] = Arrays.copyOf(euler, eulerLength);
+        for (int k = 1; k < levels; k++) {
+            int length = eulerLength - (1 << k) + 1;
+            eulerMinDepthNode[k] = new int[length];
+            for (int i = 0; i < length; i++) {
+                eulerMinDepthNode[k][i] = shallower(eulerMinDepthNode[k - 1][i], eulerMinDepthNode[k - 1][i + (1 << (k - 1))]);
             }
         }
     }
 
+    private int shallower(int node1, int node2) {
+        if (node1 == -1 || node2 == -1) return -1;
+        return (depth[node1] <= depth[node2]) ? node1 : node2;
+    }
+
+    /**
+     * @return the index of the node in the int-indexed view of the tree, or -1 if the node does not exist
+     */
+    public int getNodeIndex(String node) {
+        Integer index = nodeIndex.get(node);
+        return (index == null) ? -1 : index;
+    }
+
+    public String getNodeName(int index) {
+        return nodeNames[index];
+    }
+
+    public int getNumNodes() {
+        return nodeNames.length;
+    }
+
+    /**
+     * @return the number of ancestors of the node (i.e. the length of pathFromRoot), or -1 for unknown nodes
+     */
+    public int getDepth(String node) {
+        int index = getNodeIndex(node);
+        return (index == -1) ? -1 : depth[index];
+    }
+
+    /**
+     * @return the top-level family (the second element of pathFromRoot); a language directly below the root
+     * is its own family, as are languages which are not in the tree
+     */
+    public String getFamily(String lang) {
+        int index = getNodeIndex(lang);
+        if (index == -1 || depth[index] <= 1) return lang;
+        return nodeNames[familyIndex[index]];
+    }
+
+    /**
+     * Constant-time ancestor test based on Euler tour intervals (a node counts as its own ancestor).
+     */
+    public boolean isAncestor(String ancestor, String node) {
+        int ancestorIndex = getNodeIndex(ancestor);
+        int index = getNodeIndex(node);
+        if (ancestorIndex == -1 || index == -1) return false;
+        return enterTime[ancestorIndex] <= enterTime[index] && exitTime[index] <= exitTime[ancestorIndex];
+    }
+
+    /**
+     * Constant-time lowest common ancestor query (range minimum over the Euler tour).
+     *
+     * @return the index of the lowest common ancestor, or -1 if the nodes are unknown or in unconnected trees
+     */
+    public int lowestCommonAncestorIndex(int index1, int index2) {
+        if (index1 == -1 || index2 == -1) return -1;
+        int from = Math.min(eulerFirst[index1], eulerFirst[index2]);
+        int to = Math.max(eulerFirst[index1], eulerFirst[index2]);
+        int k = 31 - Integer.numberOfLeadingZeros(to - from + 1);
+        return shallower(eulerMinDepthNode[k][from], eulerMinDepthNode[k][to - (1 << k) + 1]);
+    }
+
+    public String lowestCommonAncestor(String node1, String node2) {
+        int lcaIndex = lowestCommonAncestorIndex(getNodeIndex(node1), getNodeIndex(node2));
+        return (lcaIndex == -1) ? null : nodeNames[lcaIndex];
+    }
+
+    /**
+     * @return the depth of the lowest common ancestor, or -1 if there is none
+     */
+    public int getLCADepth(String node1, String node2) {
+        int lcaIndex = lowestCommonAncestorIndex(getNodeIndex(node1), getNodeIndex(node2));
+        return (lcaIndex == -1) ? -1 : depth[lcaIndex];
+    }
+
+    /**
+     * @return the number of edges on the path between the two nodes, or -1 if they are not connected
+     */
+    public int getTreeDistance(String node1, String node2) {
+        int index1 = getNodeIndex(node1);
+        int index2 = getNodeIndex(node2);
+        int lcaIndex = lowestCommonAncestorIndex(index1, index2);
+        return (lcaIndex == -1) ? -1 : depth[index1] + depth[index2] - 2 * depth[lcaIndex];
+    }
+
     public List<String> pathFromRoot(String lang) {
         LinkedList<String> path = new LinkedList<String>();
-        while (parents.get(lang) != null && !lang.equals("ROOT")) {
-            lang = parents.get(lang);
-            path.add(lang);
+        int index = getNodeIndex(lang);
+        if (index == -1) return path;
+        for (int ancestor = parentIndex[index]; ancestor != -1; ancestor = parentIndex[ancestor]) {
+            path.addFirst(nodeNames[ancestor]);
         }
-        Collections.reverse(path);
         return path;
     }
 }
@@ -1,72 +1,143 @@
 package de.tuebingen.sfs.util;
 
-import java.io.File;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
+import java.util.function.Consumer;
 
 public class ListReader
 {
-    public static List<String> listFromFile(String fileName) throws FileNotFoundException
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    public static BufferedReader openFile(String fileName) throws FileNotFoundException
     {
-        ArrayList<String> list = new ArrayList<String>();
-        Scanner in = new Scanner(new File(fileName));
-        //first line: language IDs
-        while (in.hasNextLine())
+        return openStream(new FileInputStream(fileName));
+    }
+
+    public static BufferedReader openStream(InputStream stream)
+    {
+        return new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    /**
+     * Streams the lines of a file to the handler, without keeping them in memory.
+     */
+    public static void forEachLine(String fileName, Consumer<String> handler) throws FileNotFoundException
+    {
+        forEachLine(openFile(fileName), handler);
+    }
+
+    public static void forEachLine(BufferedReader in, Consumer<String> handler)
+    {
+        try
+        {
+            try
+            {
+                String line;
+                while ((line = in.readLine()) != null)
+                {
+                    handler.accept(line);
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Streams the tab-separated rows of a file to the handler (split as by String.split("\t")).
+     */
+    public static void forEachTSVRow(String fileName, Consumer<String[]> handler) throws FileNotFoundException
+    {
+        forEachLine(openFile(fileName), line -> handler.accept(splitTSV(line)));
+    }
+
+    /**
+     * Splits a line at tabs with the same result as line.split("\t"), i.e. trailing empty fields are removed,
+     * but without the intermediate list.
+     */
+    public static String[] splitTSV(String line)
+    {
+        int end = line.length();
+        while (end > 0 && line.charAt(end - 1) == '\t')
+        {
+            end--;
+        }
+        if (end == 0)
+        {
+            //String.split only returns the empty string for an empty line, a line of tabs has no fields
+            return (line.length() == 0) ? new String[] {""} : new String[0];
+        }
+        int numFields = 1;
+        for (int i = 0; i < end; i++)
+        {
+            if (line.charAt(i) == '\t') numFields++;
+        }
+        String[] fields = new String[numFields];
+        int start = 0;
+        for (int f = 0; f < numFields - 1; f++)
         {
-            list.add(in.nextLine());
+            int tab = line.indexOf('\t', start);
+            fields[f] = line.substring(start, tab);
+            start = tab + 1;
         }
-        in.close();
+        fields[numFields - 1] = line.substring(start, end);
+        return fields;
+    }
+
+    public static List<String> listFromFile(String fileName) throws FileNotFoundException
+    {
+        ArrayList<String> list = new ArrayList<String>();
+        forEachLine(fileName, list::add);
         return list;
     }
 
     public static List<String> listFromStream(InputStream stream)
     {
         ArrayList<String> list = new ArrayList<String>();
-        Scanner in = new Scanner(stream);
-        //first line: language IDs
-        while (in.hasNextLine())
-        {
-            list.add(in.nextLine());
-        }
-        in.close();
+        forEachLine(openStream(stream), list::add);
         return list;
     }
 
     public static List<String[]> arrayFromTSV(String fileName) throws FileNotFoundException
     {
         ArrayList<String[]> list = new ArrayList<String[]>();
-        Scanner in = new Scanner(new File(fileName));
-        while (in.hasNextLine())
-        {
-            list.add(in.nextLine().split("\t"));
-        }
-        in.close();
+        forEachTSVRow(fileName, list::add);
         return list;
     }
 
     public static Map<String,String[]> mapFromTSV(String fileName, int uniqueKeyIndex, int minNumFields) throws FileNotFoundException
     {
-        Scanner in = new Scanner(new File(fileName));
-        return mapFromTSV(in, uniqueKeyIndex, minNumFields);
+        return mapFromTSV(openFile(fileName), uniqueKeyIndex, minNumFields);
     }
 
     public static Map<String,String[]> mapFromTSV(InputStream stream, int uniqueKeyIndex, int minNumFields) throws FileNotFoundException
     {
-        Scanner in = new Scanner(stream);
-        return mapFromTSV(in, uniqueKeyIndex, minNumFields);
+        return mapFromTSV(openStream(stream), uniqueKeyIndex, minNumFields);
     }
 
-    public static Map<String,String[]> mapFromTSV(Scanner in, int uniqueKeyIndex, int minNumFields)
+    public static Map<String,String[]> mapFromTSV(BufferedReader in, int uniqueKeyIndex, int minNumFields)
     {
         HashMap<String,String[]> list = new HashMap<String,String[]>();
-        while (in.hasNextLine())
+        forEachLine(in, line ->
         {
-            String[] tokens = in.nextLine().split("\t");
+            String[] tokens = splitTSV(line);
             if (tokens.length > uniqueKeyIndex && tokens.length >= minNumFields)
             {
                 list.put(tokens[uniqueKeyIndex], tokens);
@@ -75,27 +146,93 @@ public class ListReader
             {
                 //ignore lines where there are fewer columns than the key index
             }
-        }
-        in.close();
+        });
         return list;
     }
 
+    /**
+     * Callback for the records of a CSV file with a header line.
+     */
+    public interface CSVRecordHandler
+    {
+        /**
+         * @param fields the fields of the record, the array is not reused and can be kept
+         */
+        void handle(String[] fields);
+    }
+
+    /**
+     * Streams the records of a CSV file (RFC 4180 quoting) to the handler. The header line is not passed on,
+     * instead, the positions of the requested columns in the header are written into columnIndices
+     * (-1 for missing columns), so that the handler can access the fields by index instead of by name.
+     *
+     * @return the column names from the header line
+     */
+    public static String[] forEachCSVRecord(String fileName, String[] columns, int[] columnIndices, CSVRecordHandler handler) throws IOException
+    {
+        try (CSVRecordReader in = new CSVRecordReader(openFile(fileName)))
+        {
+            String[] columnNames = in.readRecord();
+            if (columnNames == null) return new String[0];
+            int[] indices = columnIndices(columnNames, columns);
+            System.arraycopy(indices, 0, columnIndices, 0, indices.length);
+            String[] fields;
+            while ((fields = in.readRecord()) != null)
+            {
+                handler.handle(fields);
+            }
+            return columnNames;
+        }
+    }
+
+    /**
+     * @return for each requested column, its position among the column names (-1 if it does not occur)
+     */
+    public static int[] columnIndices(String[] columnNames, String... columns)
+    {
+        List<String> columnList = Arrays.asList(columnNames);
+        int[] indices = new int[columns.length];
+        for (int i = 0; i < columns.length; i++)
+        {
+            indices[i] = columnList.indexOf(columns[i]);
+        }
+        return indices;
+    }
+
+    /**
+     * @return the field at the given index, or the empty string for missing columns and short records
+     */
+    public static String field(String[] fields, int index)
+    {
+        return (index >= 0 && index < fields.length) ? fields[index] : "";
+    }
+
     public static List<Map<String,String>> entriesFromCSV(String fileName) throws FileNotFoundException
     {
         List<Map<String,String>> entries = new ArrayList<Map<String,String>>();
-        Scanner in = new Scanner(new File(fileName));
-        String[] columnNames = in.nextLine().split(",");
-        while (in.hasNextLine())
+        try (CSVRecordReader in = new CSVRecordReader(openFile(fileName)))
         {
-            String[] fields = in.nextLine().split(",");
-            Map<String,String> entry = new HashMap<String,String>();
-            for (int i = 0; i < columnNames.length; i++)
+            String[] columnNames = in.readRecord();
+            if (columnNames == null) return entries;
+            String[] fields;
+            while ((fields = in.readRecord()) != null)
             {
-                entry.put(columnNames[i], fields[i]);
+                Map<String,String> entry = new HashMap<String,String>(columnNames.length * 2);
+                for (int i = 0; i < columnNames.length; i++)
+                {
+                    entry.put(columnNames[i], field(fields, i));
+                }
+                entries.add(entry);
             }
-            entries.add(entry);
         }
-        in.close();
+        catch (FileNotFoundException e)
+        {
+            throw e;
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
         return entries;
     }
 }
@@ -0,0 +1,73 @@
+package de.tuebingen.sfs.util;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from non-negative long keys to int values (-1 for absent keys).
+ */
+public class LongIntMap {
+    private static final long EMPTY = -1L;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+
+    public LongIntMap() {
+        this(16);
+    }
+
+    public LongIntMap(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) capacity <<= 1;
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        values = new int[capacity];
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int get(long key) {
+        int slot = slotFor(key);
+        return (keys[slot] == key) ? values[slot] : -1;
+    }
+
+    public void put(long key, int value) {
+        int slot = slotFor(key);
+        if (keys[slot] != key) {
+            keys[slot] = key;
+            size++;
+            values[slot] = value;
+            if (size * 2 > keys.length) rehash(keys.length * 2);
+        } else {
+            values[slot] = value;
+        }
+    }
+
+    private int slotFor(long key) {
+        int mask = keys.length - 1;
+        long hash = key * 0x9E3779B97F4A7C15L;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[newCapacity];
+        Arrays.fill(keys, EMPTY);
+        values = new int[newCapacity];
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldKeys[slot] != EMPTY) {
+                int newSlot = slotFor(oldKeys[slot]);
+                keys[newSlot] = oldKeys[slot];
+                values[newSlot] = oldValues[slot];
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package de.tuebingen.sfs.iconevol;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class AlignedFormPairTest {
+    private static AlignedFormPair alignment() {
+        AlignedFormPair alignment = new AlignedFormPair(3, "fin", "est", 10, 20,
+                new int[] {2, 1, 4, 5}, new int[] {2, 3, 1, 6}, new double[] {0.5, 0.25, 0.75, 1.0});
+        alignment.cognateSet = 7;
+        return alignment;
+    }
+
+    @Test
+    public void reverseSwapsRowsFormsAndLanguages() {
+        AlignedFormPair alignment = alignment();
+        AlignedFormPair reversed = alignment.reverse(4);
+        assertEquals(4, reversed.getPairID());
+        assertEquals("est", reversed.getLang1());
+        assertEquals("fin", reversed.getLang2());
+        assertEquals(20, reversed.cldfFormId1);
+        assertEquals(10, reversed.cldfFormId2);
+        assertArrayEquals(alignment.lowerSymbols, reversed.upperSymbols);
+        assertArrayEquals(alignment.upperSymbols, reversed.lowerSymbols);
+        assertEquals(alignment.getCognateSet(), reversed.getCognateSet());
+    }
+
+    @Test
+    public void reverseKeepsInfoScores() {
+        AlignedFormPair alignment = alignment();
+        assertArrayEquals(alignment.infoScores, alignment.reverse(4).infoScores, 0.0);
+    }
+
+    @Test
+    public void reversingTwiceGivesOriginal() {
+        AlignedFormPair alignment = alignment();
+        AlignedFormPair twice = alignment.reverse(4).reverse(alignment.getPairID());
+        assertEquals(alignment.getPairID(), twice.getPairID());
+        assertEquals(alignment.getCognateSet(), twice.getCognateSet());
+        assertEquals(alignment.getLang1(), twice.getLang1());
+        assertEquals(alignment.getLang2(), twice.getLang2());
+        assertEquals(alignment.cldfFormId1, twice.cldfFormId1);
+        assertEquals(alignment.cldfFormId2, twice.cldfFormId2);
+        assertArrayEquals(alignment.upperSymbols, twice.upperSymbols);
+        assertArrayEquals(alignment.lowerSymbols, twice.lowerSymbols);
+        assertArrayEquals(alignment.infoScores, twice.infoScores, 0.0);
+    }
+}
@@ -0,0 +1,111 @@
+package de.tuebingen.sfs.iconevol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CognateSetSchedulerTest {
+    private long[][] rowCosts;
+
+    @Before
+    public void setUp() {
+        // very skewed set sizes: one huge set, a few medium ones, many pairs, and sets without any alignments
+        Random random = new Random(23);
+        int[] setSizes = new int[60];
+        setSizes[0] = 300;
+        for (int set = 1; set < setSizes.length; set++) {
+            setSizes[set] = (set % 10 == 0) ? 40 : (set % 7 == 0) ? 1 : 2;
+        }
+        rowCosts = new long[setSizes.length][];
+        for (int set = 0; set < setSizes.length; set++) {
+            rowCosts[set] = new long[setSizes[set]];
+            for (int row = 0; row < setSizes[set]; row++) {
+                // some rows have no partners (e.g. languages outside of the selection)
+                rowCosts[set][row] = (setSizes[set] == 1 || random.nextInt(10) == 0) ? 0L : (long) (setSizes[set] - 1) * (1 + random.nextInt(30));
+            }
+        }
+    }
+
+    /**
+     * Fake alignment of rows [fromRow, toRow) of a set: a few records per row with partners, identifying set, row and partner.
+     */
+    private List<AlignedFormPair> align(int set, int fromRow, int toRow) {
+        List<AlignedFormPair> alignments = new ArrayList<AlignedFormPair>();
+        for (int row = fromRow; row < toRow; row++) {
+            if (rowCosts[set][row] == 0L) continue;
+            for (int partner = 0; partner < 1 + row % 3; partner++) {
+                alignments.add(new AlignedFormPair(set, "l1", "l2", row, partner, new int[0], new int[0], new double[0]));
+            }
+        }
+        return alignments;
+    }
+
+    private static String describe(List<List<AlignedFormPair>> alignmentsPerSet) {
+        StringBuilder description = new StringBuilder();
+        for (List<AlignedFormPair> alignments : alignmentsPerSet) {
+            for (AlignedFormPair alignment : alignments) {
+                description.append(alignment.getPairID()).append('/').append(alignment.cldfFormId1).append('/').append(alignment.cldfFormId2).append(' ');
+            }
+            description.append('\n');
+        }
+        return description.toString();
+    }
+
+    @Test
+    public void mergedOrderIsSequentialOrder() {
+        List<List<AlignedFormPair>> sequential = new ArrayList<List<AlignedFormPair>>();
+        for (int set = 0; set < rowCosts.length; set++) {
+            sequential.add(align(set, 0, rowCosts[set].length));
+        }
+        String expected = describe(sequential);
+        for (int numThreads : new int[] {1, 2, 3, 8}) {
+            CognateSetScheduler scheduler = new CognateSetScheduler(rowCosts, numThreads);
+            List<List<AlignedFormPair>> alignmentsPerSet = scheduler.run(this::align, null);
+            assertEquals(rowCosts.length, alignmentsPerSet.size());
+            assertEquals("threads: " + numThreads, expected, describe(alignmentsPerSet));
+        }
+    }
+
+    @Test
+    public void oversizedSetsAreSplit() {
+        CognateSetScheduler scheduler = new CognateSetScheduler(rowCosts, 4);
+        assertTrue(scheduler.numTasksPerSet[0] > 1);
+        int numSetsWithCost = 0;
+        for (long[] costs : rowCosts) {
+            long cost = 0L;
+            for (long rowCost : costs) cost += rowCost;
+            if (cost > 0L) numSetsWithCost++;
+        }
+        assertTrue(scheduler.getNumTasks() > numSetsWithCost);
+        // sets without any cost get no task
+        assertEquals(0, scheduler.numTasksPerSet[7]);
+    }
+
+    @Test
+    public void tasksCoverAllRowsWithCostsInDecreasingCostOrder() {
+        CognateSetScheduler scheduler = new CognateSetScheduler(rowCosts, 4);
+        long[] coveredCost = new long[rowCosts.length];
+        long previousCost = Long.MAX_VALUE;
+        for (CognateSetScheduler.Task task : scheduler.tasks) {
+            assertTrue(task.cost <= previousCost);
+            previousCost = task.cost;
+            long cost = 0L;
+            for (int row = task.fromRow; row < task.toRow; row++) {
+                cost += rowCosts[task.set][row];
+            }
+            assertEquals(task.cost, cost);
+            coveredCost[task.set] += cost;
+        }
+        for (int set = 0; set < rowCosts.length; set++) {
+            long cost = 0L;
+            for (long rowCost : rowCosts[set]) cost += rowCost;
+            assertEquals(cost, coveredCost[set]);
+        }
+    }
+}
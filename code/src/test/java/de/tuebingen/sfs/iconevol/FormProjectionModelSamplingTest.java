@@ -0,0 +1,107 @@
+package de.tuebingen.sfs.iconevol;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.jdellert.iwsa.sequence.PhoneticSymbolTable;
+
+public class FormProjectionModelSamplingTest {
+    private PhoneticSymbolTable symTable;
+    private FormProjectionModel model;
+
+    @Before
+    public void setUp() {
+        symTable = new PhoneticSymbolTable(Arrays.asList("a", "b", "c", "d", "x"));
+        model = new FormProjectionModel("l1", "l2", symTable);
+        // "a" always corresponds to "b", except in the context "c a c", where it corresponds to "d";
+        // most lang2 segments are "c", so the global distribution would almost never give "b"
+        for (int i = 0; i < 10; i++) {
+            model.storePair("a", "b");
+        }
+        for (int i = 0; i < 1000; i++) {
+            model.storePair("c", "c");
+        }
+        for (int i = 0; i < 10; i++) {
+            model.storeGappyBigram("c", "a", "c", "d");
+        }
+        model.finalizeCounts(0);
+    }
+
+    private List<String> sample(long seed, String... form) {
+        return model.sampleMapping(Arrays.asList(form), new SplittableRandom(seed));
+    }
+
+    private int[] encode(String... form) {
+        int[] symbolIDs = new int[form.length];
+        for (int i = 0; i < form.length; i++) {
+            symbolIDs[i] = symTable.toInt(form[i]);
+        }
+        return symbolIDs;
+    }
+
+    @Test
+    public void observedContextIsUsedFirst() {
+        for (int seed = 0; seed < 20; seed++) {
+            assertEquals("d", sample(seed, "c", "a", "c").get(1));
+        }
+    }
+
+    @Test
+    public void unobservedContextFallsBackToSegment() {
+        for (int seed = 0; seed < 20; seed++) {
+            assertEquals("b", sample(seed, "#", "a", "d").get(1));
+        }
+    }
+
+    @Test
+    public void unknownNeighboursFallBackToSegment() {
+        for (int seed = 0; seed < 20; seed++) {
+            assertEquals("b", sample(seed, "?", "a", "c").get(1));
+            assertEquals("b", sample(seed, "c", "a", "?").get(1));
+        }
+    }
+
+    @Test
+    public void unknownSegmentFallsBackToGlobalDistribution() {
+        int numC = 0;
+        for (int seed = 0; seed < 200; seed++) {
+            if (model.sampleMapping(Arrays.asList("?"), new SplittableRandom(seed)).get(0).equals("c")) numC++;
+        }
+        // 1000 of the 1010 lang2 segments are "c"
+        assertEquals(200, numC, 10);
+    }
+
+    @Test
+    public void batchSamplingProjectsEveryForm() {
+        int[][] forms = {encode("c", "a", "c"), encode("a"), encode("a", "d"), new int[0]};
+        for (int seed = 0; seed < 20; seed++) {
+            int[][] samples = model.sampleMappings(forms, new SplittableRandom(seed));
+            assertEquals(forms.length, samples.length);
+            for (int f = 0; f < forms.length; f++) {
+                assertEquals(forms[f].length, samples[f].length);
+            }
+            assertEquals("d", symTable.toSymbol(samples[0][1]));
+            assertEquals("b", symTable.toSymbol(samples[1][0]));
+            assertEquals("b", symTable.toSymbol(samples[2][0]));
+        }
+    }
+
+    @Test
+    public void batchSamplingEqualsSingleSamplingWithSameStream() {
+        int[][] forms = {encode("c", "a", "c", "c"), encode("d", "c"), encode("b", "a", "x"), encode("c")};
+        for (int seed = 0; seed < 20; seed++) {
+            int[][] samples = model.sampleMappings(forms, new SplittableRandom(seed));
+            SplittableRandom random = new SplittableRandom(seed);
+            for (int f = 0; f < forms.length; f++) {
+                assertArrayEquals(model.sampleMapping(forms[f], random), samples[f]);
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package de.tuebingen.sfs.iconevol;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.jdellert.iwsa.sequence.PhoneticString;
+import de.jdellert.iwsa.sequence.PhoneticSymbolTable;
+
+public class FormSegmentCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private PhoneticSymbolTable symTable;
+    private Map<Integer, PhoneticString> segmentsForForm;
+    private String fileName;
+
+    @Before
+    public void setUp() throws IOException {
+        symTable = new PhoneticSymbolTable(Arrays.asList("a", "e", "i", "k", "t", "s"));
+        Random random = new Random(7);
+        segmentsForForm = new HashMap<Integer, PhoneticString>();
+        for (int formId = 0; formId < 100; formId++) {
+            int[] segments = new int[1 + random.nextInt(8)];
+            for (int i = 0; i < segments.length; i++) {
+                segments[i] = random.nextInt(symTable.getSize());
+            }
+            segmentsForForm.put(formId * 3, new PhoneticString(segments));
+        }
+        fileName = new File(folder.getRoot(), "segments.bin").getPath();
+        new FormSegmentCache(segmentsForForm, null, symTable, null).writeToFile(fileName, "fingerprint");
+    }
+
+    @Test
+    public void roundTripKeepsSegments() throws Exception {
+        Map<Integer, PhoneticString> loaded = FormSegmentCache.readFromFile(fileName, "fingerprint", symTable);
+        assertEquals(segmentsForForm.keySet(), loaded.keySet());
+        for (Map.Entry<Integer, PhoneticString> entry : segmentsForForm.entrySet()) {
+            assertArrayEquals(entry.getValue().segments, loaded.get(entry.getKey()).segments);
+        }
+    }
+
+    @Test
+    public void roundTripMapsSymbolsToCurrentTable() throws Exception {
+        // the same symbols in a different order get different IDs
+        PhoneticSymbolTable otherTable = new PhoneticSymbolTable(Arrays.asList("s", "t", "k", "i", "e", "a"));
+        Map<Integer, PhoneticString> loaded = FormSegmentCache.readFromFile(fileName, "fingerprint", otherTable);
+        for (Map.Entry<Integer, PhoneticString> entry : segmentsForForm.entrySet()) {
+            int[] segments = entry.getValue().segments;
+            int[] loadedSegments = loaded.get(entry.getKey()).segments;
+            assertEquals(segments.length, loadedSegments.length);
+            for (int i = 0; i < segments.length; i++) {
+                assertEquals(symTable.toSymbol(segments[i]), otherTable.toSymbol(loadedSegments[i]));
+            }
+        }
+    }
+
+    @Test
+    public void outdatedCacheIsNotLoaded() throws Exception {
+        assertNull(FormSegmentCache.readFromFile(fileName, "other", symTable));
+    }
+
+    @Test
+    public void truncatedCacheIsRejectedWithIOException() throws Exception {
+        long length = new File(fileName).length();
+        for (long cut : new long[] {2, 10, 20, length / 3, length / 2, length - 1}) {
+            new FormSegmentCache(segmentsForForm, null, symTable, null).writeToFile(fileName, "fingerprint");
+            try (RandomAccessFile file = new RandomAccessFile(fileName, "rw")) {
+                file.setLength(cut);
+            }
+            assertRejected();
+        }
+    }
+
+    @Test
+    public void corruptCacheIsRejectedWithIOException() throws Exception {
+        // overwrite the form records with large negative ints (invalid segment counts and symbol indices)
+        long length = new File(fileName).length();
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "rw")) {
+            for (long pos = length / 2; pos + 4 <= length; pos += 4) {
+                file.seek(pos);
+                file.writeInt(-123456);
+            }
+        }
+        assertRejected();
+    }
+
+    private void assertRejected() {
+        try {
+            FormSegmentCache.readFromFile(fileName, "fingerprint", symTable);
+            fail("invalid segment cache was accepted");
+        } catch (IOException e) {
+            // expected: loadOrBuild rebuilds the cache
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package de.tuebingen.sfs.iconevol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class GappyBigramKeyTest {
+    // the largest symbol ID which fits into the 21 bits of a packed position
+    private static final int MAX_SYMBOL = (1 << 21) - 2;
+
+    private static void assertRoundTrip(int previous, int symbol, int next) {
+        long key = FormProjectionModel.gappyBigramKey(previous, symbol, next);
+        assertTrue("packed keys must be non-negative", key >= 0);
+        assertEquals(previous, FormProjectionModel.unpackSymbol(key, 0));
+        assertEquals(symbol, FormProjectionModel.unpackSymbol(key, 1));
+        assertEquals(next, FormProjectionModel.unpackSymbol(key, 2));
+    }
+
+    @Test
+    public void roundTripWithBoundaries() {
+        assertRoundTrip(FormProjectionModel.BOUNDARY, 5, FormProjectionModel.BOUNDARY);
+        assertRoundTrip(FormProjectionModel.BOUNDARY, 0, 7);
+        assertRoundTrip(3, 0, FormProjectionModel.BOUNDARY);
+    }
+
+    @Test
+    public void roundTripAtTheLimits() {
+        assertRoundTrip(0, 0, 0);
+        assertRoundTrip(MAX_SYMBOL, MAX_SYMBOL, MAX_SYMBOL);
+        assertRoundTrip(FormProjectionModel.BOUNDARY, MAX_SYMBOL, FormProjectionModel.BOUNDARY);
+        assertRoundTrip(MAX_SYMBOL, 0, FormProjectionModel.BOUNDARY);
+    }
+
+    @Test
+    public void distinctContextsGiveDistinctKeys() {
+        Set<Long> keys = new HashSet<Long>();
+        int numContexts = 0;
+        for (int previous = -1; previous < 12; previous++) {
+            for (int symbol = 0; symbol < 12; symbol++) {
+                for (int next = -1; next < 12; next++) {
+                    keys.add(FormProjectionModel.gappyBigramKey(previous, symbol, next));
+                    numContexts++;
+                }
+            }
+        }
+        assertEquals(numContexts, keys.size());
+        // the boundary must not be confused with symbol 0
+        assertNotEquals(FormProjectionModel.gappyBigramKey(FormProjectionModel.BOUNDARY, 1, 2), FormProjectionModel.gappyBigramKey(0, 1, 2));
+    }
+}
@@ -0,0 +1,67 @@
+package de.tuebingen.sfs.iconevol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class InputFingerprintTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void write(File file, String content) throws Exception {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void databaseHashDependsOnTableContents() throws Exception {
+        File dbDir = folder.newFolder("db");
+        write(new File(dbDir, "forms.csv"), "ID,Form\n1,kala\n");
+        write(new File(dbDir, "cognates.csv"), "ID,Form_ID,Cognateset_ID\n1,1,fish\n");
+        String hash = IconEvolUtil.hashDatabase(dbDir.getPath());
+
+        // other files in the directory (e.g. stored segments) do not matter
+        write(new File(dbDir, "segments-0123456789abcdef.bin"), "cache");
+        assertEquals(hash, IconEvolUtil.hashDatabase(dbDir.getPath()));
+
+        write(new File(dbDir, "cognates.csv"), "ID,Form_ID,Cognateset_ID\n1,1,water\n");
+        String editedHash = IconEvolUtil.hashDatabase(dbDir.getPath());
+        assertNotEquals(hash, editedHash);
+
+        // the same tables in another directory give the same hash
+        File copyDir = folder.newFolder("copy");
+        write(new File(copyDir, "forms.csv"), "ID,Form\n1,kala\n");
+        write(new File(copyDir, "cognates.csv"), "ID,Form_ID,Cognateset_ID\n1,1,water\n");
+        assertEquals(editedHash, IconEvolUtil.hashDatabase(copyDir.getPath()));
+    }
+
+    @Test
+    public void tokenizerFingerprintDependsOnSoundsOnly() {
+        Map<String, Set<String>> soundGroups = new TreeMap<String, Set<String>>();
+        soundGroups.put("V", new TreeSet<String>(Arrays.asList("a", "e")));
+        soundGroups.put("C", new TreeSet<String>(Arrays.asList("k", "t")));
+        String fingerprint = IconEvolUtil.lundTokenizerFingerprint(soundGroups);
+
+        // regrouping the same sounds gives the same tokenization
+        Map<String, Set<String>> regrouped = new TreeMap<String, Set<String>>();
+        regrouped.put("A", new TreeSet<String>(Arrays.asList("a", "k")));
+        regrouped.put("B", new TreeSet<String>(Arrays.asList("e", "t")));
+        assertEquals(fingerprint, IconEvolUtil.lundTokenizerFingerprint(regrouped));
+
+        regrouped.get("B").add("s");
+        assertNotEquals(fingerprint, IconEvolUtil.lundTokenizerFingerprint(regrouped));
+        // the fixed rules are part of the fingerprint
+        assertNotEquals(IconEvolUtil.fingerprint(IconEvolUtil.getTokenizerSymbols(soundGroups)), fingerprint);
+    }
+}
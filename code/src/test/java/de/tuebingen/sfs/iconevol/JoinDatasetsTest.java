@@ -0,0 +1,99 @@
+package de.tuebingen.sfs.iconevol;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JoinDatasetsTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void write(File dir, String fileName, String content) throws Exception {
+        Files.write(new File(dir, fileName).toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // a dataset in the layout of NorthEuraLex: concepticon_proposed column, separate cognate table
+    private File northEuraLexLike() throws Exception {
+        File dir = folder.newFolder("nelex");
+        write(dir, "languages.csv", "ID,Name,ISO639P3code,Glottocode\nfin,Finnish,fin,finn1318\nest,Estonian,est,esto1258\n");
+        write(dir, "parameters.csv", "ID,Name,concepticon_proposed\nfish::N,Fisch,FISH\nhand::N,Hand,HAND\n");
+        write(dir, "forms.csv", "ID,Language_ID,Parameter_ID,Form,Segments\n1,fin,fish::N,kala,k a l a\n2,est,fish::N,kala,k a l a\n3,fin,hand::N,käsi,k æ s i\n");
+        write(dir, "cognates.csv", "ID,Form_ID,Cognateset_ID\n1,1,fish-1\n2,2,fish-1\n3,3,hand-1\n");
+        return dir;
+    }
+
+    // a dataset in the layout of Lexibank: Concepticon_Gloss column, cognacy in the form table
+    private File lexibankLike() throws Exception {
+        File dir = folder.newFolder("lexibank");
+        write(dir, "languages.csv", "ID,Name,ISO639P3code,Glottocode\nFinnish,Finnish,fin,finn1318\nLivonian,Livonian,,livv1244\n");
+        write(dir, "parameters.csv", "ID,Name,Concepticon_ID,Concepticon_Gloss\n1_fish,fish,227,FISH\n2_water,water,948,WATER\n");
+        write(dir, "forms.csv", "ID,Language_ID,Parameter_ID,Form,Segments,Cognacy\n1,Finnish,1_fish,kala,k a l a,1\n2,Livonian,1_fish,kalā,k a l aː,1\n3,Livonian,2_water,vež,v e ʒ,\n");
+        return dir;
+    }
+
+    @Test
+    public void conceptsAndLanguagesAreUnifiedAcrossDatasets() throws Exception {
+        JoinedWordlist wordlist = JoinDatasets.joinDatasets(Arrays.asList(northEuraLexLike().getPath(), lexibankLike().getPath()), 2);
+        assertEquals(6, wordlist.getNumForms());
+        assertEquals(Arrays.asList("FISH", "HAND", "WATER"), sorted(wordlist.getConcepts()));
+        assertEquals(Arrays.asList("est", "fin", "livv1244"), sorted(wordlist.getLanguages()));
+        assertEquals("FISH", wordlist.getConcept(3));
+        assertEquals(wordlist.getLanguageID(0), wordlist.getLanguageID(3));
+        // cognate set IDs of different datasets are kept apart, forms without cognacy have no cognate set
+        assertEquals(3, wordlist.getNumCognateSets());
+        assertEquals(wordlist.getCognateSet(0), wordlist.getCognateSet(1));
+        assertNotEquals(wordlist.getCognateSet(0), wordlist.getCognateSet(3));
+        assertEquals(-1, wordlist.getCognateSet(5));
+    }
+
+    @Test
+    public void exportedWordlistCanBeJoinedAgain() throws Exception {
+        JoinedWordlist wordlist = JoinDatasets.joinDatasets(Arrays.asList(northEuraLexLike().getPath(), lexibankLike().getPath()), 1);
+        File exportDir = new File(folder.getRoot(), "joined");
+        JoinDatasets.exportCLDF(wordlist, exportDir.getPath());
+
+        JoinedWordlist reloaded = JoinDatasets.joinDatasets(Collections.singletonList(exportDir.getPath()), 1);
+        assertEquals(wordlist.getNumForms(), reloaded.getNumForms());
+        assertEquals(sorted(wordlist.getConcepts()), sorted(reloaded.getConcepts()));
+        assertEquals(sorted(wordlist.getLanguages()), sorted(reloaded.getLanguages()));
+        assertEquals(wordlist.getNumCognateSets(), reloaded.getNumCognateSets());
+        for (int form = 0; form < wordlist.getNumForms(); form++) {
+            assertEquals(wordlist.getLanguage(form), reloaded.getLanguage(form));
+            assertEquals(wordlist.getConcept(form), reloaded.getConcept(form));
+            assertEquals(wordlist.getForm(form), reloaded.getForm(form));
+            assertArrayEquals(wordlist.getSegments(form), reloaded.getSegments(form));
+            assertEquals(wordlist.getCognateSet(form) == -1, reloaded.getCognateSet(form) == -1);
+        }
+
+        // only real ISO codes are exported as such
+        String languages = new String(Files.readAllBytes(new File(exportDir, "languages.csv").toPath()), StandardCharsets.UTF_8);
+        assertTrue(languages.contains("fin,fin,fin,\r\n"));
+        assertTrue(languages.contains("livv1244,livv1244,,livv1244\r\n"));
+
+        // the metadata declares the columns the CLDF loader of the pipeline (--db-dir) resolves by property
+        String metadata = new String(Files.readAllBytes(new File(exportDir, "cldf-metadata.json").toPath()), StandardCharsets.UTF_8);
+        for (String term : new String[] {"FormTable", "LanguageTable", "ParameterTable", "CognateTable", "languageReference",
+                "parameterReference", "segments", "iso639P3code", "glottocode", "formReference", "cognatesetReference"}) {
+            assertTrue(term, metadata.contains("http://cldf.clld.org/v1.0/terms.rdf#" + term));
+        }
+    }
+
+    private static List<String> sorted(List<String> list) {
+        List<String> copy = new ArrayList<String>(list);
+        Collections.sort(copy);
+        return copy;
+    }
+}
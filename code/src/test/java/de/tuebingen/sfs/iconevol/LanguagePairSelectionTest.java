@@ -0,0 +1,123 @@
+package de.tuebingen.sfs.iconevol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.tuebingen.sfs.util.LanguageTree;
+
+public class LanguagePairSelectionTest {
+    private static final List<String> LANGUAGES = Arrays.asList("fin", "est", "liv", "krl", "hun", "mns", "kca",
+            "deu", "nld", "eng", "swe", "dan", "nor", "isl", "eus");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private LanguageTree tree;
+
+    @Before
+    public void setUp() throws Exception {
+        File nwkFile = folder.newFile("tree.nwk");
+        try (PrintWriter out = new PrintWriter(nwkFile, "UTF-8")) {
+            out.println("(((fin,est,krl)Finnic,liv)Finnic2,(hun,(mns,kca)ObUgric)Ugric)Uralic;");
+            out.println("((deu,nld,eng)WestGermanic,((swe,dan,nor)Scandinavian,isl)NorthGermanic)Germanic;");
+            out.println("eus;");
+        }
+        tree = LanguageTree.fromNewickFile(nwkFile.getPath());
+    }
+
+    @Test
+    public void defaultSelectionIsSameFamilySelection() {
+        // language to family as determined before LanguageTree.getFamily()
+        Map<String, String> langToFamily = new TreeMap<String, String>();
+        for (String lang : LANGUAGES) {
+            List<String> path = tree.pathFromRoot(lang);
+            langToFamily.put(lang, (path.size() == 1) ? lang : path.get(1));
+        }
+        LanguagePairSelection expected = LanguagePairSelection.sameFamily(langToFamily);
+        LanguagePairSelection selection = new LanguagePairSelection().select(LANGUAGES, tree);
+        assertEquals(expected.getNumPairs(), selection.getNumPairs());
+        // 7 Uralic and 7 Germanic languages, the isolate has no partners
+        assertEquals(2 * 7 * 6, selection.getNumPairs());
+        for (String lang1 : LANGUAGES) {
+            for (String lang2 : LANGUAGES) {
+                assertEquals(lang1 + "/" + lang2, expected.isSelected(lang1, lang2), selection.isSelected(lang1, lang2));
+                assertEquals(expected.getWeight(lang1, lang2), selection.getWeight(lang1, lang2), 0.0);
+            }
+        }
+        assertFalse(selection.isSelected("eus", "fin"));
+        assertFalse(selection.isSelected("fin", "fin"));
+    }
+
+    @Test
+    public void maxTreeDistanceCutsOffDistantPairs() {
+        LanguagePairSelection selection = new LanguagePairSelection(1, 3, LanguagePairSelection.UNLIMITED, 0L, 0.0).select(LANGUAGES, tree);
+        for (String lang1 : LANGUAGES) {
+            for (String lang2 : LANGUAGES) {
+                boolean expected = !lang1.equals(lang2) && tree.getLCADepth(lang1, lang2) >= 1 && tree.getTreeDistance(lang1, lang2) <= 3;
+                assertEquals(lang1 + "/" + lang2, expected, selection.isSelected(lang1, lang2));
+            }
+        }
+        assertTrue(selection.isSelected("fin", "liv"));
+        assertFalse(selection.isSelected("fin", "hun"));
+    }
+
+    @Test
+    public void maxPairsPerCladeBoundsPairsReproducibly() {
+        int maxPairsPerClade = 2;
+        LanguagePairSelection selection = new LanguagePairSelection(1, LanguagePairSelection.UNLIMITED, maxPairsPerClade, 42L, 0.0).select(LANGUAGES, tree);
+        LanguagePairSelection again = new LanguagePairSelection(1, LanguagePairSelection.UNLIMITED, maxPairsPerClade, 42L, 0.0).select(LANGUAGES, tree);
+
+        Map<String, Integer> unorderedPairsPerClade = new TreeMap<String, Integer>();
+        for (String lang1 : LANGUAGES) {
+            for (String lang2 : LANGUAGES) {
+                assertEquals(selection.isSelected(lang1, lang2), again.isSelected(lang1, lang2));
+                // the selection is symmetric
+                assertEquals(selection.isSelected(lang1, lang2), selection.isSelected(lang2, lang1));
+                if (lang1.compareTo(lang2) < 0 && selection.isSelected(lang1, lang2)) {
+                    String clade = tree.lowestCommonAncestor(lang1, lang2);
+                    Integer count = unorderedPairsPerClade.get(clade);
+                    unorderedPairsPerClade.put(clade, (count == null) ? 1 : count + 1);
+                }
+            }
+        }
+        // all clades have at least two candidate pairs, except for ObUgric with one
+        for (Map.Entry<String, Integer> entry : unorderedPairsPerClade.entrySet()) {
+            assertTrue(entry.getKey(), entry.getValue() <= maxPairsPerClade);
+        }
+        assertEquals(Integer.valueOf(1), unorderedPairsPerClade.get("ObUgric"));
+        assertEquals(Integer.valueOf(2), unorderedPairsPerClade.get("Uralic"));
+        assertEquals(2 * (8 * 2 + 1), selection.getNumPairs());
+    }
+
+    @Test
+    public void distanceWeighting() {
+        LanguagePairSelection selection = new LanguagePairSelection(1, LanguagePairSelection.UNLIMITED, LanguagePairSelection.UNLIMITED, 0L, 1.0).select(LANGUAGES, tree);
+        assertEquals(1.0 / 2, selection.getWeight("fin", "est"), 1E-12);
+        assertEquals(1.0 / 3, selection.getWeight("liv", "fin"), 1E-12);
+        assertEquals(1.0 / 6, selection.getWeight("est", "kca"), 1E-12);
+        assertEquals(1.0 / 6, selection.getWeight("kca", "est"), 1E-12);
+        assertEquals(0.0, selection.getWeight("fin", "deu"), 0.0);
+
+        LanguagePairSelection squared = new LanguagePairSelection(1, LanguagePairSelection.UNLIMITED, LanguagePairSelection.UNLIMITED, 0L, 2.0).select(LANGUAGES, tree);
+        for (String lang1 : LANGUAGES) {
+            for (String lang2 : LANGUAGES) {
+                if (!squared.isSelected(lang1, lang2)) continue;
+                double distance = tree.getTreeDistance(lang1, lang2);
+                assertEquals(1.0 / (distance * distance), squared.getWeight(lang1, lang2), 1E-12);
+            }
+        }
+    }
+}
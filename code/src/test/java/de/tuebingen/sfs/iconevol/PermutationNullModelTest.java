@@ -0,0 +1,155 @@
+package de.tuebingen.sfs.iconevol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PermutationNullModelTest {
+    private static final int NUM_SOUNDS = 40;
+
+    private String[] symbols;
+    private ShiftCounts counts;
+    private SoundGroupMatrix groups;
+
+    private int id(int sound) {
+        return sound + 1;
+    }
+
+    @Before
+    public void setUp() {
+        // symbol 0 is the gap, symbols 1..40 are the sounds s0..s39
+        symbols = new String[NUM_SOUNDS + 1];
+        symbols[0] = "-";
+        for (int sound = 0; sound < NUM_SOUNDS; sound++) {
+            symbols[id(sound)] = "s" + sound;
+        }
+        counts = new ShiftCounts(symbols);
+        for (int sound = 0; sound < NUM_SOUNDS; sound++) {
+            counts.add(id(sound), id(sound), 5.0 + sound % 3);
+            counts.add(id(sound), 0, 0.5 * (sound % 4));
+            // a chain of shifts to the next sound
+            counts.add(id(sound), id((sound + 1) % NUM_SOUNDS), 1.0);
+        }
+        // all shifts among s20..s24, so no other set of five sounds has as many shifts in group
+        for (int sound1 = 20; sound1 < 25; sound1++) {
+            for (int sound2 = 20; sound2 < 25; sound2++) {
+                if (sound1 != sound2) counts.add(id(sound1), id(sound2), 2.0);
+            }
+        }
+
+        Map<String, Set<String>> soundGroups = new LinkedHashMap<String, Set<String>>();
+        soundGroups.put("first", sounds(0, 6));
+        soundGroups.put("overlapping", sounds(4, 12));
+        soundGroups.put("cluster", sounds(20, 25));
+        soundGroups.put("singleton", sounds(30, 31));
+        groups = new SoundGroupMatrix(soundGroups, symbols);
+    }
+
+    private static Set<String> sounds(int from, int to) {
+        Set<String> sounds = new TreeSet<String>();
+        for (int sound = from; sound < to; sound++) {
+            sounds.add("s" + sound);
+        }
+        return sounds;
+    }
+
+    @Test
+    public void observedValuesMatchGroupScores() {
+        double[][] observed = new PermutationNullModel(groups, counts).observedValues();
+        double[][] scores = groups.score(counts);
+        for (int group = 0; group < groups.getNumGroups(); group++) {
+            double[] expected = SoundGroupMatrix.tableValues(scores[group]);
+            for (int column = 0; column < SoundGroupMatrix.NUM_SCORES; column++) {
+                assertEquals(expected[column], observed[group][column], 1E-12);
+            }
+        }
+    }
+
+    @Test
+    public void extremeGroupGetsMinimalPValue() {
+        int numPermutations = 199;
+        double[][][] results = new PermutationNullModel(groups, counts).test(numPermutations, 3L, 1);
+        int cluster = 2;
+        // the five sounds of the cluster are among 40 candidates, so with this seed no permutation recovers them
+        assertEquals(1.0 / (1 + numPermutations), results[cluster][SoundGroupMatrix.SHIFT_IN_GROUP][PermutationNullModel.P_HIGHER], 0.0);
+        assertEquals(1.0, results[cluster][SoundGroupMatrix.SHIFT_IN_GROUP][PermutationNullModel.P_LOWER], 0.0);
+        assertTrue(results[cluster][SoundGroupMatrix.SHIFT_IN_GROUP][PermutationNullModel.NULL_MEAN]
+                < new PermutationNullModel(groups, counts).observedValues()[cluster][SoundGroupMatrix.SHIFT_IN_GROUP]);
+    }
+
+    private static int[] groupSizes(SoundGroupMatrix groups, int numSymbols) {
+        int[] sizes = new int[groups.getNumGroups()];
+        for (int group = 0; group < sizes.length; group++) {
+            for (int symbol = 0; symbol < numSymbols; symbol++) {
+                if (groups.contains(group, symbol)) sizes[group]++;
+            }
+        }
+        return sizes;
+    }
+
+    private static int[][] overlaps(SoundGroupMatrix groups, int numSymbols) {
+        int[][] overlaps = new int[groups.getNumGroups()][groups.getNumGroups()];
+        for (int group1 = 0; group1 < overlaps.length; group1++) {
+            for (int group2 = 0; group2 < overlaps.length; group2++) {
+                for (int symbol = 0; symbol < numSymbols; symbol++) {
+                    if (groups.contains(group1, symbol) && groups.contains(group2, symbol)) overlaps[group1][group2]++;
+                }
+            }
+        }
+        return overlaps;
+    }
+
+    @Test
+    public void permutationsKeepGroupSizesAndOverlaps() {
+        PermutationNullModel nullModel = new PermutationNullModel(groups, counts);
+        int numSymbols = symbols.length;
+        int[] permutation = new int[numSymbols];
+        for (int symbol = 0; symbol < numSymbols; symbol++) {
+            permutation[symbol] = symbol;
+        }
+        SplittableRandom random = new SplittableRandom(11);
+        String[] groupNames = new String[groups.getNumGroups()];
+        for (int group = 0; group < groupNames.length; group++) {
+            groupNames[group] = groups.getGroupName(group);
+        }
+        for (int p = 0; p < 20; p++) {
+            nullModel.shuffle(permutation, random);
+            assertEquals(0, permutation[0]);
+            // every member s is replaced by permutation[s], i.e. the membership row of s moves to permutation[s]
+            long[][] permutedMembership = new long[numSymbols][];
+            for (int symbol = 0; symbol < numSymbols; symbol++) {
+                permutedMembership[permutation[symbol]] = groups.membership[symbol];
+            }
+            SoundGroupMatrix permuted = new SoundGroupMatrix(groupNames, permutedMembership, 0);
+            assertEquals(Arrays.toString(groupSizes(groups, numSymbols)), Arrays.toString(groupSizes(permuted, numSymbols)));
+            assertEquals(Arrays.deepToString(overlaps(groups, numSymbols)), Arrays.deepToString(overlaps(permuted, numSymbols)));
+
+            // the table values computed from the permutation are those of the permuted grouping
+            double[][] scores = permuted.score(counts);
+            double[] values = new double[SoundGroupMatrix.NUM_SCORES];
+            for (int group = 0; group < groupNames.length; group++) {
+                nullModel.tableValues(group, permutation, new int[numSymbols], values);
+                double[] expected = SoundGroupMatrix.tableValues(scores[group]);
+                for (int column = 0; column < SoundGroupMatrix.NUM_SCORES; column++) {
+                    assertEquals(expected[column], values[column], 1E-12);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void resultsDoNotDependOnThreadCount() {
+        double[][][] sequential = new PermutationNullModel(groups, counts).test(1000, 42L, 1);
+        double[][][] parallel = new PermutationNullModel(groups, counts).test(1000, 42L, 4);
+        assertTrue(Arrays.deepEquals(sequential, parallel));
+    }
+}
@@ -0,0 +1,80 @@
+package de.tuebingen.sfs.iconevol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import de.jdellert.iwsa.sequence.PhoneticSymbolTable;
+import de.tuebingen.sfs.util.IntDoubleMap;
+
+public class ProjectionModelInferenceTest {
+    private static void assertBitwiseEqual(IntDoubleMap expected, IntDoubleMap actual) {
+        if (expected == null) {
+            assertNull(actual);
+            return;
+        }
+        assertEquals(expected.size(), actual.size());
+        for (int key : expected.sortedKeys()) {
+            assertEquals(Double.doubleToLongBits(expected.get(key)), Double.doubleToLongBits(actual.get(key)));
+        }
+    }
+
+    @Test
+    public void countsDoNotDependOnThreadCount() {
+        PhoneticSymbolTable symTable = new PhoneticSymbolTable(Arrays.asList("a", "e", "i", "o", "k", "t", "s", "n"));
+        Map<String, String> langToFamily = new TreeMap<String, String>();
+        for (String lang : new String[] {"fin", "est", "krl", "hun"}) {
+            langToFamily.put(lang, "Uralic");
+        }
+        PipelineIndex index = new PipelineIndex(LanguagePairSelection.sameFamily(langToFamily), symTable);
+
+        // several blocks' worth of alignments with random information scores, whose sums depend on the summation order
+        Random random = new Random(17);
+        String[] symbols = {"a", "e", "i", "o", "k", "t", "s", "n", "-"};
+        int numAlignments = 3 * SoundGroupStabilityOutput.ALIGNMENTS_PER_BLOCK + 123;
+        List<AlignedFormPair> alignments = new ArrayList<AlignedFormPair>(numAlignments);
+        for (int n = 0; n < numAlignments; n++) {
+            int pair = random.nextInt(index.getNumPairs());
+            int length = 1 + random.nextInt(7);
+            int[] upperSymbols = new int[length];
+            int[] lowerSymbols = new int[length];
+            double[] infoScores = new double[length];
+            for (int i = 0; i < length; i++) {
+                upperSymbols[i] = symTable.toInt(symbols[random.nextInt(symbols.length)]);
+                lowerSymbols[i] = symTable.toInt(symbols[random.nextInt(symbols.length)]);
+                infoScores[i] = random.nextDouble();
+            }
+            alignments.add(new AlignedFormPair(pair, index.getLanguage(index.pairLang1[pair]), index.getLanguage(index.pairLang2[pair]),
+                    n, n, upperSymbols, lowerSymbols, infoScores));
+        }
+
+        FormProjectionModel[] sequential = SoundGroupStabilityOutput.inferProjectionModels(alignments, index, 1);
+        FormProjectionModel[] parallel = SoundGroupStabilityOutput.inferProjectionModels(alignments, index, 8);
+        assertEquals(sequential.length, parallel.length);
+        for (int pair = 0; pair < sequential.length; pair++) {
+            FormProjectionModel expected = sequential[pair];
+            FormProjectionModel actual = parallel[pair];
+            assertTrue(expected.totalSegmentCount > 0.0);
+            assertEquals(Double.doubleToLongBits(expected.totalSegmentCount), Double.doubleToLongBits(actual.totalSegmentCount));
+            assertTrue(Arrays.equals(expected.lang1SegmentCounts, actual.lang1SegmentCounts));
+            assertTrue(Arrays.equals(expected.lang2SegmentCounts, actual.lang2SegmentCounts));
+            for (int symbol = 0; symbol < expected.countForPair.length; symbol++) {
+                assertBitwiseEqual(expected.countForPair[symbol], actual.countForPair[symbol]);
+            }
+            assertEquals(expected.numGappyBigrams, actual.numGappyBigrams);
+            for (int i = 0; i < expected.numGappyBigrams; i++) {
+                assertEquals(expected.gappyBigramKeys[i], actual.gappyBigramKeys[i]);
+                assertBitwiseEqual(expected.countForGappyBigram[i], actual.countForGappyBigram[i]);
+            }
+        }
+    }
+}
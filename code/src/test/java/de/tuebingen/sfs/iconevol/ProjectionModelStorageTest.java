@@ -0,0 +1,169 @@
+package de.tuebingen.sfs.iconevol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.jdellert.iwsa.sequence.PhoneticSymbolTable;
+import de.tuebingen.sfs.util.IntDoubleMap;
+
+public class ProjectionModelStorageTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private PhoneticSymbolTable symTable;
+    private PipelineIndex index;
+    private List<AlignedFormPair> alignments;
+
+    @Before
+    public void setUp() {
+        symTable = new PhoneticSymbolTable(Arrays.asList("a", "e", "i", "k", "t", "s", "-"));
+        Map<String, String> langToFamily = new TreeMap<String, String>();
+        langToFamily.put("fin", "Uralic");
+        langToFamily.put("est", "Uralic");
+        langToFamily.put("hun", "Uralic");
+        index = new PipelineIndex(LanguagePairSelection.sameFamily(langToFamily), symTable);
+
+        // random alignments (with gaps and information scores) for all pairs
+        Random random = new Random(4);
+        String[] symbols = {"a", "e", "i", "k", "t", "s", "-"};
+        alignments = new ArrayList<AlignedFormPair>();
+        for (int pair = 0; pair < index.getNumPairs(); pair++) {
+            for (int n = 0; n < 50; n++) {
+                int length = 1 + random.nextInt(6);
+                int[] upperSymbols = new int[length];
+                int[] lowerSymbols = new int[length];
+                double[] infoScores = new double[length];
+                for (int i = 0; i < length; i++) {
+                    upperSymbols[i] = symTable.toInt(symbols[random.nextInt(symbols.length)]);
+                    lowerSymbols[i] = symTable.toInt(symbols[random.nextInt(symbols.length)]);
+                    infoScores[i] = random.nextDouble();
+                }
+                alignments.add(new AlignedFormPair(pair, index.getLanguage(index.pairLang1[pair]), index.getLanguage(index.pairLang2[pair]),
+                        n, n, upperSymbols, lowerSymbols, infoScores));
+            }
+        }
+    }
+
+    private static void assertSameCounts(IntDoubleMap expected, IntDoubleMap actual) {
+        if (expected == null) {
+            assertNull(actual);
+            return;
+        }
+        assertNotNull(actual);
+        assertEquals(expected.size(), actual.size());
+        for (int key : expected.sortedKeys()) {
+            assertEquals(expected.get(key), actual.get(key), 0.0);
+        }
+    }
+
+    @Test
+    public void snapshotRoundTripKeepsRawCounts() throws Exception {
+        FormProjectionModel[] models = SoundGroupStabilityOutput.inferProjectionModels(alignments, index, 1);
+        String fileName = new File(folder.getRoot(), "models.bin").getPath();
+        ProjectionModelStorage.writeToFile(index.modelMap(models), symTable, "fingerprint", fileName);
+        FormProjectionModel[] loaded = index.modelsByPair(ProjectionModelStorage.readFromFile(fileName, symTable, "fingerprint"));
+
+        assertEquals(models.length, loaded.length);
+        for (int pair = 0; pair < models.length; pair++) {
+            FormProjectionModel model = models[pair];
+            FormProjectionModel loadedModel = loaded[pair];
+            assertEquals(model.lang1, loadedModel.lang1);
+            assertEquals(model.lang2, loadedModel.lang2);
+            assertEquals(model.totalSegmentCount, loadedModel.totalSegmentCount, 0.0);
+            assertEquals(Arrays.toString(model.lang1SegmentCounts), Arrays.toString(loadedModel.lang1SegmentCounts));
+            assertEquals(Arrays.toString(model.lang2SegmentCounts), Arrays.toString(loadedModel.lang2SegmentCounts));
+            for (int symbol = 0; symbol < model.countForPair.length; symbol++) {
+                assertSameCounts(model.countForPair[symbol], loadedModel.countForPair[symbol]);
+            }
+            assertEquals(model.numGappyBigrams, loadedModel.numGappyBigrams);
+            for (int i = 0; i < model.numGappyBigrams; i++) {
+                assertSameCounts(model.countForGappyBigram[i], loadedModel.gappyBigramCountsFor(model.gappyBigramKeys[i]));
+            }
+            assertEquals(model.stabilityAt(2), loadedModel.stabilityAt(2), 0.0);
+        }
+    }
+
+    @Test
+    public void outdatedSnapshotIsNotLoaded() throws Exception {
+        FormProjectionModel[] models = SoundGroupStabilityOutput.inferProjectionModels(alignments, index, 1);
+        String fileName = new File(folder.getRoot(), "models.bin").getPath();
+        ProjectionModelStorage.writeToFile(index.modelMap(models), symTable, "old", fileName);
+        assertNull(ProjectionModelStorage.readFromFile(fileName, symTable, "new"));
+    }
+
+    @Test
+    public void truncatedSnapshotIsRejectedWithIOException() throws Exception {
+        FormProjectionModel[] models = SoundGroupStabilityOutput.inferProjectionModels(alignments, index, 1);
+        String fileName = new File(folder.getRoot(), "models.bin").getPath();
+        ProjectionModelStorage.writeToFile(index.modelMap(models), symTable, "fingerprint", fileName);
+        long length = new File(fileName).length();
+        // cut the file at several positions, including inside the header, the symbol table and the counts
+        for (long cut : new long[] {2, 10, 20, length / 3, length / 2, length - 1}) {
+            ProjectionModelStorage.writeToFile(index.modelMap(models), symTable, "fingerprint", fileName);
+            try (RandomAccessFile file = new RandomAccessFile(fileName, "rw")) {
+                file.setLength(cut);
+            }
+            try {
+                ProjectionModelStorage.readFromFile(fileName, symTable, "fingerprint");
+                fail("truncated snapshot (" + cut + " of " + length + " bytes) was accepted");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void corruptSymbolIndexIsRejectedWithIOException() throws Exception {
+        FormProjectionModel[] models = SoundGroupStabilityOutput.inferProjectionModels(alignments, index, 1);
+        String fileName = new File(folder.getRoot(), "models.bin").getPath();
+        ProjectionModelStorage.writeToFile(index.modelMap(models), symTable, "fingerprint", fileName);
+        // overwrite the tail of the file (sparse count rows) with large negative ints
+        long length = new File(fileName).length();
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "rw")) {
+            for (long pos = length / 2; pos + 4 <= length; pos += 4) {
+                file.seek(pos);
+                file.writeInt(-123456);
+            }
+        }
+        try {
+            ProjectionModelStorage.readFromFile(fileName, symTable, "fingerprint");
+            fail("corrupt snapshot was accepted");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void shiftCountsFromModelsMatchShiftCountsFromAlignments() {
+        FormProjectionModel[] models = SoundGroupStabilityOutput.inferProjectionModels(alignments, index, 1);
+        double[][] pairFactors = SoundGroupStabilityOutput.computePairFactors(models, index, new int[] {0, 3});
+        ShiftCounts[] fromAlignments = SoundGroupStabilityOutput.countShifts(alignments, pairFactors, symTable, null, null);
+        ShiftCounts[] fromModels = SoundGroupStabilityOutput.countShifts(models, pairFactors, symTable);
+        for (int t = 0; t < pairFactors.length; t++) {
+            for (int symbol1 = 0; symbol1 < symTable.getSize(); symbol1++) {
+                assertEquals(fromAlignments[t].weightedNumInstances[symbol1], fromModels[t].weightedNumInstances[symbol1], 1E-9);
+                for (int symbol2 = 0; symbol2 < symTable.getSize(); symbol2++) {
+                    assertEquals(fromAlignments[t].observed[symbol1][symbol2], fromModels[t].observed[symbol1][symbol2]);
+                    assertEquals(fromAlignments[t].weightedShiftCounts[symbol1][symbol2], fromModels[t].weightedShiftCounts[symbol1][symbol2], 1E-9);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package de.tuebingen.sfs.iconevol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.jdellert.iwsa.sequence.PhoneticSymbolTable;
+import de.tuebingen.sfs.util.Pair;
+
+public class ShiftCountStorageTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static ShiftCounts exampleCounts() {
+        PhoneticSymbolTable symTable = new PhoneticSymbolTable(Arrays.asList("a", "e", "ʃ", "-"));
+        ShiftCounts counts = new ShiftCounts(symTable);
+        for (int symbol1 = 0; symbol1 < counts.getSymbols().length; symbol1++) {
+            for (int symbol2 = 0; symbol2 < counts.getSymbols().length; symbol2++) {
+                if ((symbol1 + symbol2) % 3 == 0) counts.add(symbol1, symbol2, 1.0 / (1 + symbol1 + 7 * symbol2));
+            }
+        }
+        // observed with weight 0
+        counts.add(symTable.toInt("e"), symTable.toInt("ʃ"), 0.0);
+        return counts;
+    }
+
+    @Test
+    public void roundTripKeepsCountsExactly() throws Exception {
+        Pair<Map<String, Double>, Map<String, Map<String, Double>>> symbolCounts = exampleCounts().toSymbolMaps();
+        String fileName = new File(folder.getRoot(), "shifts.tsv").getPath();
+        ShiftCountStorage.writeToFile(symbolCounts.first, symbolCounts.second, "fingerprint", fileName);
+        Pair<Map<String, Double>, Map<String, Map<String, Double>>> loaded = ShiftCountStorage.readFromFile(fileName, "fingerprint");
+        assertEquals(symbolCounts.first, loaded.first);
+        assertEquals(symbolCounts.second, loaded.second);
+        assertEquals(0.0, loaded.second.get("e").get("ʃ"), 0.0);
+
+        // the dense counts rebuilt from the file give the same symbol maps
+        Pair<Map<String, Double>, Map<String, Map<String, Double>>> rebuilt = ShiftCounts.fromSymbolMaps(loaded.first, loaded.second).toSymbolMaps();
+        assertEquals(symbolCounts.first, rebuilt.first);
+        assertEquals(symbolCounts.second, rebuilt.second);
+    }
+
+    @Test
+    public void countsWithAnotherFingerprintAreNotLoaded() throws Exception {
+        Pair<Map<String, Double>, Map<String, Map<String, Double>>> symbolCounts = exampleCounts().toSymbolMaps();
+        String fileName = new File(folder.getRoot(), "shifts.tsv").getPath();
+        ShiftCountStorage.writeToFile(symbolCounts.first, symbolCounts.second, "old", fileName);
+        assertNull(ShiftCountStorage.readFromFile(fileName, "new"));
+        assertNull(ShiftCountStorage.readFromFile(new File(folder.getRoot(), "missing.tsv").getPath(), "old"));
+    }
+}
@@ -0,0 +1,122 @@
+package de.tuebingen.sfs.iconevol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuebingen.sfs.util.Pair;
+
+public class SoundGroupMatrixTest {
+    private static final String[] SYMBOLS = {"-", "a", "e", "i", "k", "t", "o"};
+
+    private ShiftCounts counts;
+    private Map<String, Set<String>> soundGroups;
+
+    @Before
+    public void setUp() {
+        counts = new ShiftCounts(SYMBOLS);
+        double[][] weights = {
+                // to:  -     a     e     i     k     t     o
+                {0.0, 0.5, 0.0, 0.25, 0.0, 0.0, 0.0},  // -
+                {1.5, 10.0, 2.0, 0.5, 0.0, 0.25, 1.0}, // a
+                {0.0, 1.0, 8.0, 3.0, 0.5, 0.0, 0.0},   // e
+                {0.75, 0.0, 2.5, 6.0, 0.0, 0.0, 0.5},  // i
+                {0.25, 0.0, 0.0, 0.0, 12.0, 4.0, 0.0}, // k
+                {2.0, 0.125, 0.0, 0.0, 3.0, 9.0, 0.0}, // t
+                {0.0, 0.5, 0.0, 0.0, 0.0, 0.0, 5.0},   // o
+        };
+        for (int symbol1 = 0; symbol1 < SYMBOLS.length; symbol1++) {
+            for (int symbol2 = 0; symbol2 < SYMBOLS.length; symbol2++) {
+                if (weights[symbol1][symbol2] > 0.0) counts.add(symbol1, symbol2, weights[symbol1][symbol2]);
+            }
+        }
+        // overlapping groups; "o" is in no group, "x" does not occur in the counts
+        soundGroups = new LinkedHashMap<String, Set<String>>();
+        soundGroups.put("vowels", new TreeSet<String>(Arrays.asList("a", "e", "i")));
+        soundGroups.put("front", new TreeSet<String>(Arrays.asList("e", "i", "k")));
+        soundGroups.put("plosives", new TreeSet<String>(Arrays.asList("k", "t", "x")));
+        soundGroups.put("singleton", new TreeSet<String>(Arrays.asList("t")));
+    }
+
+    /**
+     * The group aggregation over symbol-keyed maps as it was done before SoundGroupMatrix.
+     */
+    private static double[] baselineTableValues(Set<String> soundGroup, Map<String, Double> weightedNumInstances,
+                                                Map<String, Map<String, Double>> weightedShiftCounts) {
+        double weightedNumAlignments = 0.0;
+        double weightedCountStable = 0.0;
+        double weightedCountShiftInGroup = 0.0;
+        double weightedCountShiftOutOfGroup = 0.0;
+        double weightedCountLossOrGain = 0.0;
+        for (String sound : soundGroup) {
+            Double numInstances = weightedNumInstances.get(sound);
+            if (numInstances == null) continue;
+            weightedNumAlignments += numInstances;
+            for (String sound2 : weightedShiftCounts.get(sound).keySet()) {
+                double weightedCount = weightedShiftCounts.get(sound).get(sound2);
+                if (sound2.equals(sound)) {
+                    weightedCountStable += weightedCount;
+                } else if (sound2.equals("-")) {
+                    weightedCountLossOrGain += weightedCount;
+                } else if (soundGroup.contains(sound2)) {
+                    weightedCountShiftInGroup += weightedCount;
+                } else {
+                    weightedCountShiftOutOfGroup += weightedCount;
+                }
+            }
+        }
+        return new double[] {weightedNumAlignments, weightedCountStable / weightedNumAlignments,
+                weightedCountShiftInGroup / weightedNumAlignments, weightedCountShiftOutOfGroup / weightedNumAlignments,
+                weightedCountLossOrGain / weightedNumAlignments};
+    }
+
+    @Test
+    public void scoresMatchBaselineAggregation() {
+        Pair<Map<String, Double>, Map<String, Map<String, Double>>> symbolMaps = counts.toSymbolMaps();
+        Map<String, Double> weightedNumInstances = symbolMaps.first;
+        Map<String, Map<String, Double>> weightedShiftCounts = symbolMaps.second;
+        SoundGroupMatrix matrix = new SoundGroupMatrix(soundGroups, counts.getSymbols());
+        double[][] scores = matrix.score(counts);
+        assertEquals(soundGroups.size(), matrix.getNumGroups());
+        for (int group = 0; group < matrix.getNumGroups(); group++) {
+            String groupName = matrix.getGroupName(group);
+            double[] expected = baselineTableValues(soundGroups.get(groupName), weightedNumInstances, weightedShiftCounts);
+            double[] actual = SoundGroupMatrix.tableValues(scores[group]);
+            for (int column = 0; column < SoundGroupMatrix.NUM_SCORES; column++) {
+                assertEquals(groupName + ", column " + column, expected[column], actual[column], 1E-12);
+            }
+        }
+    }
+
+    @Test
+    public void membershipOfOverlappingGroups() {
+        SoundGroupMatrix matrix = new SoundGroupMatrix(soundGroups, counts.getSymbols());
+        int e = Arrays.asList(SYMBOLS).indexOf("e");
+        int k = Arrays.asList(SYMBOLS).indexOf("k");
+        assertTrue(matrix.contains(0, e));
+        assertTrue(matrix.contains(1, e));
+        assertFalse(matrix.contains(2, e));
+        assertTrue(matrix.contains(1, k));
+        assertTrue(matrix.contains(2, k));
+    }
+
+    @Test
+    public void symbolInNoGroupIsNotContained() {
+        SoundGroupMatrix matrix = new SoundGroupMatrix(soundGroups, counts.getSymbols());
+        int o = Arrays.asList(SYMBOLS).indexOf("o");
+        int gap = Arrays.asList(SYMBOLS).indexOf("-");
+        for (int group = 0; group < matrix.getNumGroups(); group++) {
+            assertFalse(matrix.contains(group, o));
+            assertFalse(matrix.contains(group, gap));
+        }
+    }
+}
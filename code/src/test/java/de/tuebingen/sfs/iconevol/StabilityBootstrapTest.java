@@ -0,0 +1,129 @@
+package de.tuebingen.sfs.iconevol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.jdellert.iwsa.sequence.PhoneticSymbolTable;
+
+public class StabilityBootstrapTest {
+    private static final String[] SOUNDS = {"a", "e", "i", "k", "t", "s"};
+
+    private PhoneticSymbolTable symTable;
+    private String[] symbols;
+    private SoundGroupMatrix groups;
+
+    @Before
+    public void setUp() {
+        symTable = new PhoneticSymbolTable(Arrays.asList(SOUNDS));
+        symbols = new ShiftCounts(symTable).getSymbols();
+        Map<String, Set<String>> soundGroups = new LinkedHashMap<String, Set<String>>();
+        soundGroups.put("vowels", new TreeSet<String>(Arrays.asList("a", "e", "i")));
+        soundGroups.put("front", new TreeSet<String>(Arrays.asList("e", "i", "k")));
+        soundGroups.put("obstruents", new TreeSet<String>(Arrays.asList("k", "t", "s")));
+        groups = new SoundGroupMatrix(soundGroups, symbols);
+    }
+
+    /**
+     * Random alignments for two language pairs, spread over numSets cognate sets.
+     */
+    private List<AlignedFormPair> alignments(int numSets, long seed) {
+        Random random = new Random(seed);
+        String[] alignedSymbols = {"a", "e", "i", "k", "t", "s", "-"};
+        List<AlignedFormPair> alignments = new ArrayList<AlignedFormPair>();
+        for (int set = 0; set < numSets; set++) {
+            for (int pair = 0; pair < 2; pair++) {
+                int length = 2 + random.nextInt(5);
+                int[] upperSymbols = new int[length];
+                int[] lowerSymbols = new int[length];
+                double[] infoScores = new double[length];
+                for (int i = 0; i < length; i++) {
+                    upperSymbols[i] = symTable.toInt(alignedSymbols[random.nextInt(alignedSymbols.length)]);
+                    lowerSymbols[i] = (random.nextDouble() < 0.5) ? upperSymbols[i] : symTable.toInt(alignedSymbols[random.nextInt(alignedSymbols.length)]);
+                    infoScores[i] = random.nextDouble();
+                }
+                AlignedFormPair alignment = new AlignedFormPair(pair, "l" + pair, "l" + (1 - pair), 2 * set, 2 * set + 1, upperSymbols, lowerSymbols, infoScores);
+                alignment.cognateSet = set;
+                alignments.add(alignment);
+            }
+        }
+        return alignments;
+    }
+
+    @Test
+    public void replicatesDoNotDependOnThreadCount() {
+        StabilityBootstrap bootstrap = new StabilityBootstrap(alignments(50, 1L), 50, new double[] {1.0, 0.5}, symbols);
+        double[][][] sequential = bootstrap.replicate(groups, 100, 9L, 1);
+        double[][][] parallel = bootstrap.replicate(groups, 100, 9L, 4);
+        assertEquals(100, sequential.length);
+        assertTrue(Arrays.deepEquals(sequential, parallel));
+    }
+
+    @Test
+    public void percentileIntervalsOfKnownValues() {
+        // 101 replicates with the values 0, 1, ..., 100 in shuffled order, and one replicate with an undefined value
+        List<Integer> order = new ArrayList<Integer>();
+        for (int value = 0; value <= 100; value++) {
+            order.add(value);
+        }
+        Collections.shuffle(order, new Random(5));
+        double[][][] replicates = new double[102][1][SoundGroupMatrix.NUM_SCORES];
+        for (int r = 0; r < 101; r++) {
+            Arrays.fill(replicates[r][0], order.get(r));
+        }
+        Arrays.fill(replicates[101][0], Double.NaN);
+
+        double[][][] intervals = StabilityBootstrap.percentileIntervals(replicates, 0.9);
+        for (int column = 0; column < SoundGroupMatrix.NUM_SCORES; column++) {
+            assertEquals(5.0, intervals[0][column][0], 1E-12);
+            assertEquals(95.0, intervals[0][column][1], 1E-12);
+        }
+        intervals = StabilityBootstrap.percentileIntervals(replicates, 0.95);
+        assertEquals(2.5, intervals[0][SoundGroupMatrix.STABLE][0], 1E-12);
+        assertEquals(97.5, intervals[0][SoundGroupMatrix.STABLE][1], 1E-12);
+    }
+
+    @Test
+    public void percentileInterpolatesBetweenRanks() {
+        double[] sortedValues = {1.0, 2.0, 4.0, 8.0};
+        assertEquals(1.0, StabilityBootstrap.percentile(sortedValues, 4, 0.0), 0.0);
+        assertEquals(8.0, StabilityBootstrap.percentile(sortedValues, 4, 1.0), 0.0);
+        assertEquals(3.0, StabilityBootstrap.percentile(sortedValues, 4, 0.5), 1E-12);
+        assertEquals(2.0, StabilityBootstrap.percentile(sortedValues, 2, 1.0), 0.0);
+        assertTrue(Double.isNaN(StabilityBootstrap.percentile(sortedValues, 0, 0.5)));
+    }
+
+    @Test
+    public void singleSetIntervalsContainPointEstimate() {
+        List<AlignedFormPair> alignments = alignments(1, 2L);
+        double[][] pairFactors = {{1.0, 0.5}};
+        StabilityBootstrap bootstrap = new StabilityBootstrap(alignments, 1, pairFactors[0], symbols);
+        double[][][] intervals = StabilityBootstrap.percentileIntervals(bootstrap.replicate(groups, 20, 3L, 2), 0.95);
+
+        ShiftCounts counts = SoundGroupStabilityOutput.countShifts(alignments, pairFactors, symTable, null, null)[0];
+        double[][] scores = groups.score(counts);
+        for (int group = 0; group < groups.getNumGroups(); group++) {
+            double[] pointEstimate = SoundGroupMatrix.tableValues(scores[group]);
+            for (int column = 0; column < SoundGroupMatrix.NUM_SCORES; column++) {
+                if (Double.isNaN(pointEstimate[column])) continue;
+                assertTrue(intervals[group][column][0] <= pointEstimate[column] + 1E-12);
+                assertTrue(intervals[group][column][1] >= pointEstimate[column] - 1E-12);
+                // every replicate resamples the only set, so the interval collapses to the point estimate
+                assertEquals(pointEstimate[column], intervals[group][column][0], 1E-12);
+                assertEquals(pointEstimate[column], intervals[group][column][1], 1E-12);
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package de.tuebingen.sfs.iconevol;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StabilityRunConfigTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static StabilityRunConfig parse(String... args) {
+        return StabilityRunConfig.parse(args, new StabilityRunConfig());
+    }
+
+    @Test
+    public void singleThresholdCanBeWrittenToStandardOutput() {
+        StabilityRunConfig config = parse("--count-threshold", "3", "--format", "json");
+        assertArrayEquals(new int[] {3}, config.countThresholds);
+        assertNull(config.getOutputPath(3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void severalThresholdsRequireOutput() {
+        parse("--count-threshold", "3,5", "--format", "json");
+    }
+
+    @Test
+    public void severalThresholdsGetOneFileEach() {
+        StabilityRunConfig config = parse("--count-threshold", "3,5", "--output", "results.json", "--format", "json");
+        assertEquals("results.threshold3.json", config.getOutputPath(3));
+        assertEquals("results.threshold5.json", config.getOutputPath(5));
+    }
+
+    @Test
+    public void sweepLinesAreCheckedSeparately() throws Exception {
+        // the thresholds of the command line are only a default, the output is given per line
+        File sweepFile = folder.newFile("sweep.txt");
+        Files.write(sweepFile.toPath(), "--output a.tsv\n--count-threshold 2\n".getBytes(StandardCharsets.UTF_8));
+        StabilityRunConfig base = parse("--count-threshold", "3,5", "--sweep", sweepFile.getPath());
+        assertEquals(2, StabilityRunConfig.parseSweep(sweepFile.getPath(), base).size());
+
+        Files.write(sweepFile.toPath(), "--output a.tsv\n--sound-groups other.tsv\n".getBytes(StandardCharsets.UTF_8));
+        try {
+            StabilityRunConfig.parseSweep(sweepFile.getPath(), base);
+            fail("the second line writes several thresholds to standard output");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().startsWith("Line 2 of "));
+        }
+    }
+}
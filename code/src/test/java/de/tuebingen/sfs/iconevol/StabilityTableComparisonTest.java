@@ -0,0 +1,49 @@
+package de.tuebingen.sfs.iconevol;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class StabilityTableComparisonTest {
+    private static List<String[]> table(String... lines) {
+        List<String[]> table = new ArrayList<String[]>();
+        for (String line : lines) {
+            table.add(line.split("\t"));
+        }
+        return table;
+    }
+
+    private static final String HEADER = "Group\tStable\tShiftInGroup\tShiftOutOfGroup\tLossOrGain";
+
+    @Test
+    public void identicalTablesMatch() {
+        List<String[]> expected = table(HEADER, "V\t0.5\t0.25\t0.125\t0.125");
+        assertEquals(0, StabilityTableComparison.compareTables(expected, table(HEADER, "V\t0.5\t0.25\t0.125\t0.125"), 0.0));
+    }
+
+    @Test
+    public void differencesWithinToleranceAreAccepted() {
+        List<String[]> expected = table(HEADER, "V\t0.5\t0.25\t0.125\t0.125");
+        List<String[]> actual = table(HEADER, "V\t0.5000000000001\t0.25\t0.1249999999999\t0.125");
+        assertEquals(0, StabilityTableComparison.compareTables(expected, actual, StabilityTableComparison.DEFAULT_TOLERANCE));
+    }
+
+    @Test
+    public void differencesAboveToleranceAreFlagged() {
+        List<String[]> expected = table(HEADER, "V\t0.5\t0.25\t0.125\t0.125", "K\t0.75\t0.0\t0.25\t0.0");
+        List<String[]> actual = table(HEADER, "V\t0.5001\t0.25\t0.125\t0.125", "K\t0.75\t0.0\t0.2\t0.0");
+        assertEquals(2, StabilityTableComparison.compareTables(expected, actual, StabilityTableComparison.DEFAULT_TOLERANCE));
+        assertEquals(1, StabilityTableComparison.compareTables(expected, actual, 1E-3));
+    }
+
+    @Test
+    public void nonNumericAndShapeDifferencesAreFlagged() {
+        List<String[]> expected = table(HEADER, "V\t0.5\t0.25\t0.125\t0.125");
+        assertEquals(1, StabilityTableComparison.compareTables(expected, table(HEADER, "W\t0.5\t0.25\t0.125\t0.125"), 1.0));
+        assertEquals(1, StabilityTableComparison.compareTables(expected, table(HEADER, "V\t0.5\t0.25\t0.125"), 1.0));
+        assertEquals(1, StabilityTableComparison.compareTables(expected, table(HEADER), 1.0));
+    }
+}
@@ -0,0 +1,93 @@
+package de.tuebingen.sfs.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+public class AliasTableTest {
+    private static final int NUM_SAMPLES = 1000000;
+
+    /**
+     * Checks that the relative frequency of each outcome is within 5 standard errors of its probability.
+     */
+    private static void assertSamplesMatch(AliasTable table, int[] outcomes, double[] weights, int maxOutcome) {
+        double totalWeight = 0.0;
+        for (double weight : weights) totalWeight += weight;
+        int[] frequencies = new int[maxOutcome + 1];
+        SplittableRandom random = new SplittableRandom(7);
+        for (int i = 0; i < NUM_SAMPLES; i++) {
+            frequencies[table.sample(random)]++;
+        }
+        int numExpected = 0;
+        for (int i = 0; i < outcomes.length; i++) {
+            double p = weights[i] / totalWeight;
+            double standardError = Math.sqrt(p * (1 - p) / NUM_SAMPLES);
+            assertEquals("outcome " + outcomes[i], p, (double) frequencies[outcomes[i]] / NUM_SAMPLES, 5 * standardError + 1E-9);
+            numExpected += frequencies[outcomes[i]];
+        }
+        assertEquals("only outcomes with positive weight are sampled", NUM_SAMPLES, numExpected);
+    }
+
+    @Test
+    public void frequenciesMatchSkewedDistribution() {
+        int[] outcomes = {3, 8, 1, 12, 5};
+        double[] weights = {100.0, 0.5, 7.25, 30.0, 1.0};
+        assertSamplesMatch(new AliasTable(outcomes, weights), outcomes, weights, 12);
+    }
+
+    @Test
+    public void frequenciesMatchUniformDistribution() {
+        int[] outcomes = {0, 1, 2, 3, 4, 5, 6};
+        double[] weights = {2.0, 2.0, 2.0, 2.0, 2.0, 2.0, 2.0};
+        assertSamplesMatch(new AliasTable(outcomes, weights), outcomes, weights, 6);
+    }
+
+    @Test
+    public void singleOutcomeIsAlwaysSampled() {
+        AliasTable table = new AliasTable(new int[] {4}, new double[] {0.3});
+        SplittableRandom random = new SplittableRandom(1);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(4, table.sample(random));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsDistributionWithoutPositiveWeights() {
+        new AliasTable(new int[] {1, 2}, new double[] {0.0, 0.0});
+    }
+
+    @Test
+    public void fromCountsSkipsZeroAndSmallCounts() {
+        IntDoubleMap counts = new IntDoubleMap();
+        counts.put(2, 10.0);
+        counts.put(5, 0.0);
+        counts.put(9, 2.0);
+        counts.put(11, 30.0);
+        AliasTable all = AliasTable.fromCounts(counts);
+        assertEquals(3, all.size());
+        assertSamplesMatch(all, new int[] {2, 9, 11}, new double[] {10.0, 2.0, 30.0}, 11);
+
+        AliasTable thresholded = AliasTable.fromCounts(counts, 5.0);
+        assertEquals(2, thresholded.size());
+        assertSamplesMatch(thresholded, new int[] {2, 11}, new double[] {10.0, 30.0}, 11);
+        // the counts themselves are not modified by the threshold
+        assertEquals(2.0, counts.get(9), 0.0);
+
+        assertNull(AliasTable.fromCounts(counts, 100.0));
+        assertNull(AliasTable.fromCounts(new IntDoubleMap()));
+    }
+
+    @Test
+    public void fromCountArrayUsesIndicesAsOutcomes() {
+        double[] counts = {0.0, 3.0, 0.0, 1.0};
+        AliasTable table = AliasTable.fromCounts(counts);
+        assertNotNull(table);
+        assertEquals(2, table.size());
+        assertSamplesMatch(table, new int[] {1, 3}, new double[] {3.0, 1.0}, 3);
+        assertNull(AliasTable.fromCounts(new double[3]));
+    }
+}
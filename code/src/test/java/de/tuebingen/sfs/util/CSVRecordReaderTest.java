@@ -0,0 +1,109 @@
+package de.tuebingen.sfs.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class CSVRecordReaderTest {
+
+    private static List<String[]> readAll(Reader in) throws IOException {
+        List<String[]> records = new ArrayList<String[]>();
+        try (CSVRecordReader reader = new CSVRecordReader(in)) {
+            String[] record;
+            while ((record = reader.readRecord()) != null) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    private static List<String[]> readAll(String content) throws IOException {
+        return readAll(new StringReader(content));
+    }
+
+    // delivers one character per read, so that every character is at a buffer boundary
+    private static class OneCharReader extends FilterReader {
+        OneCharReader(Reader in) {
+            super(in);
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            return super.read(buffer, offset, Math.min(1, length));
+        }
+    }
+
+    @Test
+    public void plainRecords() throws IOException {
+        List<String[]> records = readAll("ID,Form,Segments\n1,kala,k a l a\n2,,\n");
+        assertEquals(3, records.size());
+        assertArrayEquals(new String[] {"ID", "Form", "Segments"}, records.get(0));
+        assertArrayEquals(new String[] {"1", "kala", "k a l a"}, records.get(1));
+        assertArrayEquals(new String[] {"2", "", ""}, records.get(2));
+    }
+
+    @Test
+    public void quotedFieldsWithSeparatorsQuotesAndLineBreaks() throws IOException {
+        List<String[]> records = readAll("1,\"a, b\",\"say \"\"hi\"\"\"\n2,\"two\nlines\",\"\"\n3,x\"y,\"crlf\r\ninside\"");
+        assertEquals(3, records.size());
+        assertArrayEquals(new String[] {"1", "a, b", "say \"hi\""}, records.get(0));
+        assertArrayEquals(new String[] {"2", "two\nlines", ""}, records.get(1));
+        // a quote inside an unquoted field is kept as it is
+        assertArrayEquals(new String[] {"3", "x\"y", "crlf\r\ninside"}, records.get(2));
+    }
+
+    @Test
+    public void crlfAndCrLineEndings() throws IOException {
+        String content = "a,b\r\nc,d\re,f\r\n\r\ng,h";
+        assertLineEndingRecords(readAll(content));
+        assertLineEndingRecords(readAll(new OneCharReader(new StringReader(content))));
+    }
+
+    private static void assertLineEndingRecords(List<String[]> records) {
+        assertEquals(4, records.size());
+        assertArrayEquals(new String[] {"a", "b"}, records.get(0));
+        assertArrayEquals(new String[] {"c", "d"}, records.get(1));
+        assertArrayEquals(new String[] {"e", "f"}, records.get(2));
+        assertArrayEquals(new String[] {"g", "h"}, records.get(3));
+    }
+
+    @Test
+    public void byteOrderMarkIsSkipped() throws IOException {
+        byte[] bytes = "\uFEFFID,Form\n1,\uFEFFkala\n".getBytes(StandardCharsets.UTF_8);
+        List<String[]> records = readAll(new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8));
+        assertArrayEquals(new String[] {"ID", "Form"}, records.get(0));
+        // only a mark at the beginning of the file is removed
+        assertArrayEquals(new String[] {"1", "\uFEFFkala"}, records.get(1));
+
+        records = readAll("\uFEFF\"ID\",Form\n");
+        assertArrayEquals(new String[] {"ID", "Form"}, records.get(0));
+    }
+
+    @Test
+    public void iteratorAndCustomSeparator() throws IOException {
+        try (CSVRecordReader reader = new CSVRecordReader(new StringReader("a\tb,c\n\"d\te\"\tf\n"), '\t')) {
+            assertArrayEquals(new String[] {"a", "b,c"}, reader.next());
+            assertArrayEquals(new String[] {"d\te", "f"}, reader.next());
+            assertFalse(reader.hasNext());
+            assertNull(reader.readRecord());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void unterminatedQuoteIsAnError() throws IOException {
+        readAll("1,\"open\n2,b\n");
+    }
+}
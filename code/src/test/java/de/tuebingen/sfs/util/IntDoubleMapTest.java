@@ -0,0 +1,123 @@
+package de.tuebingen.sfs.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class IntDoubleMapTest {
+
+    @Test
+    public void absentKeysAreZero() {
+        IntDoubleMap map = new IntDoubleMap();
+        assertEquals(0.0, map.get(42), 0.0);
+        assertFalse(map.containsKey(42));
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    public void putOverwritesAndAddAccumulates() {
+        IntDoubleMap map = new IntDoubleMap();
+        map.put(3, 1.5);
+        map.put(3, 2.5);
+        map.add(7, 1.0);
+        map.add(7, 0.25);
+        assertEquals(2.5, map.get(3), 0.0);
+        assertEquals(1.25, map.get(7), 0.0);
+        assertEquals(2, map.size());
+        assertEquals(3.75, map.sum(), 1E-12);
+    }
+
+    @Test
+    public void resizeKeepsAllEntries() {
+        IntDoubleMap map = new IntDoubleMap(1);
+        int initialCapacity = map.capacity();
+        for (int key = 0; key < 1000; key++) {
+            map.add(key, key + 0.5);
+        }
+        assertTrue(map.capacity() > initialCapacity);
+        assertTrue(map.size() * 2 <= map.capacity());
+        assertEquals(1000, map.size());
+        for (int key = 0; key < 1000; key++) {
+            assertEquals(key + 0.5, map.get(key), 0.0);
+        }
+    }
+
+    @Test
+    public void collidingKeysAreKeptApart() {
+        // three keys with the same home slot in the initial table, which are stored by linear probing
+        IntDoubleMap map = new IntDoubleMap();
+        int capacity = map.capacity();
+        int[] keys = new int[3];
+        int numKeys = 0;
+        for (int key = 0; numKeys < keys.length; key++) {
+            if (homeSlot(key, capacity) == homeSlot(0, capacity)) keys[numKeys++] = key;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            map.put(keys[i], i + 1.0);
+        }
+        assertEquals(capacity, map.capacity());
+        assertEquals(3, map.size());
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(i + 1.0, map.get(keys[i]), 0.0);
+            assertTrue(map.containsKey(keys[i]));
+        }
+        map.add(keys[1], 1.0);
+        assertEquals(3.0, map.get(keys[1]), 0.0);
+        assertEquals(3, map.size());
+    }
+
+    // the hash function of IntDoubleMap
+    private static int homeSlot(int key, int capacity) {
+        int hash = key * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & (capacity - 1);
+    }
+
+    @Test
+    public void matchesHashMapOnRandomOperations() {
+        Random random = new Random(1);
+        IntDoubleMap map = new IntDoubleMap();
+        Map<Integer, Double> reference = new HashMap<Integer, Double>();
+        for (int i = 0; i < 20000; i++) {
+            int key = random.nextInt(3000);
+            double value = random.nextDouble();
+            if (random.nextBoolean()) {
+                map.put(key, value);
+                reference.put(key, value);
+            } else {
+                map.add(key, value);
+                reference.merge(key, value, Double::sum);
+            }
+        }
+        assertEquals(reference.size(), map.size());
+        for (Map.Entry<Integer, Double> entry : reference.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()), 1E-12);
+        }
+    }
+
+    @Test
+    public void slotEnumerationAndSortedKeysCoverAllEntries() {
+        IntDoubleMap map = new IntDoubleMap();
+        int[] keys = {17, 0, 5, 1023, 64, 9};
+        for (int key : keys) {
+            map.put(key, key);
+        }
+        int numEnumerated = 0;
+        for (int slot = 0; slot < map.capacity(); slot++) {
+            if (map.keyAt(slot) == -1) continue;
+            assertEquals(map.keyAt(slot), map.valueAt(slot), 0.0);
+            numEnumerated++;
+        }
+        assertEquals(keys.length, numEnumerated);
+        int[] sorted = keys.clone();
+        Arrays.sort(sorted);
+        assertArrayEquals(sorted, map.sortedKeys());
+    }
+}
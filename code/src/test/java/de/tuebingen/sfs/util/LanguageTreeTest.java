@@ -0,0 +1,149 @@
+package de.tuebingen.sfs.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LanguageTreeTest {
+    private static final List<String> LANGUAGES = Arrays.asList("fin", "est", "liv", "hun", "mns", "deu", "nld", "swe", "dan", "eus");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private LanguageTree tree;
+
+    @Before
+    public void setUp() throws Exception {
+        File nwkFile = folder.newFile("tree.nwk");
+        try (PrintWriter out = new PrintWriter(nwkFile, "UTF-8")) {
+            out.println("(((fin:1,est:1)Finnic:1,liv:2)Finnic2:1,(hun:2,mns:2)Ugric:1)Uralic;");
+            out.println("((deu,nld)WestGermanic,(swe,dan)NorthGermanic)Germanic;");
+            out.println("eus;");
+        }
+        tree = LanguageTree.fromNewickFile(nwkFile.getPath());
+    }
+
+    /**
+     * The path to the root by walking up the parent map, as pathFromRoot was implemented before the index.
+     */
+    private List<String> walkToRoot(String lang) {
+        LinkedList<String> path = new LinkedList<String>();
+        while (tree.parents.get(lang) != null && !lang.equals("ROOT")) {
+            lang = tree.parents.get(lang);
+            path.add(lang);
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    @Test
+    public void pathFromRootMatchesParentWalk() {
+        for (String lang : LANGUAGES) {
+            assertEquals(lang, walkToRoot(lang), tree.pathFromRoot(lang));
+            assertEquals(lang, walkToRoot(lang).size(), tree.getDepth(lang));
+        }
+    }
+
+    @Test
+    public void familyMatchesSecondNodeOfPath() {
+        for (String lang : LANGUAGES) {
+            List<String> path = walkToRoot(lang);
+            String expectedFamily = (path.size() == 1) ? lang : path.get(1);
+            assertEquals(lang, expectedFamily, tree.getFamily(lang));
+        }
+        assertEquals("Uralic", tree.getFamily("liv"));
+        assertEquals("Germanic", tree.getFamily("dan"));
+        assertEquals("eus", tree.getFamily("eus"));
+        assertEquals("xyz", tree.getFamily("xyz"));
+    }
+
+    @Test
+    public void siblings() {
+        assertEquals("Finnic", tree.lowestCommonAncestor("fin", "est"));
+        assertEquals(3, tree.getLCADepth("fin", "est"));
+        assertEquals(2, tree.getTreeDistance("fin", "est"));
+        assertEquals(2, tree.getTreeDistance("est", "fin"));
+        assertEquals("WestGermanic", tree.lowestCommonAncestor("deu", "nld"));
+        assertEquals(2, tree.getLCADepth("deu", "nld"));
+        assertEquals(2, tree.getTreeDistance("deu", "nld"));
+    }
+
+    @Test
+    public void cousins() {
+        assertEquals("Finnic2", tree.lowestCommonAncestor("fin", "liv"));
+        assertEquals(2, tree.getLCADepth("fin", "liv"));
+        assertEquals(3, tree.getTreeDistance("fin", "liv"));
+        assertEquals("Uralic", tree.lowestCommonAncestor("est", "mns"));
+        assertEquals(1, tree.getLCADepth("est", "mns"));
+        assertEquals(5, tree.getTreeDistance("est", "mns"));
+        assertEquals(5, tree.getTreeDistance("mns", "est"));
+        assertEquals("Germanic", tree.lowestCommonAncestor("nld", "swe"));
+        assertEquals(4, tree.getTreeDistance("nld", "swe"));
+    }
+
+    @Test
+    public void differentFamilies() {
+        assertEquals("ROOT", tree.lowestCommonAncestor("fin", "deu"));
+        assertEquals(0, tree.getLCADepth("fin", "deu"));
+        assertEquals(7, tree.getTreeDistance("fin", "deu"));
+        assertEquals(0, tree.getLCADepth("dan", "eus"));
+        assertEquals(4, tree.getTreeDistance("eus", "dan"));
+        // every pair of languages from different families meets at the root
+        for (String lang1 : LANGUAGES) {
+            for (String lang2 : LANGUAGES) {
+                boolean sameFamily = tree.getFamily(lang1).equals(tree.getFamily(lang2));
+                assertEquals(lang1 + "/" + lang2, sameFamily, tree.getLCADepth(lang1, lang2) >= 1);
+                assertEquals(tree.getTreeDistance(lang1, lang2), tree.getTreeDistance(lang2, lang1));
+            }
+        }
+    }
+
+    @Test
+    public void sameNode() {
+        assertEquals("fin", tree.lowestCommonAncestor("fin", "fin"));
+        assertEquals(0, tree.getTreeDistance("fin", "fin"));
+        assertEquals(tree.getDepth("Ugric"), tree.getLCADepth("Ugric", "Ugric"));
+    }
+
+    @Test
+    public void unknownNodes() {
+        assertNull(tree.lowestCommonAncestor("fin", "xyz"));
+        assertEquals(-1, tree.getLCADepth("xyz", "fin"));
+        assertEquals(-1, tree.getTreeDistance("xyz", "fin"));
+        assertFalse(tree.isAncestor("xyz", "fin"));
+    }
+
+    @Test
+    public void ancestorInBothDirections() {
+        assertTrue(tree.isAncestor("Finnic", "fin"));
+        assertFalse(tree.isAncestor("fin", "Finnic"));
+        assertTrue(tree.isAncestor("Uralic", "est"));
+        assertFalse(tree.isAncestor("est", "Uralic"));
+        assertTrue(tree.isAncestor("ROOT", "dan"));
+        assertFalse(tree.isAncestor("dan", "ROOT"));
+        assertTrue(tree.isAncestor("fin", "fin"));
+        assertFalse(tree.isAncestor("Finnic", "hun"));
+        assertFalse(tree.isAncestor("hun", "Finnic"));
+        assertFalse(tree.isAncestor("Germanic", "fin"));
+        // consistent with the paths
+        for (String lang : LANGUAGES) {
+            for (String ancestor : walkToRoot(lang)) {
+                assertTrue(tree.isAncestor(ancestor, lang));
+                assertFalse(tree.isAncestor(lang, ancestor));
+            }
+        }
+    }
+}
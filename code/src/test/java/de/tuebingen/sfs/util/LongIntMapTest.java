@@ -0,0 +1,72 @@
+package de.tuebingen.sfs.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LongIntMapTest {
+
+    @Test
+    public void absentKeysAreMinusOne() {
+        LongIntMap map = new LongIntMap();
+        assertEquals(-1, map.get(0L));
+        assertEquals(-1, map.get(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void resizeKeepsAllEntries() {
+        LongIntMap map = new LongIntMap(1);
+        for (int i = 0; i < 5000; i++) {
+            map.put(i * 1000003L, i);
+        }
+        assertEquals(5000, map.size());
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(i, map.get(i * 1000003L));
+        }
+    }
+
+    @Test
+    public void putOverwrites() {
+        LongIntMap map = new LongIntMap();
+        map.put(5L, 1);
+        map.put(5L, 2);
+        assertEquals(2, map.get(5L));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void collidingKeysAreKeptApart() {
+        // keys which differ only in their upper 32 bits, as packed keys with the same lower part do
+        LongIntMap map = new LongIntMap();
+        for (int i = 0; i < 8; i++) {
+            map.put((long) i << 32, i);
+        }
+        for (int i = 0; i < 8; i++) {
+            assertEquals(i, map.get((long) i << 32));
+        }
+        assertEquals(-1, map.get(8L << 32));
+    }
+
+    @Test
+    public void matchesHashMapOnRandomKeys() {
+        Random random = new Random(2);
+        LongIntMap map = new LongIntMap();
+        Map<Long, Integer> reference = new HashMap<Long, Integer>();
+        for (int i = 0; i < 20000; i++) {
+            long key = random.nextLong() & Long.MAX_VALUE;
+            if (random.nextInt(4) == 0 && !reference.isEmpty()) key = reference.keySet().iterator().next();
+            map.put(key, i);
+            reference.put(key, i);
+        }
+        assertEquals(reference.size(), map.size());
+        for (Map.Entry<Long, Integer> entry : reference.entrySet()) {
+            assertEquals((int) entry.getValue(), map.get(entry.getKey()));
+        }
+        assertTrue(map.size() > 1000);
+    }
+}